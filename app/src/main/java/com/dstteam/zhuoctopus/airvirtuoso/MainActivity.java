@@ -13,11 +13,13 @@ import android.media.AudioManager;
 import android.os.Build;
 import android.speech.tts.TextToSpeech;
 import android.os.Bundle;
+import android.os.PowerManager;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
 import android.transition.AutoTransition;
 import android.transition.TransitionManager;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -45,11 +47,16 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.dstteam.zhuoctopus.airvirtuoso.databinding.ActivityMainBinding;
 import com.dstteam.zhuoctopus.airvirtuoso.logic.SheetMusicEngine;
 import com.dstteam.zhuoctopus.airvirtuoso.ml.HandLandmarkerHelper;
+import com.dstteam.zhuoctopus.airvirtuoso.input.InputEngine;
+import com.dstteam.zhuoctopus.airvirtuoso.input.InputSnapshot;
+import com.dstteam.zhuoctopus.airvirtuoso.input.LandmarkFilter;
 import com.dstteam.zhuoctopus.airvirtuoso.model.Note;
+import com.dstteam.zhuoctopus.airvirtuoso.model.Pitch;
 import com.dstteam.zhuoctopus.airvirtuoso.model.Song;
 import com.dstteam.zhuoctopus.airvirtuoso.ui.PianoOverlayView;
 import com.dstteam.zhuoctopus.airvirtuoso.ui.SheetPreviewAdapter;
 import com.dstteam.zhuoctopus.airvirtuoso.ui.SongAdapter;
+import com.dstteam.zhuoctopus.airvirtuoso.util.Keyboard;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.LinearSnapHelper;
 import androidx.recyclerview.widget.SnapHelper;
@@ -58,6 +65,8 @@ import android.widget.ProgressBar;
 import android.widget.Toast;
 
 import com.dstteam.zhuoctopus.airvirtuoso.analysis.PostureAnalyzer;
+import com.dstteam.zhuoctopus.airvirtuoso.perf.AnalysisGovernor;
+import com.dstteam.zhuoctopus.airvirtuoso.perf.LatencyTracer;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.chip.Chip;
@@ -66,6 +75,7 @@ import com.google.android.material.sidesheet.SideSheetDialog;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.dstteam.zhuoctopus.airvirtuoso.ui.SongCardAdapter;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
@@ -128,7 +138,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private boolean isPlayBySheetMode = false;
     private long lastHandDetectionTime = 0;
     private long lastTwoHandsTime = 0;
-    private long lastHiFiveGestureTime = 0; // Cooldown for hi-five gesture detection
     private TextToSpeech textToSpeech;
     private boolean isTtsReady = false;
     private long lastTryAgainSpeakTime = 0;
@@ -139,13 +148,14 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private android.speech.SpeechRecognizer speechRecognizer;
     private boolean isListening = false;
 
-    private boolean hasIncorrectKeyPress = false;
-    private long lastKeyPressTime = 0;
-    private static final long KEY_PRESS_GRACE_PERIOD_MS = 300; // 300ms window
 
     private boolean isPostCompletionCooldown = false;
     private static final long POST_COMPLETION_COOLDOWN_MS = 2000; // 2 seconds
     private boolean isDemoMode = false; // Flag to skip validation during demo
+    private static final int PRACTICE_LOOP_BARS = 2;
+    private static final double PRACTICE_TEMPO_STEP = 0.1;
+    private static final double COUNT_IN_ACCENT_FREQUENCY = 1046.50; // C6
+    private static final double COUNT_IN_FREQUENCY = 783.99; // G5
 
     private List<View> pianoKeyViews = new ArrayList<>();
     private SheetPreviewAdapter sheetPreviewAdapter;
@@ -156,6 +166,40 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     private View sheetPreviewView;
     private ChipGroup warningChipGroup;
 
+    // Landmarker results are processed on the input thread; its snapshots reach the UI once per vsync
+    private InputEngine inputEngine;
+    private final java.util.concurrent.atomic.AtomicBoolean landmarkFrameCallbackPending =
+            new java.util.concurrent.atomic.AtomicBoolean(false);
+    private final android.os.Handler mainHandler = new android.os.Handler(android.os.Looper.getMainLooper());
+
+    // Adaptive analysis resolution / frame rate
+    private static final long INFERENCE_LATENCY_BUDGET_MS = 33; // One frame at 30 fps
+    private static final long THERMAL_HEADROOM_POLL_MS = 10000;
+    private AnalysisGovernor analysisGovernor;
+    private PowerManager powerManager;
+    private PowerManager.OnThermalStatusChangedListener thermalStatusListener;
+    private android.content.BroadcastReceiver powerSaveReceiver;
+    private ProcessCameraProvider cameraProvider;
+    private androidx.camera.core.ImageAnalysis imageAnalysis;
+    private final Runnable thermalHeadroomPoller = new Runnable() {
+        @Override
+        public void run() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && powerManager != null) {
+                analysisGovernor.setThermalHeadroom(powerManager.getThermalHeadroom(10));
+                mainHandler.postDelayed(this, THERMAL_HEADROOM_POLL_MS);
+            }
+        }
+    };
+
+    private static final long LATENCY_OVERLAY_REFRESH_MS = 500;
+    private final Runnable latencyOverlayUpdater = new Runnable() {
+        @Override
+        public void run() {
+            binding.latencyOverlay.setText(LatencyTracer.getInstance().formatSummary());
+            mainHandler.postDelayed(this, LATENCY_OVERLAY_REFRESH_MS);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         androidx.core.splashscreen.SplashScreen.installSplashScreen(this);
@@ -206,6 +250,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         setupToolbar();
         setupPianoKeys();
         setupSheetPreview();
+        setupLatencyOverlay();
 
         sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
         if (sensorManager != null) {
@@ -216,6 +261,8 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
 
         cameraExecutor = Executors.newSingleThreadExecutor();
+        setupAnalysisGovernor();
+        setupInputEngine();
 
         cameraExecutor.execute(() -> {
             handLandmarkerHelper = new HandLandmarkerHelper(this, new HandLandmarkerHelper.LandmarkerListener() {
@@ -227,66 +274,19 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 @Override
                 public void onResults(com.google.mediapipe.tasks.vision.handlandmarker.HandLandmarkerResult result,
                         int inputImageWidth, int inputImageHeight) {
-                    runOnUiThread(() -> {
-                        pianoOverlay.setHandLandmarkerResult(result, inputImageWidth, inputImageHeight);
-                        // Update posture analysis
-                        pianoOverlay.updatePosture();
-
-                        // Clear old warnings
-                        clearWarningChips();
-
-                        // Check for warnings
-                        if (result.landmarks().isEmpty()) {
-                            showWarningChip("No hands detected", android.R.drawable.ic_dialog_alert, R.color.info_blue);
-                        } else {
-                            // Analyze posture for each hand
-                            for (List<com.google.mediapipe.tasks.components.containers.NormalizedLandmark> landmarks : result
-                                    .landmarks()) {
-                                PostureAnalyzer.PostureResult postureResult = PostureAnalyzer.analyzePosture(landmarks);
-
-                                if (postureResult.status == PostureAnalyzer.PostureStatus.DANGER) {
-                                    String msg = postureResult.message.replaceAll("[⚠️✓⚡]", "").trim();
-                                    showWarningChip(msg, android.R.drawable.ic_dialog_alert, R.color.danger_red);
-                                } else if (postureResult.status == PostureAnalyzer.PostureStatus.WARNING) {
-                                    String msg = postureResult.message.replaceAll("[⚠️✓⚡]", "").trim();
-                                    showWarningChip(msg, android.R.drawable.ic_dialog_info, R.color.warning_yellow);
-                                }
-                            }
-
-                            // Check if two hands detected (good!)
-                            if (result.landmarks().size() >= 2) {
-                                showWarningChip("Two hands detected - great!", android.R.drawable.ic_dialog_info,
-                                        R.color.info_blue);
-                            }
-                        }
-                    });
+                    // Hand the result to the input thread through the latest-value buffer; frames it
+                    // doesn't get to before the next result are dropped, not replayed.
+                    inputEngine.submitFrame(result, inputImageWidth, inputImageHeight);
 
                     if (!result.landmarks().isEmpty()) {
                         lastHandDetectionTime = System.currentTimeMillis();
                         if (result.landmarks().size() >= 2) {
                             lastTwoHandsTime = System.currentTimeMillis();
                         }
-                        
-                        // Detect hi-five gesture for voice command activation
-                        for (List<com.google.mediapipe.tasks.components.containers.NormalizedLandmark> landmarks : result.landmarks()) {
-                            if (com.dstteam.zhuoctopus.airvirtuoso.analysis.GestureDetector.isHiFiveGesture(landmarks)) {
-                                long currentTime = System.currentTimeMillis();
-                                // Cooldown: only trigger once every 3 seconds
-                                if (currentTime - lastHiFiveGestureTime > 3000) {
-                                    lastHiFiveGestureTime = currentTime;
-                                    runOnUiThread(() -> {
-                                        showSnackbar("👋 Hi-five detected! Activating voice commands...");
-                                        startVoiceRecognition();
-                                    });
-                                }
-                                break; // Only trigger once per frame
-                            }
-                        }
                     }
-                    runOnUiThread(
-                            () -> pianoOverlay.setHandLandmarkerResult(result, inputImageWidth, inputImageHeight));
                 }
             });
+            handLandmarkerHelper.setAnalysisGovernor(analysisGovernor);
         });
 
         if (allPermissionsGranted()) {
@@ -300,24 +300,20 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         binding.pianoKeysContainer.removeAllViews();
         pianoKeyViews.clear();
 
-        int[] semitonesFromA3 = { 0, 2, 3, 5, 7, 8, 10, 12, 14, 15, 17, 19, 20, 22, 24, 26, 27 };
-        String[] noteNames = { "A3", "B3", "C4", "D4", "E4", "F4", "G4", "A4", "B4", "C5", "D5", "E5", "F5", "G5",
-                "A5", "B5", "C6" };
-
         LayoutInflater inflater = LayoutInflater.from(this);
 
-        for (int i = 0; i < noteNames.length; i++) {
+        for (int i = 0; i < Keyboard.KEY_COUNT; i++) {
+            Pitch pitch = Pitch.of(Keyboard.getMidi(i));
             View keyView = inflater.inflate(R.layout.view_piano_key, binding.pianoKeysContainer, false);
 
             TextView solfegeText = keyView.findViewById(R.id.solfegeText);
             TextView noteNameText = keyView.findViewById(R.id.noteNameText);
 
-            String noteName = noteNames[i];
+            String noteName = pitch.getDisplayName();
             noteNameText.setText(noteName);
             solfegeText.setText(getSolfege(noteName));
 
-            int semitones = semitonesFromA3[i];
-            double freq = 220.0 * Math.pow(2.0, semitones / 12.0);
+            double freq = pitch.getFrequency();
 
             keyView.setTag(freq); // Store frequency in tag
 
@@ -345,19 +341,175 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                     }
                 });
 
-        // Listen for overlay key presses (from hand tracking)
-        pianoOverlay.setOnKeyListener(frequency -> {
-            // Find the view for this frequency and animate it
-            for (View view : pianoKeyViews) {
-                double keyFreq = (double) view.getTag();
-                if (Math.abs(keyFreq - frequency) < 0.1) {
-                    runOnUiThread(() -> animateKeyPress(view));
-                    playNote(frequency, null); // Pass null to avoid double animation if we wanted, but playNote handles
-                                               // sound
-                    break;
+    }
+
+    /**
+     * Key presses from hand tracking are detected on the input thread. The note is played
+     * right there; animation and sheet-mode checks follow on the UI thread.
+     */
+    private void setupInputEngine() {
+        inputEngine = new InputEngine(new InputEngine.Listener() {
+            @Override
+            public void onNoteOn(int keyIndex, int midiNote, int velocity, double frequency) {
+                // Stamped here, before the hop to the UI thread, so chord timing sees the strike
+                long struckNanos = System.nanoTime();
+                audioEngine.playMidi(midiNote, velocity);
+                mainHandler.post(() -> {
+                    pianoOverlay.performHapticFeedback(android.view.HapticFeedbackConstants.KEYBOARD_TAP);
+                    // Find the view for this frequency and animate it
+                    for (View view : pianoKeyViews) {
+                        double keyFreq = (double) view.getTag();
+                        if (Math.abs(keyFreq - frequency) < 0.1) {
+                            animateKeyPress(view);
+                            break;
+                        }
+                    }
+                    onNotePlayed(frequency, null, struckNanos);
+                });
+            }
+
+            @Override
+            public void onNoteOff(int keyIndex, int midiNote, double frequency) {
+                audioEngine.releaseMidi(midiNote);
+            }
+
+            @Override
+            public void onHiFive() {
+                runOnUiThread(() -> {
+                    showSnackbar("👋 Hi-five detected! Activating voice commands...");
+                    startVoiceRecognition();
+                });
+            }
+
+            @Override
+            public void onSnapshotPublished() {
+                requestLandmarkFrameCallback();
+            }
+        });
+    }
+
+    /**
+     * Ask for a vsync callback if one isn't already pending. Safe to call from any thread.
+     */
+    private void requestLandmarkFrameCallback() {
+        if (landmarkFrameCallbackPending.compareAndSet(false, true)) {
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(landmarkFrameCallback));
+        }
+    }
+
+    private final Choreographer.FrameCallback landmarkFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            InputSnapshot snapshot = inputEngine.consumeSnapshot();
+            if (snapshot != null) {
+                onInputSnapshot(snapshot);
+                // Keep following vsync while results are flowing
+                Choreographer.getInstance().postFrameCallback(this);
+                return;
+            }
+
+            landmarkFrameCallbackPending.set(false);
+            // A result may have been published between consume() and clearing the flag
+            if (inputEngine.hasNewSnapshot()) {
+                requestLandmarkFrameCallback();
+            }
+        }
+    };
+
+    /**
+     * Runs once per vsync on the UI thread with the newest input snapshot.
+     */
+    private void onInputSnapshot(InputSnapshot snapshot) {
+        pianoOverlay.setSnapshot(snapshot);
+
+        // Clear old warnings
+        clearWarningChips();
+
+        // Check for warnings
+        if (snapshot.handCount == 0) {
+            showWarningChip("No hands detected", android.R.drawable.ic_dialog_alert, R.color.info_blue);
+        } else {
+            // Posture for each hand, analyzed on the input thread
+            for (int handIndex = 0; handIndex < snapshot.handCount; handIndex++) {
+                PostureAnalyzer.PostureResult postureResult = snapshot.handPosture[handIndex];
+
+                if (postureResult.status == PostureAnalyzer.PostureStatus.DANGER) {
+                    String msg = postureResult.message.replaceAll("[⚠️✓⚡]", "").trim();
+                    showWarningChip(msg, android.R.drawable.ic_dialog_alert, R.color.danger_red);
+                } else if (postureResult.status == PostureAnalyzer.PostureStatus.WARNING) {
+                    String msg = postureResult.message.replaceAll("[⚠️✓⚡]", "").trim();
+                    showWarningChip(msg, android.R.drawable.ic_dialog_info, R.color.warning_yellow);
                 }
             }
+
+            // Check if two hands detected (good!)
+            if (snapshot.handCount >= 2) {
+                showWarningChip("Two hands detected - great!", android.R.drawable.ic_dialog_info,
+                        R.color.info_blue);
+            }
+        }
+    }
+
+    /**
+     * Scales analysis resolution and frame rate with inference latency and device temperature.
+     */
+    private void setupAnalysisGovernor() {
+        analysisGovernor = new AnalysisGovernor(INFERENCE_LATENCY_BUDGET_MS);
+        analysisGovernor.setListener((width, height) -> runOnUiThread(() -> {
+            Log.d(TAG, "Analysis resolution -> " + width + "x" + height);
+            bindImageAnalysis(width, height);
+        }));
+
+        powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        if (powerManager == null)
+            return;
+
+        analysisGovernor.setPowerSaveMode(powerManager.isPowerSaveMode());
+        powerSaveReceiver = new android.content.BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, android.content.Intent intent) {
+                analysisGovernor.setPowerSaveMode(powerManager.isPowerSaveMode());
+            }
+        };
+        registerReceiver(powerSaveReceiver,
+                new android.content.IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED));
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            thermalStatusListener = analysisGovernor::setThermalStatus;
+            powerManager.addThermalStatusListener(thermalStatusListener);
+        }
+        mainHandler.post(thermalHeadroomPoller);
+    }
+
+    /**
+     * Debug builds show frame-to-sound latency percentiles; tap the overlay to cycle
+     * the smoothing filter, long-press it to dump them.
+     */
+    private void setupLatencyOverlay() {
+        LatencyTracer tracer = LatencyTracer.getInstance();
+        tracer.setEnabled(BuildConfig.DEBUG);
+        if (!tracer.isEnabled())
+            return;
+
+        binding.latencyOverlay.setVisibility(View.VISIBLE);
+        // Tap to cycle the landmark smoothing filter and compare them live
+        binding.latencyOverlay.setOnClickListener(v -> {
+            LandmarkFilter.Type[] types = LandmarkFilter.Type.values();
+            LandmarkFilter.Type next = types[(inputEngine.getSmoothingFilter().ordinal() + 1) % types.length];
+            inputEngine.setSmoothingFilter(next);
+            showSnackbar("Smoothing filter: " + next);
+        });
+        binding.latencyOverlay.setOnLongClickListener(v -> {
+            File dir = getExternalFilesDir(null) != null ? getExternalFilesDir(null) : getFilesDir();
+            File file = new File(dir, "latency_" + System.currentTimeMillis() + ".csv");
+            if (tracer.dumpToFile(file)) {
+                showSnackbar("Latency stats saved to " + file.getAbsolutePath());
+            } else {
+                showSnackbar("Failed to save latency stats");
+            }
+            return true;
         });
+        mainHandler.post(latencyOverlayUpdater);
     }
 
     private void updateOverlayKeys() {
@@ -385,11 +537,21 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                     .add(new PianoOverlayView.Key(new android.graphics.RectF(left, top, right, bottom), freq, label));
         }
         pianoOverlay.setKeys(overlayKeys);
+        inputEngine.setViewSize(pianoOverlay.getWidth(), pianoOverlay.getHeight());
+        inputEngine.setKeys(overlayKeys);
     }
 
     private void playNote(double frequency, View keyView) {
         audioEngine.playNote(frequency);
+        onNotePlayed(frequency, keyView, System.nanoTime());
+    }
 
+    /**
+     * UI side of a played note: haptics, key animation and sheet-mode checking.
+     *
+     * @param struckNanos When the key was struck, on the System.nanoTime() clock
+     */
+    private void onNotePlayed(double frequency, View keyView, long struckNanos) {
         // Haptic feedback
         if (vibrator != null && vibrator.hasVibrator()) {
             if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.O) {
@@ -403,46 +565,17 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             animateKeyPress(keyView);
         }
 
-        // Strict note checking in Play by Sheet mode
+        // Score following in Play by Sheet mode
         if (isPlayBySheetMode && sheetMusicEngine != null && !isDemoMode) {
             // Don't accept input during post-completion cooldown or demo mode
             if (isPostCompletionCooldown) {
                 return;
             }
 
-            long currentTime = System.currentTimeMillis();
-            Note expectedNote = sheetMusicEngine.getCurrentNote();
-
-            if (expectedNote != null) {
-                boolean isCorrectNote = Math.abs(frequency - expectedNote.getFrequency()) < 1.0;
-
-                // If this is an incorrect key, mark it
-                if (!isCorrectNote) {
-                    hasIncorrectKeyPress = true;
-                    lastKeyPressTime = currentTime;
-                    // Provide "try again" feedback
-                    handleTryAgainPrompt();
-                } else {
-                    // This is the correct key
-                    // Check if any incorrect key was pressed recently
-                    if (currentTime - lastKeyPressTime > KEY_PRESS_GRACE_PERIOD_MS) {
-                        // No recent key presses, reset the flag
-                        hasIncorrectKeyPress = false;
-                    }
-
-                    // Only accept if no incorrect keys were pressed
-                    if (!hasIncorrectKeyPress) {
-                        sheetMusicEngine.checkNote(frequency);
-                        // Reset for next note
-                        hasIncorrectKeyPress = false;
-                        lastKeyPressTime = 0;
-                    } else {
-                        // Incorrect key was pressed, don't count this
-                        // Reset the flag after grace period
-                        hasIncorrectKeyPress = false;
-                        lastKeyPressTime = currentTime;
-                    }
-                }
+            // The engine's score follower tolerates wrong, repeated and skipped notes;
+            // wrong ones come back through onNoteIncorrect
+            if (sheetMusicEngine.getCurrentNote() != null) {
+                sheetMusicEngine.checkNote(frequency, struckNanos);
             }
         }
     }
@@ -486,14 +619,12 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         sheetMusicEngine.setListener(new SheetMusicEngine.SheetMusicListener() {
             @Override
             public void onNoteCorrect(Note note, int progress, int total) {
-                runOnUiThread(() -> {
-                    updateSheetPreviewUI();
-                    // Highlight key green?
-                });
+                // Progress is redrawn from onProgressChanged
+                // Highlight key green?
             }
 
             @Override
-            public void onNoteIncorrect(Note expected, double played) {
+            public void onNoteIncorrect(Note expected, int playedMidi) {
                 runOnUiThread(() -> {
                     handleTryAgainPrompt();
                     // Highlight key red?
@@ -515,44 +646,47 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                         sheetMusicEngine.reset();
                         // Explicitly scroll to first note
                         noteStreamRecyclerView.scrollToPosition(0);
-                        updateSheetPreviewUI();
                         isPostCompletionCooldown = false;
                     }, POST_COMPLETION_COOLDOWN_MS);
                 });
             }
+
+            @Override
+            public void onProgressChanged(SheetMusicEngine.Snapshot snapshot) {
+                runOnUiThread(() -> updateSheetPreviewUI(snapshot));
+            }
         });
 
         sheetPreviewAdapter.setOnNoteClickListener(position -> {
             runOnUiThread(() -> {
                 sheetMusicEngine.setProgress(position);
-                updateSheetPreviewUI();
                 showSnackbar("Rewound to note " + (position + 1));
             });
         });
     }
 
-    private void updateSheetPreviewUI() {
-        updateSheetPreviewUI(true);
+    private void updateSheetPreviewUI(SheetMusicEngine.Snapshot snapshot) {
+        updateSheetPreviewUI(snapshot, true);
     }
 
-    private void updateSheetPreviewUI(boolean shouldScroll) {
-        if (sheetMusicEngine.getCurrentSong() == null)
+    private void updateSheetPreviewUI(SheetMusicEngine.Snapshot snapshot, boolean shouldScroll) {
+        if (snapshot.getSong() == null)
             return;
 
-        String currentTitle = sheetMusicEngine.getCurrentSong().getTitle();
+        String currentTitle = snapshot.getSong().getTitle();
         boolean songChanged = !currentTitle.equals(lastSongTitle);
 
         if (songChanged) {
             lastSongTitle = currentTitle;
             previewSongTitle.setText(currentTitle);
             // Update notes list when song changes
-            List<Note> allNotes = sheetMusicEngine.getCurrentSong().getNotes(sheetMusicEngine.isUseLongVersion());
+            List<Note> allNotes = snapshot.getNotes();
             sheetPreviewAdapter.setNotes(allNotes);
             // Scroll to beginning on song change
             noteStreamRecyclerView.scrollToPosition(0);
         }
 
-        int currentProgress = sheetMusicEngine.getProgress();
+        int currentProgress = snapshot.getProgress();
         sheetPreviewAdapter.setCurrentNoteIndex(currentProgress);
 
         // Auto-scroll to center the highlighted note after playing
@@ -579,16 +713,16 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
 
         // Update progress
-        int total = sheetMusicEngine.getCurrentSong().getTotalNotes(sheetMusicEngine.isUseLongVersion());
+        int total = snapshot.getTotalNotes();
         float progressRatio = (float) currentProgress / total;
         progressBar.setProgress((int) (progressRatio * 100));
 
         // Update fingering on overlay
-        Note nextNote = sheetMusicEngine.getCurrentNote();
+        Note nextNote = snapshot.getCurrentNote();
         if (nextNote != null) {
             int displayFinger = toDisplayFinger(nextNote.getRecommendedFinger());
             if (displayFinger > 0) {
-                pianoOverlay.setRecommendedFinger(displayFinger, nextNote.getFrequency());
+                pianoOverlay.setRecommendedFinger(displayFinger, nextNote.getMidi());
             } else {
                 pianoOverlay.clearRecommendedFinger();
             }
@@ -597,6 +731,54 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
 
+    /**
+     * Plays demo and practice loop notes through the audio engine and animates the keys.
+     *
+     * @param guideOnly Practice loop: the notes are a guide for the player and must not
+     *                  reach the sheet-mode checks, which score what the player plays
+     */
+    private SheetMusicEngine.AutoPlayCallback createAutoPlayCallback(boolean guideOnly) {
+        return new SheetMusicEngine.AutoPlayCallback() {
+            @Override
+            public void onPlayNote(double frequency, long onsetNanos) {
+                // Audio is queued ahead with its exact onset; the visuals follow on time
+                audioEngine.playNoteAt(frequency, onsetNanos);
+                long delayMs = Math.max(0, (onsetNanos - System.nanoTime()) / 1_000_000L);
+                mainHandler.postDelayed(() -> {
+                    if (!guideOnly) {
+                        onNotePlayed(frequency, null, onsetNanos);
+                    }
+                    for (View view : pianoKeyViews) {
+                        if (Math.abs((double) view.getTag() - frequency) < 0.1) {
+                            animateKeyPress(view);
+                            break;
+                        }
+                    }
+                }, delayMs);
+            }
+
+            @Override
+            public void onCountIn(int beat, int beats, long onsetNanos) {
+                // Accent the first click of the bar
+                audioEngine.playNoteAt(beat == 0 ? COUNT_IN_ACCENT_FREQUENCY : COUNT_IN_FREQUENCY, onsetNanos);
+            }
+
+            @Override
+            public void onAutoDemoComplete() {
+                runOnUiThread(() -> {
+                    isDemoMode = false; // Disable demo mode
+                    binding.verticalToolbar.playDemoButton.setIcon(ContextCompat.getDrawable(MainActivity.this, R.drawable.ic_play_arrow));
+                    showSnackbar("Demo complete!");
+
+                    new android.os.Handler().postDelayed(() -> {
+                        sheetMusicEngine.reset();
+                        noteStreamRecyclerView.scrollToPosition(0);
+                    }, POST_COMPLETION_COOLDOWN_MS);
+                });
+            }
+        };
+    }
+
     private void setupToolbar() {
         binding.verticalToolbar.playDemoButton.setEnabled(false);
 
@@ -611,7 +793,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 binding.sheetPreviewContainer.setVisibility(View.VISIBLE);
                 sheetMusicEngine.reset();
                 timingAnalyzer.startSong();
-                updateSheetPreviewUI();
                 showSnackbar("Play by sheet mode");
                 binding.verticalToolbar.playDemoButton.setEnabled(true);
             } else {
@@ -642,36 +823,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                     isDemoMode = true;
                     binding.verticalToolbar.playDemoButton.setIcon(ContextCompat.getDrawable(this, R.drawable.ic_stop));
 
-                    sheetMusicEngine.playDemo(new SheetMusicEngine.AutoPlayCallback() {
-                        @Override
-                        public void onPlayNote(double frequency) {
-                            runOnUiThread(() -> {
-                                playNote(frequency, null);
-                                for (View view : pianoKeyViews) {
-                                    if (Math.abs((double) view.getTag() - frequency) < 0.1) {
-                                        animateKeyPress(view);
-                                        break;
-                                    }
-                                }
-                                updateSheetPreviewUI(true);
-                            });
-                        }
-
-                        @Override
-                        public void onAutoDemoComplete() {
-                            runOnUiThread(() -> {
-                                isDemoMode = false; // Disable demo mode
-                                binding.verticalToolbar.playDemoButton.setIcon(ContextCompat.getDrawable(MainActivity.this, R.drawable.ic_play_arrow));
-                                showSnackbar("Demo complete!");
-
-                                new android.os.Handler().postDelayed(() -> {
-                                    sheetMusicEngine.reset();
-                                    noteStreamRecyclerView.scrollToPosition(0);
-                                    updateSheetPreviewUI();
-                                }, POST_COMPLETION_COOLDOWN_MS);
-                            });
-                        }
-                    });
+                    sheetMusicEngine.playDemo(createAutoPlayCallback(false));
                 }
             } else {
                 showSnackbar("Select a song first!");
@@ -706,7 +858,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         SongCardAdapter favoritesAdapter = new SongCardAdapter(position -> {
             sheetMusicEngine.loadSong(position);
             sheetMusicEngine.reset();
-            updateSheetPreviewUI();
             sideSheetDialog.dismiss();
             showSnackbar("Song selected!");
             
@@ -721,7 +872,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         SongAdapter listAdapter = new SongAdapter(position -> {
             sheetMusicEngine.loadSong(position);
             sheetMusicEngine.reset();
-            updateSheetPreviewUI();
             sideSheetDialog.dismiss();
             showSnackbar("Song selected!");
             
@@ -862,7 +1012,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
 
         cameraProviderFuture.addListener(() -> {
             try {
-                ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
+                cameraProvider = cameraProviderFuture.get();
 
                 ResolutionSelector resolutionSelector = new ResolutionSelector.Builder()
                         .setAspectRatioStrategy(AspectRatioStrategy.RATIO_16_9_FALLBACK_AUTO_STRATEGY)
@@ -875,33 +1025,12 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 binding.viewFinder.setScaleType(androidx.camera.view.PreviewView.ScaleType.FILL_CENTER);
                 preview.setSurfaceProvider(binding.viewFinder.getSurfaceProvider());
 
-                android.util.Size analysisSize = new android.util.Size(960, 540);
-                ResolutionSelector analysisResolutionSelector = new ResolutionSelector.Builder()
-                        .setResolutionStrategy(new ResolutionStrategy(analysisSize,
-                                ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER))
-                        .build();
-
-                androidx.camera.core.ImageAnalysis imageAnalysis = new androidx.camera.core.ImageAnalysis.Builder()
-                        .setResolutionSelector(analysisResolutionSelector)
-                        .setBackpressureStrategy(androidx.camera.core.ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                        .setOutputImageFormat(androidx.camera.core.ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888)
-                        .build();
-
-                imageAnalysis.setAnalyzer(cameraExecutor, image -> {
-                    if (System.currentTimeMillis() % 2000 < 100) {
-                        runOnUiThread(() -> checkEnvironmentWarnings(image));
-                    }
-
-                    if (handLandmarkerHelper != null) {
-                        handLandmarkerHelper.detectLiveStream(image, true);
-                    }
-                    image.close();
-                });
-
                 CameraSelector cameraSelector = CameraSelector.DEFAULT_FRONT_CAMERA;
 
                 try {
                     cameraProvider.unbindAll();
+                    imageAnalysis = buildImageAnalysis(analysisGovernor.getTargetWidth(),
+                            analysisGovernor.getTargetHeight());
                     androidx.camera.core.Camera camera = cameraProvider.bindToLifecycle(this, cameraSelector, preview,
                             imageAnalysis);
 
@@ -934,6 +1063,49 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }, ContextCompat.getMainExecutor(this));
     }
 
+    private androidx.camera.core.ImageAnalysis buildImageAnalysis(int width, int height) {
+        android.util.Size analysisSize = new android.util.Size(width, height);
+        ResolutionSelector analysisResolutionSelector = new ResolutionSelector.Builder()
+                .setResolutionStrategy(new ResolutionStrategy(analysisSize,
+                        ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER))
+                .build();
+
+        androidx.camera.core.ImageAnalysis analysis = new androidx.camera.core.ImageAnalysis.Builder()
+                .setResolutionSelector(analysisResolutionSelector)
+                .setBackpressureStrategy(androidx.camera.core.ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                .setOutputImageFormat(androidx.camera.core.ImageAnalysis.OUTPUT_IMAGE_FORMAT_RGBA_8888)
+                .build();
+
+        analysis.setAnalyzer(cameraExecutor, image -> {
+            if (System.currentTimeMillis() % 2000 < 100) {
+                runOnUiThread(() -> checkEnvironmentWarnings(image));
+            }
+
+            // Governor drops frames when the device can't keep up
+            if (handLandmarkerHelper != null && analysisGovernor.shouldProcessFrame()) {
+                handLandmarkerHelper.detectLiveStream(image, true);
+            }
+            image.close();
+        });
+        return analysis;
+    }
+
+    /**
+     * Swap the analysis use case for one at a new resolution; the preview stays bound.
+     */
+    private void bindImageAnalysis(int width, int height) {
+        if (cameraProvider == null || imageAnalysis == null || isFinishing())
+            return;
+
+        try {
+            cameraProvider.unbind(imageAnalysis);
+            imageAnalysis = buildImageAnalysis(width, height);
+            cameraProvider.bindToLifecycle(this, CameraSelector.DEFAULT_FRONT_CAMERA, imageAnalysis);
+        } catch (Exception exc) {
+            Log.e(TAG, "Rebinding image analysis failed", exc);
+        }
+    }
+
     private void checkEnvironmentWarnings(androidx.camera.core.ImageProxy image) {
         // ... (Implement warning logic similar to before)
         // For now, let's keep it simple
@@ -978,6 +1150,22 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         if (sensorManager != null) {
             sensorManager.unregisterListener(this);
         }
+        mainHandler.removeCallbacks(latencyOverlayUpdater);
+        Choreographer.getInstance().removeFrameCallback(landmarkFrameCallback);
+        if (sheetMusicEngine != null) {
+            sheetMusicEngine.shutdown();
+        }
+        if (inputEngine != null) {
+            inputEngine.quit();
+        }
+        mainHandler.removeCallbacks(thermalHeadroomPoller);
+        if (powerSaveReceiver != null) {
+            unregisterReceiver(powerSaveReceiver);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null
+                && thermalStatusListener != null) {
+            powerManager.removeThermalStatusListener(thermalStatusListener);
+        }
         cameraExecutor.shutdown();
         if (audioEngine != null) {
             audioEngine.release();
@@ -1020,13 +1208,9 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
     }
 
     private int toDisplayFinger(int rawFinger) {
-        if (rawFinger < 0)
+        if (rawFinger < 0 || rawFinger > 4)
             return -1;
-        if (rawFinger >= 1 && rawFinger <= 5)
-            return rawFinger;
-        if (rawFinger <= 4)
-            return rawFinger + 1; // convert 0-based to 1-based
-        return -1;
+        return 5 - rawFinger; // Score fingers run pinky (0) to thumb (4); piano numbering starts at the thumb
     }
 
     private String getSolfege(String noteLabel) {
@@ -1179,6 +1363,10 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
         }
     }
     
+    private double practiceTempo() {
+        return Math.max(0.5, Math.min(1.5, sheetMusicEngine.getDemoTempo()));
+    }
+
     /**
      * Process voice command and execute action
      */
@@ -1199,11 +1387,27 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             } else {
                 speak("Please select a song first");
             }
+        } else if (lowerCommand.contains("loop") || lowerCommand.contains("practice")) {
+            // Loop the current bar and the next one at the demo tempo; what the player
+            // plays along is scored against the section on every pass
+            if (!isPlayBySheetMode || sheetMusicEngine.getCurrentSong() == null) {
+                speak("Switch to play by sheet mode first");
+            } else if (sheetMusicEngine.isDemoPlaying()) {
+                speak("Stop the demo first");
+            } else {
+                binding.verticalToolbar.playDemoButton.setIcon(ContextCompat.getDrawable(this, R.drawable.ic_stop));
+                sheetMusicEngine.playBarLoop(sheetMusicEngine.getCurrentBar(), PRACTICE_LOOP_BARS, createAutoPlayCallback(true));
+                speak("Looping at " + Math.round(practiceTempo() * 100) + " percent");
+            }
+        } else if (lowerCommand.contains("slower") || lowerCommand.contains("faster")) {
+            double step = lowerCommand.contains("slower") ? -PRACTICE_TEMPO_STEP : PRACTICE_TEMPO_STEP;
+            double tempo = Math.max(0.5, Math.min(1.5, practiceTempo() + step));
+            sheetMusicEngine.setDemoTempo(tempo);
+            speak("Tempo " + Math.round(tempo * 100) + " percent");
         } else if (lowerCommand.contains("reset") || lowerCommand.contains("restart")) {
             // Reset current song
             if (sheetMusicEngine != null) {
                 sheetMusicEngine.reset();
-                updateSheetPreviewUI();
                 speak("Song reset");
             }
         } else if (lowerCommand.contains("next song") || lowerCommand.contains("next")) {
@@ -1214,7 +1418,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 int nextIndex = (currentIndex + 1) % songs.size();
                 sheetMusicEngine.loadSong(nextIndex);
                 sheetMusicEngine.reset();
-                updateSheetPreviewUI();
                 speak("Loaded " + songs.get(nextIndex).getTitle());
             }
         } else if (lowerCommand.contains("previous song") || lowerCommand.contains("previous") || lowerCommand.contains("back")) {
@@ -1225,7 +1428,6 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
                 int prevIndex = (currentIndex - 1 + songs.size()) % songs.size();
                 sheetMusicEngine.loadSong(prevIndex);
                 sheetMusicEngine.reset();
-                updateSheetPreviewUI();
                 speak("Loaded " + songs.get(prevIndex).getTitle());
             }
         } else if (lowerCommand.contains("select song") || lowerCommand.contains("choose song")) {
@@ -1237,7 +1439,7 @@ public class MainActivity extends AppCompatActivity implements SensorEventListen
             binding.verticalToolbar.modeSwitchButton.performClick();
         } else {
             // Unknown command
-            speak("Command not recognized. Try: play demo, reset, next song");
+            speak("Command not recognized. Try: play demo, loop, slower, reset, next song");
         }
     }
     
@@ -1,19 +1,73 @@
 package com.dstteam.zhuoctopus.airvirtuoso.audio;
 
 import android.content.Context;
-import android.media.AudioAttributes;
-import android.media.SoundPool;
+import android.content.pm.PackageManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import com.dstteam.zhuoctopus.airvirtuoso.R;
+import com.dstteam.zhuoctopus.airvirtuoso.perf.LatencyTracer;
+import com.dstteam.zhuoctopus.airvirtuoso.util.Midi;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 public class AudioEngine {
+
+    /**
+     * Load state of the sample for one MIDI note.
+     */
+    public enum SampleState {
+        UNAVAILABLE, // No recording close enough; the note will never sound
+        LOADING,
+        READY,
+        FAILED
+    }
+
     private static final String TAG = "AudioEngine";
-    private SoundPool soundPool;
-    private final Map<Double, Integer> frequencySoundMap = new HashMap<>(); // Frequency -> SoundPool ID
+    private static final int MAX_VOICES = 16;
+    private static final int MAX_SHIFT_SEMITONES = 5; // Further shifts sound noticeably unnatural
+    private static final String CACHE_FILE_NAME = "samples.pcm";
+
+    // Loading order: the octave around middle C first, then outwards
+    private static final int MIDDLE_C = 60;
+    private static final int CORE_RANGE_SEMITONES = 6;
+
+    // Notes played before their sample is ready wait here instead of being dropped
+    private static final int PENDING_CAPACITY = 32;
+    private static final long MAX_PENDING_AGE_MS = 1500; // Later than this sounds like a glitch
+
+    // Velocity response
+    public static final int MAX_VELOCITY = 127;
+    private static final float VELOCITY_RANGE_DB = 24f; // Gain span from velocity 1 to 127
+    private static final float SOFTEST_TONE_HZ = 1500f; // Low-pass cutoff at velocity 1
+    private static final int FULL_BRIGHTNESS_VELOCITY = 96; // Recordings play unfiltered from here up
+
+    private final PcmMixer mixer;
+    private AudioOutput audioOutput;
+    // MIDI note -> mixer sample ID, -1 while missing. Written under pendingLock by the loader
+    // thread and read without it on the hot path; a stale -1 falls back to the locked check.
+    private final int[] midiSampleIds = new int[Midi.NOTE_COUNT];
+
+    private final Object pendingLock = new Object();
+    private final SampleState[] sampleStates = new SampleState[Midi.NOTE_COUNT]; // Guarded by pendingLock
+    private final int[] pendingMidi = new int[PENDING_CAPACITY];
+    private final int[] pendingVelocity = new int[PENDING_CAPACITY];
+    private final long[] pendingTimeMs = new long[PENDING_CAPACITY];
+    private final long[] pendingOnsetNanos = new long[PENDING_CAPACITY]; // -1 to start when ready
+    private final boolean[] pendingReleased = new boolean[PENDING_CAPACITY];
+    private int pendingCount = 0;
+
+    private final CompletableFuture<Void> coreReady = new CompletableFuture<>();
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    // Velocity -> voice gain and tone filter coefficient, computed once
+    private final float[] velocityGain = new float[MAX_VELOCITY + 1];
+    private final float[] velocityTone = new float[MAX_VELOCITY + 1];
 
     private static class KeySample {
         final double frequency;
@@ -45,50 +99,402 @@ public class AudioEngine {
             new KeySample(1046.50, R.raw.c6)
     };
 
+    // Recording per MIDI note (null for notes that are pitch-shifted or unavailable)
+    private static final KeySample[] RECORDINGS = new KeySample[Midi.NOTE_COUNT];
+    // Every note that can get a sample, nearest to middle C first
+    private static final int[] LOAD_ORDER;
+
+    static {
+        for (KeySample sample : KEY_SAMPLES) {
+            int midi = Midi.fromFrequency(sample.frequency);
+            if (midi >= 0) {
+                RECORDINGS[midi] = sample;
+            }
+        }
+
+        int[] order = new int[Midi.NOTE_COUNT];
+        int count = 0;
+        for (int distance = 0; distance < Midi.NOTE_COUNT; distance++) {
+            int lower = MIDDLE_C - distance;
+            int upper = MIDDLE_C + distance;
+            if (lower >= 0 && findNearestRecording(lower) >= 0) {
+                order[count++] = lower;
+            }
+            if (distance > 0 && upper < Midi.NOTE_COUNT && findNearestRecording(upper) >= 0) {
+                order[count++] = upper;
+            }
+        }
+        LOAD_ORDER = Arrays.copyOf(order, count);
+    }
+
     public AudioEngine(Context context) {
-        AudioAttributes audioAttributes = new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_GAME)
-                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                .build();
+        int sampleRate = AudioOutput.getNativeSampleRate(context);
+        int burstFrames = AudioOutput.getNativeBurstFrames(context);
 
-        soundPool = new SoundPool.Builder()
-                .setMaxStreams(10)
-                .setAudioAttributes(audioAttributes)
-                .build();
+        Arrays.fill(midiSampleIds, -1);
+        for (int midi = 0; midi < Midi.NOTE_COUNT; midi++) {
+            sampleStates[midi] = findNearestRecording(midi) >= 0 ? SampleState.LOADING : SampleState.UNAVAILABLE;
+        }
+        buildVelocityTables(sampleRate);
+        mixer = new PcmMixer(MAX_VOICES, burstFrames, sampleRate);
+        audioOutput = new AudioOutput(mixer, sampleRate, burstFrames);
+        audioOutput.start();
 
-        loadSamples(context);
+        // Notes become playable as their samples arrive: immediately from the cache, or
+        // one by one while decoding on the first launch
+        Context appContext = context.getApplicationContext();
+        Thread loader = new Thread(() -> loadSamples(appContext, sampleRate), "AudioEngine-loader");
+        loader.start();
     }
 
-    private void loadSamples(Context context) {
+    private void loadSamples(Context context, int sampleRate) {
+        SampleCache cache = new SampleCache(new File(context.getCacheDir(), CACHE_FILE_NAME), sampleRate,
+                getSourceKey(context));
+        ShortBuffer[] cached = cache.load(Midi.NOTE_COUNT);
+        if (cached != null) {
+            for (int midi : LOAD_ORDER) {
+                if (cached[midi] != null) {
+                    registerSample(midi, cached[midi]);
+                }
+            }
+            finishLoading();
+            return;
+        }
+
+        // Someone may be waiting for the first notes; the rest streams in at background priority
+        Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT);
+        short[][] samples = new short[Midi.NOTE_COUNT][];
+        boolean[] failed = new boolean[Midi.NOTE_COUNT];
+        boolean complete = true;
+        for (int midi : LOAD_ORDER) {
+            if (Math.abs(midi - MIDDLE_C) > CORE_RANGE_SEMITONES && !coreReady.isDone()) {
+                coreReady.complete(null);
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            }
+            complete &= loadNote(context, sampleRate, midi, samples, failed);
+        }
+        finishLoading();
+
+        // Don't persist a partial set; the next launch retries the failed samples
+        if (complete) {
+            try {
+                cache.write(samples);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write sample cache", e);
+            }
+        }
+    }
+
+    /**
+     * Decode a recorded note, or derive a missing one (sharps and flats, plus a few notes
+     * past either end of the sampled range) by pitch-shifting the nearest recording.
+     * Shifting happens once here, so a synthesized note costs the same to trigger as a
+     * recorded one.
+     *
+     * @param samples PCM per MIDI note produced so far; recordings decoded as a shift
+     *                source are registered on the way
+     * @return false if the note could not be produced
+     */
+    private boolean loadNote(Context context, int sampleRate, int midi, short[][] samples, boolean[] failed) {
+        if (samples[midi] != null || failed[midi])
+            return !failed[midi];
+
+        int source = findNearestRecording(midi);
+        if (samples[source] == null && !failed[source]) {
+            try {
+                samples[source] = SampleDecoder.decode(context, RECORDINGS[source].resourceId, sampleRate);
+                registerSample(source, samples[source]);
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to decode sample for " + RECORDINGS[source].frequency + " Hz", e);
+                failed[source] = true;
+                markFailed(source);
+            }
+        }
+        if (source == midi)
+            return !failed[midi];
+
+        try {
+            if (failed[source])
+                throw new IllegalStateException("Source sample " + source + " failed");
+            samples[midi] = Resampler.pitchShift(samples[source], midi - source);
+            registerSample(midi, samples[midi]);
+            return true;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to synthesize MIDI note " + midi, e);
+            failed[midi] = true;
+            markFailed(midi);
+            return false;
+        }
+    }
+
+    /**
+     * Identifies the packaged recordings and how they are processed. The install time changes
+     * with every app update, which covers changed resources.
+     */
+    private static long getSourceKey(Context context) {
+        long key = 0;
+        try {
+            key = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Package info unavailable for the sample cache key", e);
+        }
+        key = key * 31 + MAX_SHIFT_SEMITONES;
         for (KeySample sample : KEY_SAMPLES) {
-            int soundId = soundPool.load(context, sample.resourceId, 1);
-            frequencySoundMap.put(sample.frequency, soundId);
+            key = key * 31 + Double.hashCode(sample.frequency);
+        }
+        return key;
+    }
+
+    /**
+     * @return The note itself if it is recorded, else the nearest recording within
+     *         {@link #MAX_SHIFT_SEMITONES} (the lower one on ties, since shifting up shortens
+     *         the sample), or -1 if there is none
+     */
+    private static int findNearestRecording(int midi) {
+        if (RECORDINGS[midi] != null)
+            return midi;
+        for (int distance = 1; distance <= MAX_SHIFT_SEMITONES; distance++) {
+            if (midi - distance >= 0 && RECORDINGS[midi - distance] != null)
+                return midi - distance;
+            if (midi + distance < Midi.NOTE_COUNT && RECORDINGS[midi + distance] != null)
+                return midi + distance;
+        }
+        return -1;
+    }
+
+    private void registerSample(int midi, short[] pcm) {
+        registerSample(midi, SampleDecoder.toDirectBuffer(pcm));
+    }
+
+    private void registerSample(int midi, ShortBuffer pcm) {
+        int sampleId = mixer.addSample(pcm);
+        if (sampleId < 0) {
+            Log.e(TAG, "Mixer sample table full, dropping MIDI note " + midi);
+            markFailed(midi);
+            return;
+        }
+
+        synchronized (pendingLock) {
+            midiSampleIds[midi] = sampleId;
+            sampleStates[midi] = SampleState.READY;
+            flushPending(midi, sampleId);
+        }
+    }
+
+    private void markFailed(int midi) {
+        synchronized (pendingLock) {
+            if (sampleStates[midi] == SampleState.LOADING) {
+                sampleStates[midi] = SampleState.FAILED;
+            }
+            flushPending(midi, -1);
+        }
+    }
+
+    /**
+     * Everything has been tried: notes still loading will not arrive.
+     */
+    private void finishLoading() {
+        synchronized (pendingLock) {
+            for (int midi = 0; midi < Midi.NOTE_COUNT; midi++) {
+                if (sampleStates[midi] == SampleState.LOADING) {
+                    sampleStates[midi] = SampleState.FAILED;
+                    flushPending(midi, -1);
+                }
+            }
+        }
+        coreReady.complete(null);
+        ready.complete(null);
+    }
+
+    /**
+     * Play (or discard, if stale or the sample failed) the queued notes for one MIDI note.
+     * Call with pendingLock held.
+     */
+    private void flushPending(int midi, int sampleId) {
+        long now = SystemClock.uptimeMillis();
+        long nowNanos = System.nanoTime();
+        int kept = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            if (pendingMidi[i] != midi) {
+                pendingMidi[kept] = pendingMidi[i];
+                pendingVelocity[kept] = pendingVelocity[i];
+                pendingTimeMs[kept] = pendingTimeMs[i];
+                pendingOnsetNanos[kept] = pendingOnsetNanos[i];
+                pendingReleased[kept] = pendingReleased[i];
+                kept++;
+                continue;
+            }
+
+            if (sampleId < 0) {
+                Log.w(TAG, "Dropping queued MIDI note " + midi + ": sample unavailable");
+                continue;
+            }
+            // A scheduled note is late from its onset, not from when it was queued
+            long onsetNanos = pendingOnsetNanos[i];
+            long lateMs = onsetNanos < 0 ? now - pendingTimeMs[i] : (nowNanos - onsetNanos) / 1_000_000L;
+            if (lateMs > MAX_PENDING_AGE_MS) {
+                Log.w(TAG, "Dropping queued MIDI note " + midi + ": " + lateMs + " ms late");
+            } else {
+                int velocity = pendingVelocity[i];
+                if (onsetNanos < 0) {
+                    mixer.noteOn(sampleId, midi, velocityGain[velocity], velocityTone[velocity]);
+                } else {
+                    mixer.noteOnAt(sampleId, midi, velocityGain[velocity], velocityTone[velocity], onsetNanos);
+                }
+                if (pendingReleased[i]) {
+                    // Key already let go: sound the strike, then go straight into release
+                    mixer.noteOff(midi);
+                }
+            }
+        }
+        pendingCount = kept;
+    }
+
+    public SampleState getSampleState(int midiNote) {
+        if (midiNote < 0 || midiNote >= Midi.NOTE_COUNT)
+            return SampleState.UNAVAILABLE;
+        synchronized (pendingLock) {
+            return sampleStates[midiNote];
+        }
+    }
+
+    /**
+     * Completes once the octave around middle C is playable (or has failed).
+     */
+    public CompletableFuture<Void> getCoreReadyFuture() {
+        return coreReady;
+    }
+
+    /**
+     * Completes once every sample has been loaded or has failed.
+     */
+    public CompletableFuture<Void> getReadyFuture() {
+        return ready;
+    }
+
+    /**
+     * Only one dynamic is recorded, so instead of switching between sample layers a soft
+     * strike is rendered quieter and darker: gain follows a decibel curve and a one-pole
+     * low-pass closes as the velocity drops.
+     */
+    private void buildVelocityTables(int sampleRate) {
+        for (int velocity = 1; velocity <= MAX_VELOCITY; velocity++) {
+            float amount = (velocity - 1) / (float) (MAX_VELOCITY - 1);
+            velocityGain[velocity] = (float) Math.pow(10.0, -VELOCITY_RANGE_DB * (1f - amount) / 20.0);
+
+            float brightness = Math.min(1f, (velocity - 1) / (float) (FULL_BRIGHTNESS_VELOCITY - 1));
+            if (brightness >= 1f) {
+                velocityTone[velocity] = 1f;
+            } else {
+                // Cutoff sweeps exponentially from SOFTEST_TONE_HZ up to Nyquist
+                double cutoff = SOFTEST_TONE_HZ * Math.pow(sampleRate / 2.0 / SOFTEST_TONE_HZ, brightness);
+                velocityTone[velocity] = (float) (1.0 - Math.exp(-2.0 * Math.PI * cutoff / sampleRate));
+            }
         }
     }
 
     public void playNote(double frequency) {
-        int soundId = -1;
-        double minDiff = Double.MAX_VALUE;
-
-        for (Map.Entry<Double, Integer> entry : frequencySoundMap.entrySet()) {
-            double diff = Math.abs(entry.getKey() - frequency);
-            if (diff < minDiff) {
-                minDiff = diff;
-                soundId = entry.getValue();
+        playMidi(Midi.fromFrequency(frequency));
+    }
+
+    /**
+     * Play the sample for a MIDI note number at full velocity. It sounds until the sample
+     * ends or {@link #releaseMidi} is called for the same note.
+     */
+    public void playMidi(int midiNote) {
+        playMidi(midiNote, MAX_VELOCITY);
+    }
+
+    /**
+     * @param velocity Strike velocity 1-127; scales loudness and brightness
+     */
+    public void playMidi(int midiNote, int velocity) {
+        startMidi(midiNote, velocity, -1);
+    }
+
+    /**
+     * Schedule a note to start at an exact time, for playback that knows its notes ahead
+     * (the demo). The mixer starts the voice on the frame that plays at that time;
+     * a time already past starts it with the next audio block.
+     *
+     * @param onsetNanos Start time on the System.nanoTime() clock
+     */
+    public void playNoteAt(double frequency, long onsetNanos) {
+        startMidi(Midi.fromFrequency(frequency), MAX_VELOCITY, onsetNanos);
+    }
+
+    private void startMidi(int midiNote, int velocity, long onsetNanos) {
+        if (midiNote < 0 || midiNote >= Midi.NOTE_COUNT) {
+            Log.w(TAG, "No sample found for MIDI note: " + midiNote);
+            return;
+        }
+
+        int v = Math.max(1, Math.min(MAX_VELOCITY, velocity));
+        int soundId = midiSampleIds[midiNote];
+        if (soundId == -1) {
+            synchronized (pendingLock) {
+                soundId = midiSampleIds[midiNote];
+                if (soundId == -1) {
+                    if (sampleStates[midiNote] == SampleState.LOADING) {
+                        queuePending(midiNote, v, onsetNanos);
+                    } else {
+                        Log.w(TAG, "No sample found for MIDI note: " + midiNote);
+                    }
+                    return;
+                }
             }
         }
 
-        if (soundId != -1 && minDiff < 1.0) {
-            soundPool.play(soundId, 1.0f, 1.0f, 1, 0, 1.0f);
+        if (onsetNanos < 0) {
+            mixer.noteOn(soundId, midiNote, velocityGain[v], velocityTone[v]);
         } else {
-            Log.w(TAG, "No sample found for frequency: " + frequency);
+            mixer.noteOnAt(soundId, midiNote, velocityGain[v], velocityTone[v], onsetNanos);
+        }
+        LatencyTracer.getInstance().markActiveFrame(LatencyTracer.STAGE_AUDIO);
+    }
+
+    /**
+     * Call with pendingLock held.
+     */
+    private void queuePending(int midiNote, int velocity, long onsetNanos) {
+        if (pendingCount == PENDING_CAPACITY) {
+            Log.w(TAG, "Pending note queue full, dropping MIDI note " + midiNote);
+            return;
+        }
+        pendingMidi[pendingCount] = midiNote;
+        pendingVelocity[pendingCount] = velocity;
+        pendingTimeMs[pendingCount] = SystemClock.uptimeMillis();
+        pendingOnsetNanos[pendingCount] = onsetNanos;
+        pendingReleased[pendingCount] = false;
+        pendingCount++;
+    }
+
+    /**
+     * Key released: let the note's voices fade out through their envelope release.
+     */
+    public void releaseMidi(int midiNote) {
+        if (midiNote < 0 || midiNote >= Midi.NOTE_COUNT)
+            return;
+
+        if (midiSampleIds[midiNote] == -1) {
+            synchronized (pendingLock) {
+                if (midiSampleIds[midiNote] == -1) {
+                    for (int i = 0; i < pendingCount; i++) {
+                        if (pendingMidi[i] == midiNote) {
+                            pendingReleased[i] = true;
+                        }
+                    }
+                    return;
+                }
+            }
         }
+        mixer.noteOff(midiNote);
     }
 
     public void release() {
-        if (soundPool != null) {
-            soundPool.release();
-            soundPool = null;
+        if (audioOutput != null) {
+            audioOutput.release();
+            audioOutput = null;
         }
     }
 }
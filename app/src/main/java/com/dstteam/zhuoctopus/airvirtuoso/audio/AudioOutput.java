@@ -0,0 +1,125 @@
+package com.dstteam.zhuoctopus.airvirtuoso.audio;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Streams a {@link PcmMixer} to a low-latency {@link AudioTrack} from a dedicated audio thread.
+ */
+public class AudioOutput {
+    private static final String TAG = "AudioOutput";
+
+    private static final int DEFAULT_SAMPLE_RATE = 48_000;
+    private static final int DEFAULT_BURST_FRAMES = 192; // 4 ms at 48 kHz
+    private static final int BUFFER_BURSTS = 2; // Double buffering keeps latency low without underruns
+
+    private final PcmMixer mixer;
+    private final int sampleRate;
+    private final int burstFrames;
+    private final AudioTrack audioTrack;
+    private Thread renderThread;
+    private volatile boolean running = false;
+
+    public AudioOutput(PcmMixer mixer, int sampleRate, int burstFrames) {
+        this.mixer = mixer;
+        this.sampleRate = sampleRate;
+        this.burstFrames = burstFrames;
+
+        int minBufferBytes = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+
+        audioTrack = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_GAME)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                        .build())
+                .setBufferSizeInBytes(Math.max(minBufferBytes, burstFrames * BUFFER_BURSTS * 2))
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY)
+                .build();
+
+        // Shrink the playback buffer towards one burst pair where the device allows it
+        audioTrack.setBufferSizeInFrames(burstFrames * BUFFER_BURSTS);
+    }
+
+    /**
+     * Native output rate of the device, which gets the fast mixer path.
+     */
+    public static int getNativeSampleRate(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        String rate = audioManager != null
+                ? audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE)
+                : null;
+        return parseOrDefault(rate, DEFAULT_SAMPLE_RATE);
+    }
+
+    /**
+     * Native burst size of the device in frames.
+     */
+    public static int getNativeBurstFrames(Context context) {
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        String frames = audioManager != null
+                ? audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_FRAMES_PER_BUFFER)
+                : null;
+        return parseOrDefault(frames, DEFAULT_BURST_FRAMES);
+    }
+
+    private static int parseOrDefault(String value, int fallback) {
+        try {
+            return value != null ? Integer.parseInt(value) : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public void start() {
+        if (running)
+            return;
+        running = true;
+        audioTrack.play();
+        renderThread = new Thread(this::renderLoop, "AudioOutput");
+        renderThread.start();
+    }
+
+    private void renderLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        short[] block = new short[burstFrames];
+        while (running) {
+            mixer.render(block, 0, burstFrames);
+            // Blocking write paces the loop to the hardware
+            int written = audioTrack.write(block, 0, burstFrames, AudioTrack.WRITE_BLOCKING);
+            if (written < 0) {
+                Log.e(TAG, "AudioTrack write failed: " + written);
+                break;
+            }
+        }
+    }
+
+    public void release() {
+        running = false;
+        if (renderThread != null) {
+            try {
+                renderThread.join(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            renderThread = null;
+        }
+        audioTrack.stop();
+        audioTrack.release();
+    }
+}
@@ -0,0 +1,511 @@
+package com.dstteam.zhuoctopus.airvirtuoso.audio;
+
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Mixes decoded mono PCM samples into an output block.
+ *
+ * Pure Java with no Android dependencies. Any thread may queue note-on and note-off events;
+ * a single render thread applies them at the start of each block and mixes the active voices
+ * from a fixed pool. Each voice runs an ADSR envelope: note-off moves it into release, and
+ * when the pool is full the quietest releasing voice (or else the oldest) is stolen.
+ * A per-voice one-pole low-pass darkens softly struck notes.
+ * Notes can also be scheduled for a future time; they start at the matching frame inside
+ * the block instead of at the next block boundary.
+ * All state is preallocated, so {@link #render} never allocates.
+ */
+public class PcmMixer {
+
+    public static final int MAX_SAMPLES = 512;
+    public static final int NO_NOTE = -1; // Voice tag for one-shots that never get a note-off
+    private static final int COMMAND_CAPACITY = 64; // Power of two
+    private static final int COMMAND_NOTE_OFF = -1; // Sample id slot value marking a note-off
+    private static final float SHORT_TO_FLOAT = 1f / 32768f;
+    private static final float DEFAULT_MASTER_GAIN = 0.8f; // Headroom for a few overlapping notes
+
+    // Envelope stages
+    private static final int STAGE_IDLE = 0;
+    private static final int STAGE_ATTACK = 1;
+    private static final int STAGE_DECAY = 2;
+    private static final int STAGE_SUSTAIN = 3;
+    private static final int STAGE_RELEASE = 4;
+
+    // Default envelope: the recordings carry their own decay, so it mostly just holds the
+    // level, softens the onset click and damps the note after key release.
+    private static final float DEFAULT_ATTACK_MS = 2f;
+    private static final float DEFAULT_DECAY_MS = 0f;
+    private static final float DEFAULT_SUSTAIN_LEVEL = 1f;
+    private static final float DEFAULT_RELEASE_MS = 300f;
+    private static final float RETRIGGER_RELEASE_MS = 30f; // Re-striking a held note damps the old voice
+
+    // Registered samples; an id is valid once it is below sampleCount
+    private final ShortBuffer[] samples = new ShortBuffer[MAX_SAMPLES];
+    private final int[] sampleLength = new int[MAX_SAMPLES];
+    private volatile int sampleCount = 0;
+
+    // Voice pool (render thread only)
+    private final int maxVoices;
+    private final int[] voiceStage;
+    private final int[] voiceSample;
+    private final int[] voiceNote;
+    private final int[] voicePosition;
+    private final float[] voiceGain;
+    private final float[] voiceTone; // One-pole low-pass coefficient, 1 = unfiltered
+    private final float[] voiceToneState;
+    private final float[] voiceLevel;
+    private final float[] voiceLevelStep;
+    private final long[] voiceStartOrder;
+    private final int[] voiceDelay; // Frames to wait before a scheduled voice starts
+    private final boolean[] voiceWaiting; // Scheduled and not started yet
+    private final int[] voiceReleaseAt; // Frame of this block where a re-strike damps the voice, or -1
+    private long voiceCounter = 0;
+    private volatile long voicesStolen = 0;
+
+    // Envelope in per-sample steps, read by the render thread at each stage change
+    private final int sampleRate;
+    private volatile float attackStep;
+    private volatile float decayStep;
+    private volatile float sustainLevel;
+    private volatile float releaseStep;
+    private final float retriggerReleaseStep;
+
+    // Bounded multi-producer queue of note commands, consumed by the render thread
+    private final int[] commandSample = new int[COMMAND_CAPACITY];
+    private final int[] commandNote = new int[COMMAND_CAPACITY];
+    private final float[] commandGain = new float[COMMAND_CAPACITY];
+    private final float[] commandTone = new float[COMMAND_CAPACITY];
+    private final long[] commandStartFrame = new long[COMMAND_CAPACITY]; // -1 = next block
+    private final AtomicLongArray commandSequence = new AtomicLongArray(COMMAND_CAPACITY);
+    private final AtomicLong commandWrite = new AtomicLong();
+    private long commandRead = 0;
+    private volatile long commandsDropped = 0;
+
+    // Render clock: frame count at the start of the last block and when it was rendered.
+    // Published by the render thread under a sequence counter so producers read a
+    // consistent pair.
+    private long framesRendered = 0;
+    private volatile long clockVersion = 0;
+    private volatile long clockFrame = 0;
+    private volatile long clockNanos = 0;
+
+    private final float[] mixBuffer;
+    private volatile float masterGain = DEFAULT_MASTER_GAIN;
+
+    /**
+     * @param maxVoices      Size of the voice pool
+     * @param maxBlockFrames Largest block that will be passed to {@link #render}
+     * @param sampleRate     Output rate, used to convert envelope times to samples
+     */
+    public PcmMixer(int maxVoices, int maxBlockFrames, int sampleRate) {
+        this.maxVoices = maxVoices;
+        this.sampleRate = sampleRate;
+        voiceStage = new int[maxVoices];
+        voiceSample = new int[maxVoices];
+        voiceNote = new int[maxVoices];
+        voicePosition = new int[maxVoices];
+        voiceGain = new float[maxVoices];
+        voiceTone = new float[maxVoices];
+        voiceToneState = new float[maxVoices];
+        voiceLevel = new float[maxVoices];
+        voiceLevelStep = new float[maxVoices];
+        voiceStartOrder = new long[maxVoices];
+        voiceDelay = new int[maxVoices];
+        voiceWaiting = new boolean[maxVoices];
+        voiceReleaseAt = new int[maxVoices];
+        Arrays.fill(voiceReleaseAt, -1);
+        mixBuffer = new float[maxBlockFrames];
+        for (int i = 0; i < COMMAND_CAPACITY; i++) {
+            commandSequence.set(i, i); // Slot i is free for write position i
+        }
+        retriggerReleaseStep = stepForDuration(RETRIGGER_RELEASE_MS);
+        setEnvelope(DEFAULT_ATTACK_MS, DEFAULT_DECAY_MS, DEFAULT_SUSTAIN_LEVEL, DEFAULT_RELEASE_MS);
+    }
+
+    /**
+     * Register a decoded sample (mono, output sample rate). The buffer must not be modified
+     * afterwards.
+     *
+     * @return Sample id to pass to {@link #noteOn}, or -1 if the table is full
+     */
+    public synchronized int addSample(ShortBuffer pcm) {
+        int id = sampleCount;
+        if (id >= MAX_SAMPLES)
+            return -1;
+        samples[id] = pcm;
+        sampleLength[id] = pcm.limit();
+        sampleCount = id + 1; // Volatile write publishes the slot to the render thread
+        return id;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setMasterGain(float gain) {
+        masterGain = gain;
+    }
+
+    /**
+     * Envelope for all voices. Stages ramp linearly; release falls at the rate that takes
+     * a full-level voice to silence in {@code releaseMs}.
+     */
+    public void setEnvelope(float attackMs, float decayMs, float sustainLevel, float releaseMs) {
+        this.attackStep = stepForDuration(attackMs);
+        this.decayStep = stepForDuration(decayMs) * (1f - sustainLevel);
+        this.sustainLevel = sustainLevel;
+        this.releaseStep = stepForDuration(releaseMs);
+    }
+
+    /**
+     * Level change per sample that covers the full 0..1 range in the given time.
+     */
+    private float stepForDuration(float durationMs) {
+        float samples = durationMs * sampleRate / 1000f;
+        return samples >= 1f ? 1f / samples : 1f;
+    }
+
+    /**
+     * Queue a one-shot that plays until its sample ends. Safe from any thread, never blocks.
+     *
+     * @return false if the command queue was full and the note was dropped
+     */
+    public boolean noteOn(int sampleId, float gain) {
+        return noteOn(sampleId, NO_NOTE, gain);
+    }
+
+    /**
+     * Queue a sample to start at the next block, tagged with a note number so that
+     * {@link #noteOff} can release it. Safe from any thread, never blocks.
+     *
+     * @return false if the command queue was full and the note was dropped
+     */
+    public boolean noteOn(int sampleId, int note, float gain) {
+        return noteOn(sampleId, note, gain, 1f);
+    }
+
+    /**
+     * Like {@link #noteOn(int, int, float)}, with the voice passed through a one-pole
+     * low-pass filter.
+     *
+     * @param tone Filter coefficient in (0, 1]; 1 leaves the sample unfiltered
+     */
+    public boolean noteOn(int sampleId, int note, float gain, float tone) {
+        if (sampleId < 0 || sampleId >= sampleCount)
+            return false;
+        return enqueue(sampleId, note, gain, tone, -1);
+    }
+
+    /**
+     * Like {@link #noteOn(int, int, float, float)}, but starting at a given time on the
+     * {@link System#nanoTime()} clock. Times in the past start at the next block.
+     * Lets a sequencer queue notes ahead and still have them sound with sample accuracy.
+     */
+    public boolean noteOnAt(int sampleId, int note, float gain, float tone, long startNanos) {
+        if (sampleId < 0 || sampleId >= sampleCount)
+            return false;
+        return enqueue(sampleId, note, gain, tone, frameAt(startNanos));
+    }
+
+    /**
+     * Output frame that will be rendered at the given time, extrapolated from the last block.
+     *
+     * @return Frame index, or -1 if nothing has been rendered yet
+     */
+    long frameAt(long nanos) {
+        long version;
+        long frame;
+        long frameNanos;
+        do {
+            version = clockVersion;
+            frame = clockFrame;
+            frameNanos = clockNanos;
+        } while ((version & 1) != 0 || version != clockVersion);
+
+        if (version == 0)
+            return -1;
+        return frame + Math.round((nanos - frameNanos) * (sampleRate / 1e9));
+    }
+
+    /**
+     * Move every voice tagged with this note into its release stage.
+     *
+     * @return false if the command queue was full and the event was dropped
+     */
+    public boolean noteOff(int note) {
+        if (note == NO_NOTE)
+            return false;
+        return enqueue(COMMAND_NOTE_OFF, note, 0f, 1f, -1);
+    }
+
+    private boolean enqueue(int sampleId, int note, float gain, float tone, long startFrame) {
+        while (true) {
+            long write = commandWrite.get();
+            int slot = (int) (write & (COMMAND_CAPACITY - 1));
+            long sequence = commandSequence.get(slot);
+            if (sequence < write) {
+                // Render thread hasn't consumed this slot from the previous lap: queue full
+                commandsDropped++;
+                return false;
+            }
+            if (sequence == write && commandWrite.compareAndSet(write, write + 1)) {
+                commandSample[slot] = sampleId;
+                commandNote[slot] = note;
+                commandGain[slot] = gain;
+                commandTone[slot] = tone;
+                commandStartFrame[slot] = startFrame;
+                commandSequence.set(slot, write + 1); // Publish
+                return true;
+            }
+            // Another producer claimed this position first; retry with the next one
+        }
+    }
+
+    public long getCommandsDropped() {
+        return commandsDropped;
+    }
+
+    /**
+     * @return Number of voices taken over while still sounding because the pool was full
+     */
+    public long getVoicesStolen() {
+        return voicesStolen;
+    }
+
+    /**
+     * @return Number of voices currently sounding (render thread view)
+     */
+    public int getActiveVoiceCount() {
+        int count = 0;
+        for (int v = 0; v < maxVoices; v++) {
+            if (voiceStage[v] != STAGE_IDLE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Mix one block of 16-bit mono output. Call from the render thread only.
+     */
+    public void render(short[] out, int offset, int frames) {
+        render(out, offset, frames, System.nanoTime());
+    }
+
+    /**
+     * @param nowNanos Time the block is rendered, anchoring {@link #noteOnAt} schedules
+     */
+    public void render(short[] out, int offset, int frames, long nowNanos) {
+        clockVersion++; // Odd: update in progress
+        clockFrame = framesRendered;
+        clockNanos = nowNanos;
+        clockVersion++;
+
+        drainCommands();
+
+        float[] mix = mixBuffer;
+        float sustain = sustainLevel;
+        for (int i = 0; i < frames; i++) {
+            mix[i] = 0f;
+        }
+        startScheduledVoices(frames);
+
+        for (int v = 0; v < maxVoices; v++) {
+            if (voiceStage[v] == STAGE_IDLE)
+                continue;
+
+            int start = voiceDelay[v];
+            if (start >= frames) {
+                voiceDelay[v] = start - frames; // Scheduled for a later block
+                continue;
+            }
+            voiceDelay[v] = 0;
+
+            int id = voiceSample[v];
+            ShortBuffer pcm = samples[id];
+            int position = voicePosition[v];
+            int count = Math.min(frames - start, sampleLength[id] - position);
+            float gain = voiceGain[v] * SHORT_TO_FLOAT;
+            float level = voiceLevel[v];
+            float step = voiceLevelStep[v];
+            float tone = voiceTone[v];
+            float filtered = voiceToneState[v];
+            int releaseIndex = voiceReleaseAt[v] >= 0 ? voiceReleaseAt[v] - start : -1;
+            voiceReleaseAt[v] = -1;
+            int i = 0;
+            while (i < count) {
+                if (i == releaseIndex && voiceStage[v] != STAGE_RELEASE) {
+                    // The same note starts again here
+                    voiceStage[v] = STAGE_RELEASE;
+                    step = voiceLevelStep[v] = -retriggerReleaseStep;
+                }
+                // Run the current envelope segment until the block ends, the stage changes
+                // or a re-strike damps the voice
+                int stage = voiceStage[v];
+                int end = releaseIndex > i ? Math.min(count, releaseIndex) : count;
+                for (; i < end; i++) {
+                    level += step;
+                    if (stage == STAGE_ATTACK ? level >= 1f
+                            : stage == STAGE_DECAY ? level <= sustain
+                            : stage == STAGE_RELEASE && level <= 0f)
+                        break;
+                    filtered += (pcm.get(position + i) - filtered) * tone;
+                    mix[start + i] += filtered * gain * level;
+                }
+                if (i < end) {
+                    level = advanceEnvelope(v, stage, sustain);
+                    step = voiceLevelStep[v];
+                    if (voiceStage[v] == STAGE_IDLE)
+                        break;
+                    filtered += (pcm.get(position + i) - filtered) * tone;
+                    mix[start + i] += filtered * gain * level;
+                    i++;
+                }
+            }
+            voiceLevel[v] = level;
+            voiceToneState[v] = filtered;
+
+            position += count;
+            if (position >= sampleLength[id]) {
+                voiceStage[v] = STAGE_IDLE;
+            }
+            voicePosition[v] = position;
+        }
+
+        float master = masterGain;
+        for (int i = 0; i < frames; i++) {
+            float value = mix[i] * master;
+            if (value > 1f) {
+                value = 1f;
+            } else if (value < -1f) {
+                value = -1f;
+            }
+            out[offset + i] = (short) (value * 32767f);
+        }
+        framesRendered += frames;
+    }
+
+    /**
+     * Move a voice past the stage whose target it just reached.
+     *
+     * @return Level at the start of the next stage
+     */
+    private float advanceEnvelope(int v, int stage, float sustain) {
+        switch (stage) {
+            case STAGE_ATTACK:
+                if (sustain < 1f) {
+                    voiceStage[v] = STAGE_DECAY;
+                    voiceLevelStep[v] = -decayStep;
+                } else {
+                    voiceStage[v] = STAGE_SUSTAIN;
+                    voiceLevelStep[v] = 0f;
+                }
+                return 1f;
+            case STAGE_DECAY:
+                voiceStage[v] = STAGE_SUSTAIN;
+                voiceLevelStep[v] = 0f;
+                return sustain;
+            default:
+                voiceStage[v] = STAGE_IDLE;
+                voiceLevelStep[v] = 0f;
+                return 0f;
+        }
+    }
+
+    private void drainCommands() {
+        while (true) {
+            int slot = (int) (commandRead & (COMMAND_CAPACITY - 1));
+            if (commandSequence.get(slot) != commandRead + 1)
+                return; // Nothing published at this position yet
+
+            if (commandSample[slot] == COMMAND_NOTE_OFF) {
+                releaseNote(commandNote[slot], releaseStep);
+            } else {
+                long startFrame = commandStartFrame[slot];
+                long delay = startFrame < 0 ? 0 : Math.max(0, startFrame - framesRendered);
+                startVoice(commandSample[slot], commandNote[slot], commandGain[slot], commandTone[slot],
+                        (int) Math.min(Integer.MAX_VALUE, delay));
+            }
+            // Free the slot for the producer one lap ahead
+            commandSequence.set(slot, commandRead + COMMAND_CAPACITY);
+            commandRead++;
+        }
+    }
+
+    private void releaseNote(int note, float step) {
+        for (int v = 0; v < maxVoices; v++) {
+            // Voices still waiting for their scheduled start are left to sound
+            if (voiceNote[v] == note && voiceStage[v] != STAGE_IDLE && voiceStage[v] != STAGE_RELEASE
+                    && !voiceWaiting[v]) {
+                voiceStage[v] = STAGE_RELEASE;
+                voiceLevelStep[v] = -step;
+            }
+        }
+    }
+
+    /**
+     * For scheduled voices starting in this block, mark the frame at which the voices
+     * already sounding their note are damped, so a re-strike cuts in exactly at its onset.
+     */
+    private void startScheduledVoices(int frames) {
+        for (int v = 0; v < maxVoices; v++) {
+            if (!voiceWaiting[v] || voiceStage[v] == STAGE_IDLE || voiceDelay[v] >= frames)
+                continue;
+            voiceWaiting[v] = false;
+            int note = voiceNote[v];
+            if (note == NO_NOTE)
+                continue;
+            for (int other = 0; other < maxVoices; other++) {
+                if (other != v && voiceNote[other] == note && !voiceWaiting[other]
+                        && voiceStage[other] != STAGE_IDLE && voiceStage[other] != STAGE_RELEASE
+                        && (voiceReleaseAt[other] < 0 || voiceDelay[v] < voiceReleaseAt[other])) {
+                    voiceReleaseAt[other] = voiceDelay[v];
+                }
+            }
+        }
+    }
+
+    private void startVoice(int sampleId, int note, float gain, float tone, int delayFrames) {
+        // A scheduled voice damps the old one when it starts, in render
+        if (note != NO_NOTE && delayFrames == 0) {
+            releaseNote(note, retriggerReleaseStep);
+        }
+
+        // Free voice first, then the quietest releasing voice, then the oldest one
+        int target = -1;
+        int quietest = -1;
+        int oldest = -1;
+        for (int v = 0; v < maxVoices; v++) {
+            if (voiceStage[v] == STAGE_IDLE) {
+                target = v;
+                break;
+            }
+            if (voiceStage[v] == STAGE_RELEASE && (quietest < 0 || voiceLevel[v] < voiceLevel[quietest])) {
+                quietest = v;
+            }
+            if (oldest < 0 || voiceStartOrder[v] < voiceStartOrder[oldest]) {
+                oldest = v;
+            }
+        }
+        if (target < 0) {
+            target = quietest >= 0 ? quietest : oldest;
+            voicesStolen++;
+        }
+
+        voiceStage[target] = STAGE_ATTACK;
+        voiceSample[target] = sampleId;
+        voiceNote[target] = note;
+        voicePosition[target] = 0;
+        voiceGain[target] = gain;
+        voiceTone[target] = tone;
+        voiceToneState[target] = 0f;
+        voiceLevel[target] = 0f;
+        voiceLevelStep[target] = attackStep;
+        voiceStartOrder[target] = voiceCounter++;
+        voiceDelay[target] = delayFrames;
+        voiceWaiting[target] = delayFrames > 0;
+        voiceReleaseAt[target] = -1;
+    }
+}
@@ -0,0 +1,123 @@
+package com.dstteam.zhuoctopus.airvirtuoso.audio;
+
+/**
+ * Band-limited resampling of 16-bit mono PCM with a Kaiser-windowed sinc kernel.
+ *
+ * Used offline (sample-rate conversion and pitch shifting at load time), so it favours
+ * quality over speed: 32 taps per output sample, with the kernel interpolated between
+ * 512 precomputed phases. When the input is read faster than real time the cutoff is
+ * lowered with the step, so shifting a sample up does not fold harmonics back down.
+ */
+public final class Resampler {
+
+    private static final int HALF_TAPS = 16;
+    private static final int TAPS = HALF_TAPS * 2;
+    private static final int PHASES = 512;
+    private static final double KAISER_BETA = 8.0; // About -80 dB stopband
+    private static final double PASSBAND = 0.95; // Cutoff as a fraction of the output Nyquist rate
+
+    private Resampler() {
+    }
+
+    /**
+     * Convert between sample rates without changing the pitch.
+     */
+    public static short[] convertRate(short[] input, int inputRate, int outputRate) {
+        if (inputRate == outputRate)
+            return input.clone();
+        return resample(input, (double) inputRate / outputRate);
+    }
+
+    /**
+     * Shift the pitch by a number of semitones. The output plays back at the same sample
+     * rate, so it gets shorter when shifted up and longer when shifted down.
+     */
+    public static short[] pitchShift(short[] input, double semitones) {
+        return resample(input, Math.pow(2.0, semitones / 12.0));
+    }
+
+    /**
+     * @param step Input samples advanced per output sample
+     */
+    public static short[] resample(short[] input, double step) {
+        if (!(step > 0))
+            throw new IllegalArgumentException("step must be positive: " + step);
+
+        int outputLength = (int) Math.floor(input.length / step);
+        short[] output = new short[outputLength];
+        float[] kernel = buildKernel(PASSBAND * Math.min(1.0, 1.0 / step));
+
+        for (int i = 0; i < outputLength; i++) {
+            double position = i * step;
+            int base = (int) position;
+            double phasePosition = (position - base) * PHASES;
+            int phase = (int) phasePosition;
+            float blend = (float) (phasePosition - phase);
+            int row = phase * TAPS;
+            int nextRow = row + TAPS;
+
+            // Taps run from base - HALF_TAPS + 1 to base + HALF_TAPS
+            float sum = 0f;
+            int first = base - HALF_TAPS + 1;
+            for (int t = 0; t < TAPS; t++) {
+                int index = first + t;
+                if (index < 0 || index >= input.length)
+                    continue;
+                float weight = kernel[row + t] + (kernel[nextRow + t] - kernel[row + t]) * blend;
+                sum += input[index] * weight;
+            }
+
+            int value = Math.round(sum);
+            output[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        }
+        return output;
+    }
+
+    /**
+     * Kernel rows for fractional offsets 0..1 (one extra row so phases can be blended).
+     *
+     * @param cutoff Cutoff frequency relative to the input Nyquist rate
+     */
+    private static float[] buildKernel(double cutoff) {
+        float[] kernel = new float[(PHASES + 1) * TAPS];
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int phase = 0; phase <= PHASES; phase++) {
+            double fraction = (double) phase / PHASES;
+            for (int t = 0; t < TAPS; t++) {
+                // Distance from the output position to input sample (base - HALF_TAPS + 1 + t)
+                double distance = t - HALF_TAPS + 1 - fraction;
+                double window = distance / HALF_TAPS;
+                double weight = 0;
+                if (Math.abs(window) < 1.0) {
+                    weight = cutoff * sinc(cutoff * distance)
+                            * besselI0(KAISER_BETA * Math.sqrt(1.0 - window * window)) / i0Beta;
+                }
+                kernel[phase * TAPS + t] = (float) weight;
+            }
+        }
+        return kernel;
+    }
+
+    private static double sinc(double x) {
+        if (Math.abs(x) < 1e-9)
+            return 1.0;
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    /**
+     * Zeroth-order modified Bessel function of the first kind (power series).
+     */
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double halfX = x / 2.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12)
+                break;
+        }
+        return sum;
+    }
+}
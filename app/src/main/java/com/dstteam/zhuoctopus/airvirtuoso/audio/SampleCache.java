@@ -0,0 +1,148 @@
+package com.dstteam.zhuoctopus.airvirtuoso.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * On-disk cache of decoded 16-bit mono PCM, one entry per MIDI note.
+ *
+ * The first launch decodes (and pitch-shifts) the samples and writes them here; later
+ * launches map the file read-only, so the samples are available without decoding and
+ * their pages live in the OS page cache rather than on the Java heap.
+ *
+ * Layout (little-endian): magic, format version, sample rate, source key (long), entry
+ * count, then one (midi note, offset in samples, length in samples) triple per entry,
+ * followed by the sample data. A file whose header does not match the expected version,
+ * rate and key is treated as missing.
+ */
+public class SampleCache {
+
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x41565043; // "AVPC"
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 4;
+    private static final int ENTRY_BYTES = 4 + 4 + 4;
+
+    private final File file;
+    private final int sampleRate;
+    private final long sourceKey;
+
+    /**
+     * @param sampleRate Output rate the samples were rendered at
+     * @param sourceKey  Identifies the source recordings and processing; any change
+     *                   invalidates the cache
+     */
+    public SampleCache(File file, int sampleRate, long sourceKey) {
+        this.file = file;
+        this.sampleRate = sampleRate;
+        this.sourceKey = sourceKey;
+    }
+
+    /**
+     * Map the cache file.
+     *
+     * @param noteCount Size of the returned table
+     * @return Read-only PCM per MIDI note (null where absent), or null if the cache is
+     *         missing, stale or damaged
+     */
+    public ShortBuffer[] load(int noteCount) {
+        if (!file.isFile())
+            return null;
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+                FileChannel channel = input.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_BYTES)
+                return null;
+
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION || mapped.getInt() != sampleRate
+                    || mapped.getLong() != sourceKey)
+                return null;
+
+            int entryCount = mapped.getInt();
+            long dataStart = HEADER_BYTES + (long) entryCount * ENTRY_BYTES;
+            if (entryCount < 0 || dataStart > size)
+                return null;
+
+            ShortBuffer[] samples = new ShortBuffer[noteCount];
+            for (int i = 0; i < entryCount; i++) {
+                int note = mapped.getInt();
+                int offset = mapped.getInt();
+                int length = mapped.getInt();
+                long start = dataStart + (long) offset * 2;
+                long end = start + (long) length * 2;
+                if (note < 0 || note >= noteCount || offset < 0 || length < 0 || end > size)
+                    return null;
+
+                ByteBuffer bytes = mapped.duplicate();
+                bytes.limit((int) end).position((int) start);
+                samples[note] = bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            }
+            return samples;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write all samples, replacing any previous cache. The file is written under a
+     * temporary name and renamed, so a crash never leaves a half-written cache behind.
+     *
+     * @param samples PCM per MIDI note, null where absent
+     */
+    public void write(short[][] samples) throws IOException {
+        int entryCount = 0;
+        for (short[] pcm : samples) {
+            if (pcm != null) {
+                entryCount++;
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile output = new RandomAccessFile(temp, "rw");
+                FileChannel channel = output.getChannel()) {
+            channel.truncate(0);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + entryCount * ENTRY_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(sampleRate).putLong(sourceKey).putInt(entryCount);
+            int offset = 0;
+            for (int note = 0; note < samples.length; note++) {
+                if (samples[note] == null)
+                    continue;
+                header.putInt(note).putInt(offset).putInt(samples[note].length);
+                offset += samples[note].length;
+            }
+            header.flip();
+            writeFully(channel, header);
+
+            for (short[] pcm : samples) {
+                if (pcm == null)
+                    continue;
+                ByteBuffer data = ByteBuffer.allocate(pcm.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+                data.asShortBuffer().put(pcm);
+                writeFully(channel, data);
+            }
+            channel.force(false);
+        }
+
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.dstteam.zhuoctopus.airvirtuoso.audio;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Decodes a compressed raw resource (FLAC) to 16-bit mono PCM at the mixer's sample rate.
+ */
+public class SampleDecoder {
+
+    private static final long DEQUEUE_TIMEOUT_US = 10_000;
+
+    private SampleDecoder() {
+    }
+
+    /**
+     * @return Decoded mono samples at the output sample rate
+     */
+    public static short[] decode(Context context, int resourceId, int outputSampleRate) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try (AssetFileDescriptor fd = context.getResources().openRawResourceFd(resourceId)) {
+            extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+
+            MediaFormat format = extractor.getTrackFormat(0);
+            extractor.selectTrack(0);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+
+            codec = MediaCodec.createDecoderByType(mime);
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            short[] mono = decodeToMono(extractor, codec, channels);
+            return sampleRate == outputSampleRate ? mono
+                    : Resampler.convertRate(mono, sampleRate, outputSampleRate);
+        } finally {
+            if (codec != null) {
+                codec.stop();
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private static short[] decodeToMono(MediaExtractor extractor, MediaCodec codec, int channels) {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        short[] mono = new short[48_000];
+        int length = 0;
+        boolean inputDone = false;
+
+        while (true) {
+            if (!inputDone) {
+                int inputIndex = codec.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    ByteBuffer input = codec.getInputBuffer(inputIndex);
+                    int size = extractor.readSampleData(input, 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int outputIndex = codec.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+            if (outputIndex < 0)
+                continue;
+
+            ByteBuffer outputBytes = codec.getOutputBuffer(outputIndex);
+            outputBytes.position(info.offset);
+            outputBytes.limit(info.offset + info.size);
+            ShortBuffer output = outputBytes.slice().order(ByteOrder.nativeOrder()).asShortBuffer();
+            int frames = info.size / 2 / channels;
+            if (length + frames > mono.length) {
+                mono = Arrays.copyOf(mono, Math.max(mono.length * 2, length + frames));
+            }
+            // Downmix interleaved channels to mono
+            for (int i = 0; i < frames; i++) {
+                int sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += output.get(i * channels + c);
+                }
+                mono[length++] = (short) (sum / channels);
+            }
+            codec.releaseOutputBuffer(outputIndex, false);
+
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0)
+                break;
+        }
+        return Arrays.copyOf(mono, length);
+    }
+
+    /**
+     * Copy samples into a native-order direct buffer for the mixer.
+     */
+    public static ShortBuffer toDirectBuffer(short[] samples) {
+        ShortBuffer buffer = ByteBuffer.allocateDirect(samples.length * 2)
+                .order(ByteOrder.nativeOrder())
+                .asShortBuffer();
+        buffer.put(samples);
+        buffer.flip();
+        return buffer;
+    }
+}
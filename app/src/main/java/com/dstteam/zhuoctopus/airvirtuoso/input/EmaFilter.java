@@ -0,0 +1,39 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Fixed-alpha exponential moving average, the original smoothing.
+ */
+public class EmaFilter implements LandmarkFilter {
+
+    public static final float DEFAULT_ALPHA = 0.5f; // Reduced for stronger smoothing (less jitter)
+
+    private final float[] value;
+    private final boolean[] initialized;
+    private float alpha = DEFAULT_ALPHA;
+
+    public EmaFilter(int channels) {
+        value = new float[channels];
+        initialized = new boolean[channels];
+    }
+
+    public void setAlpha(float alpha) {
+        this.alpha = alpha;
+    }
+
+    @Override
+    public void reset(int channel) {
+        initialized[channel] = false;
+    }
+
+    @Override
+    public float filter(int channel, float raw, float dtSeconds) {
+        if (!initialized[channel]) {
+            initialized[channel] = true;
+            value[channel] = raw;
+        } else {
+            // EMA Filter: smoothed = alpha * target + (1 - alpha) * previous
+            value[channel] = alpha * raw + (1 - alpha) * value[channel];
+        }
+        return value[channel];
+    }
+}
@@ -0,0 +1,492 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.dstteam.zhuoctopus.airvirtuoso.analysis.GestureDetector;
+import com.dstteam.zhuoctopus.airvirtuoso.analysis.PostureAnalyzer;
+import com.dstteam.zhuoctopus.airvirtuoso.logic.HandPositionValidator;
+import com.dstteam.zhuoctopus.airvirtuoso.ml.LandmarkFrame;
+import com.dstteam.zhuoctopus.airvirtuoso.perf.LatencyTracer;
+import com.dstteam.zhuoctopus.airvirtuoso.ui.PianoOverlayView;
+import com.dstteam.zhuoctopus.airvirtuoso.util.TripleBuffer;
+import com.google.mediapipe.tasks.components.containers.NormalizedLandmark;
+import com.google.mediapipe.tasks.vision.handlandmarker.HandLandmarkerResult;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Turns landmarker results into key events on a dedicated high-priority thread.
+ *
+ * Smoothing, collision detection, the per-finger arming state machine, posture and
+ * hi-five detection all run here, so UI jank never delays a note. Note events go straight
+ * to the {@link Listener}; the overlay only renders the {@link InputSnapshot} published
+ * after each frame.
+ */
+public class InputEngine {
+
+    public interface Listener {
+        // All callbacks run on the input thread
+
+        /**
+         * @param velocity Strike velocity, 1-127
+         */
+        void onNoteOn(int keyIndex, int midiNote, int velocity, double frequency);
+
+        void onNoteOff(int keyIndex, int midiNote, double frequency);
+
+        void onHiFive();
+
+        /**
+         * A new snapshot is ready for {@link #consumeSnapshot()}.
+         */
+        void onSnapshotPublished();
+    }
+
+    private static final int[] FINGERTIPS = { 4, 8, 12, 16, 20 };
+    private static final int FINGER_COUNT = LandmarkBuffer.MAX_HANDS * FINGERTIPS.length;
+
+    // Depth/Distance Logic
+    private static final float MIN_HAND_SCALE = 0.08f; // Lowered threshold to allow playing from further away
+    private static final float HAND_SPREAD_FACTOR = 1.10f; // Spread hands horizontally to fix "pinched" alignment
+    private static final float HAND_SPREAD_FACTOR_Y = 1.10f; // Spread hands vertically to fix alignment
+    private static final float GHOST_HAND_DISTANCE = 0.1f; // Hands closer than 10% of the frame are duplicates
+
+    private static final long HI_FIVE_COOLDOWN_MS = 3000; // Only trigger once every 3 seconds
+
+    // Predictive strikes: fire when the fingertip is projected to land on a key within the
+    // time the frame has already spent in the pipeline
+    private static final long MAX_STRIKE_LOOKAHEAD_MS = 80; // Beyond this, extrapolation gets unreliable
+    private static final long PREDICTED_STRIKE_CONFIRM_MS = 150; // Time for the finger to reach a predicted key
+    private static final float MIN_STRIKE_SPEED_VIEW_HEIGHTS = 0.5f; // Minimum downward speed, view heights per second
+
+    private static final PostureAnalyzer.PostureResult POSTURE_TOO_FAR = new PostureAnalyzer.PostureResult(
+            PostureAnalyzer.PostureStatus.WARNING, 0.0f, "👋 Move closer to piano");
+    private static final PostureAnalyzer.PostureResult POSTURE_FIST = new PostureAnalyzer.PostureResult(
+            PostureAnalyzer.PostureStatus.DANGER, 0.0f, "✋ Open your hand in a curved shape");
+
+    // Track per-finger tap state to prevent sliding retriggers
+    private static class FingerState {
+        int activeKeyIndex = -1;
+        boolean isArmed = true; // True when finger is above keyboard and ready to trigger
+        long predictedAtMs = -1; // Frame time of a predicted strike awaiting contact, -1 if none
+    }
+
+    private final Listener listener;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final LatencyTracer tracer = LatencyTracer.getInstance();
+
+    // Inference thread -> input thread
+    private final TripleBuffer<LandmarkFrame> frames = new TripleBuffer<>(
+            new LandmarkFrame(), new LandmarkFrame(), new LandmarkFrame());
+    private final AtomicBoolean drainPending = new AtomicBoolean(false);
+    private final Runnable drainFrames = this::drainFrames;
+
+    // Input thread -> UI thread
+    private final TripleBuffer<InputSnapshot> snapshots = new TripleBuffer<>(
+            new InputSnapshot(), new InputSnapshot(), new InputSnapshot());
+
+    // Owned by the input thread
+    private final LandmarkBuffer smoothedLandmarks = new LandmarkBuffer();
+    private final ViewTransform viewTransform = new ViewTransform();
+    private final FingerState[] fingerStates = new FingerState[FINGER_COUNT];
+    private final StrikePredictor strikePredictor = new StrikePredictor(FINGER_COUNT);
+    private final StrikeVelocityEstimator velocityEstimator = new StrikeVelocityEstimator(FINGER_COUNT);
+    private final KeyHitIndex keyHitIndex = new KeyHitIndex();
+    private final KeyStateTracker keyState = new KeyStateTracker();
+    private final HandPositionValidator validator = new HandPositionValidator();
+    private final boolean[] handTooFar = new boolean[LandmarkBuffer.MAX_HANDS];
+    private final float[] handScale = new float[LandmarkBuffer.MAX_HANDS];
+    private double[] keyFrequencies = new double[0];
+    private int[] keyMidiNotes = new int[0];
+    private int[] keyVelocities = new int[0]; // Velocity of the strike that triggered each key
+    private boolean fistDetected = false;
+    private long lastHiFiveTimeMs = -HI_FIVE_COOLDOWN_MS;
+    private long dispatchFrameTime = -1; // Frame whose key edges are being dispatched
+
+    private volatile int viewWidth = 0;
+    private volatile int viewHeight = 0;
+    private volatile boolean predictiveStrikesEnabled = true;
+    private volatile LandmarkFilter.Type filterType = LandmarkFilter.Type.ONE_EURO;
+
+    private final KeyStateTracker.EdgeListener keyEdgeListener = new KeyStateTracker.EdgeListener() {
+        @Override
+        public void onNoteOn(int keyIndex) {
+            tracer.mark(LatencyTracer.STAGE_COLLISION, dispatchFrameTime);
+            tracer.setActiveFrame(dispatchFrameTime);
+            listener.onNoteOn(keyIndex, keyMidiNotes[keyIndex], keyVelocities[keyIndex], keyFrequencies[keyIndex]);
+            tracer.clearActiveFrame();
+        }
+
+        @Override
+        public void onNoteOff(int keyIndex) {
+            listener.onNoteOff(keyIndex, keyMidiNotes[keyIndex], keyFrequencies[keyIndex]);
+        }
+    };
+
+    public InputEngine(Listener listener) {
+        this.listener = listener;
+        for (int i = 0; i < fingerStates.length; i++) {
+            fingerStates[i] = new FingerState();
+        }
+
+        thread = new HandlerThread("InputEngine", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public void quit() {
+        handler.removeCallbacksAndMessages(null);
+        thread.quitSafely();
+    }
+
+    /**
+     * Hand over a landmarker result. Safe to call from any thread; if the input thread is
+     * still busy, only the newest frame is processed.
+     */
+    public void submitFrame(HandLandmarkerResult result, int imageWidth, int imageHeight) {
+        frames.getWriteBuffer().set(result, imageWidth, imageHeight);
+        frames.publish();
+        if (drainPending.compareAndSet(false, true)) {
+            handler.post(drainFrames);
+        }
+    }
+
+    /**
+     * Latest published snapshot, or null if nothing new since the last call.
+     * Call from the UI thread only; the returned snapshot stays valid until the next call.
+     */
+    public InputSnapshot consumeSnapshot() {
+        return snapshots.consume();
+    }
+
+    public boolean hasNewSnapshot() {
+        return snapshots.hasNewValue();
+    }
+
+    public void setViewSize(int width, int height) {
+        viewWidth = width;
+        viewHeight = height;
+    }
+
+    /**
+     * Replace the key layout. Rectangles are copied on the calling thread.
+     */
+    public void setKeys(List<PianoOverlayView.Key> keys) {
+        int count = keys.size();
+        float[] left = new float[count];
+        float[] top = new float[count];
+        float[] right = new float[count];
+        float[] bottom = new float[count];
+        boolean[] black = new boolean[count];
+        double[] frequencies = new double[count];
+        int[] midiNotes = new int[count];
+        for (int i = 0; i < count; i++) {
+            PianoOverlayView.Key key = keys.get(i);
+            left[i] = key.rect.left;
+            top[i] = key.rect.top;
+            right[i] = key.rect.right;
+            bottom[i] = key.rect.bottom;
+            black[i] = key.isBlack;
+            frequencies[i] = key.frequency;
+            midiNotes[i] = key.midi;
+        }
+
+        handler.post(() -> {
+            if (count != keyState.getKeyCount()) {
+                // Key indices change meaning: release everything held on the old layout
+                keyState.releaseAll(keyEdgeListener);
+                for (FingerState state : fingerStates) {
+                    state.activeKeyIndex = -1;
+                    state.predictedAtMs = -1;
+                    state.isArmed = true;
+                }
+                keyState.resize(count);
+            }
+            keyFrequencies = frequencies;
+            keyMidiNotes = midiNotes;
+            if (keyVelocities.length != count) {
+                keyVelocities = new int[count];
+            }
+            keyHitIndex.build(left, top, right, bottom, black, count);
+        });
+    }
+
+    /**
+     * Enable or disable firing notes ahead of contact from the projected fingertip motion.
+     */
+    public void setPredictiveStrikesEnabled(boolean enabled) {
+        predictiveStrikesEnabled = enabled;
+    }
+
+    /**
+     * Select the landmark smoothing filter (EMA, One Euro or Kalman).
+     */
+    public void setSmoothingFilter(LandmarkFilter.Type type) {
+        filterType = type;
+    }
+
+    public LandmarkFilter.Type getSmoothingFilter() {
+        return filterType;
+    }
+
+    private void drainFrames() {
+        drainPending.set(false);
+        LandmarkFrame frame = frames.consume();
+        if (frame != null) {
+            processFrame(frame);
+        }
+    }
+
+    private void processFrame(LandmarkFrame frame) {
+        HandLandmarkerResult result = frame.result;
+        long frameTime = result.timestampMs();
+        tracer.mark(LatencyTracer.STAGE_DISPATCH, frameTime);
+
+        List<List<NormalizedLandmark>> hands = result.landmarks();
+        int handCount = Math.min(hands.size(), LandmarkBuffer.MAX_HANDS);
+        InputSnapshot snapshot = snapshots.getWriteBuffer();
+
+        for (int handIndex = 0; handIndex < LandmarkBuffer.MAX_HANDS; handIndex++) {
+            handScale[handIndex] = handIndex < handCount ? getHandScale(hands.get(handIndex)) : 0f;
+            handTooFar[handIndex] = handIndex >= handCount || handScale[handIndex] < MIN_HAND_SCALE;
+        }
+        updatePosture(hands, handCount, snapshot);
+        updateSmoothedLandmarks(result, frame.imageWidth, frame.imageHeight, handCount);
+
+        if (fistDetected) {
+            keyState.releaseAll(keyEdgeListener);
+        } else {
+            checkCollisions(hands, frameTime, handCount);
+        }
+
+        fillSnapshot(result, frameTime, handCount, snapshot);
+        snapshots.publish();
+        listener.onSnapshotPublished();
+
+        detectHiFive(hands, handCount, frameTime);
+    }
+
+    /**
+     * Posture of the first hand decides the fist reset; every hand gets its own result for warnings.
+     */
+    private void updatePosture(List<List<NormalizedLandmark>> hands, int handCount, InputSnapshot snapshot) {
+        for (int handIndex = 0; handIndex < LandmarkBuffer.MAX_HANDS; handIndex++) {
+            snapshot.handPosture[handIndex] = handIndex < handCount
+                    ? PostureAnalyzer.analyzePosture(hands.get(handIndex))
+                    : null;
+        }
+
+        if (handCount == 0) {
+            fistDetected = false;
+            snapshot.posture = null;
+        } else if (handTooFar[0]) {
+            // 1. Check Distance (Scale)
+            fistDetected = false;
+            snapshot.posture = POSTURE_TOO_FAR;
+        } else if (PostureAnalyzer.isFist(hands.get(0))) {
+            // 2. Check Fist
+            fistDetected = true;
+            snapshot.posture = POSTURE_FIST;
+        } else {
+            fistDetected = false;
+            snapshot.posture = snapshot.handPosture[0];
+        }
+        snapshot.fistDetected = fistDetected;
+    }
+
+    private void updateSmoothedLandmarks(HandLandmarkerResult result, int imageWidth, int imageHeight,
+            int handCount) {
+        if (smoothedLandmarks.getFilterType() != filterType) {
+            smoothedLandmarks.setFilterType(filterType);
+        }
+        if (handCount == 0) {
+            smoothedLandmarks.clear();
+            return;
+        }
+
+        viewTransform.configure(viewWidth, viewHeight, imageWidth, imageHeight,
+                HAND_SPREAD_FACTOR, HAND_SPREAD_FACTOR_Y);
+
+        List<List<NormalizedLandmark>> hands = result.landmarks();
+        smoothedLandmarks.beginFrame(result.timestampMs());
+        for (int handIndex = 0; handIndex < handCount; handIndex++) {
+            List<NormalizedLandmark> landmarks = hands.get(handIndex);
+            // Process ALL 21 landmarks for the glove
+            int landmarkCount = Math.min(landmarks.size(), LandmarkBuffer.LANDMARKS_PER_HAND);
+            for (int index = 0; index < landmarkCount; index++) {
+                NormalizedLandmark landmark = landmarks.get(index);
+                smoothedLandmarks.update(handIndex, index,
+                        viewTransform.mapX(landmark.x()), viewTransform.mapY(landmark.y()));
+            }
+        }
+        smoothedLandmarks.endFrame();
+    }
+
+    private void checkCollisions(List<List<NormalizedLandmark>> hands, long frameTime, int handCount) {
+        keyState.beginFrame();
+
+        // The landmarks already lag the finger by the time this frame spent in the pipeline
+        long lookaheadMs = Math.max(0, Math.min(MAX_STRIKE_LOOKAHEAD_MS, SystemClock.uptimeMillis() - frameTime));
+        float minStrikeSpeed = MIN_STRIKE_SPEED_VIEW_HEIGHTS * viewHeight;
+
+        for (int handIndex = 0; handIndex < handCount; handIndex++) {
+            // Check if this hand is close enough
+            if (handTooFar[handIndex]) {
+                continue; // Ignore hands that are too far
+            }
+
+            List<NormalizedLandmark> landmarks = hands.get(handIndex);
+            for (int f = 0; f < FINGERTIPS.length; f++) {
+                int index = FINGERTIPS[f];
+                int finger = handIndex * FINGERTIPS.length + f;
+                FingerState state = fingerStates[finger];
+
+                if (index < landmarks.size()) {
+                    NormalizedLandmark tip = landmarks.get(index);
+                    velocityEstimator.addSample(finger, tip.y(), tip.z(), handScale[handIndex], frameTime);
+                } else {
+                    velocityEstimator.reset(finger);
+                }
+
+                int currentKeyIndex = -1;
+                if (smoothedLandmarks.has(handIndex, index)) {
+                    float x = smoothedLandmarks.getX(handIndex, index);
+                    float y = smoothedLandmarks.getY(handIndex, index);
+                    strikePredictor.addSample(finger, x, y, frameTime);
+                    currentKeyIndex = keyHitIndex.find(x, y);
+                } else {
+                    strikePredictor.reset(finger);
+                }
+
+                if (currentKeyIndex == -1) {
+                    if (state.predictedAtMs >= 0 && frameTime - state.predictedAtMs <= PREDICTED_STRIKE_CONFIRM_MS) {
+                        // Predicted strike still on its way to the key; keep it held
+                        keyState.hold(state.activeKeyIndex);
+                        continue;
+                    }
+
+                    // Finger lifted or is above the keyboard.
+                    state.activeKeyIndex = -1;
+                    state.predictedAtMs = -1;
+                    state.isArmed = true;
+
+                    if (predictiveStrikesEnabled && strikePredictor.predict(finger, lookaheadMs, minStrikeSpeed)) {
+                        int predictedKeyIndex = keyHitIndex.find(
+                                strikePredictor.getPredictedX(), strikePredictor.getPredictedY());
+                        if (predictedKeyIndex != -1) {
+                            state.activeKeyIndex = predictedKeyIndex;
+                            state.predictedAtMs = frameTime;
+                            state.isArmed = false;
+                            keyVelocities[predictedKeyIndex] = velocityEstimator.getVelocity(finger);
+                            keyState.trigger(predictedKeyIndex);
+                        }
+                    }
+                    continue;
+                }
+
+                if (state.predictedAtMs >= 0) {
+                    // Contact confirms the predicted strike. If the finger landed on a neighbour,
+                    // move the hold there without sounding a second note.
+                    state.activeKeyIndex = currentKeyIndex;
+                    state.predictedAtMs = -1;
+                }
+
+                if (state.activeKeyIndex == currentKeyIndex) {
+                    keyState.hold(currentKeyIndex);
+                } else if (state.activeKeyIndex == -1 && state.isArmed) {
+                    state.activeKeyIndex = currentKeyIndex;
+                    state.isArmed = false;
+                    keyVelocities[currentKeyIndex] = velocityEstimator.getVelocity(finger);
+                    keyState.trigger(currentKeyIndex);
+                }
+            }
+        }
+
+        dispatchFrameTime = frameTime;
+        keyState.endFrame(keyEdgeListener);
+        dispatchFrameTime = -1;
+    }
+
+    private void fillSnapshot(HandLandmarkerResult result, long frameTime, int handCount, InputSnapshot snapshot) {
+        List<List<NormalizedLandmark>> hands = result.landmarks();
+        snapshot.frameTimeMs = frameTime;
+        snapshot.handCount = handCount;
+        smoothedLandmarks.copyTo(snapshot.x, snapshot.y, snapshot.present);
+
+        List<NormalizedLandmark> firstHand = null;
+        for (int handIndex = 0; handIndex < LandmarkBuffer.MAX_HANDS; handIndex++) {
+            snapshot.handVisible[handIndex] = false;
+            snapshot.handTooFar[handIndex] = handTooFar[handIndex];
+            snapshot.handedness[handIndex] = InputSnapshot.HAND_UNKNOWN;
+            for (int f = 0; f < FINGERTIPS.length; f++) {
+                snapshot.fingertipState[handIndex * FINGERTIPS.length + f] = InputSnapshot.FINGERTIP_IDLE;
+            }
+            if (handIndex >= handCount)
+                continue;
+
+            List<NormalizedLandmark> landmarks = hands.get(handIndex);
+            NormalizedLandmark wrist = landmarks.get(0); // Wrist is index 0
+
+            // Ghost Hand Filter: Check distance to previous hand
+            if (firstHand != null) {
+                NormalizedLandmark prevWrist = firstHand.get(0);
+                if (Math.hypot(wrist.x() - prevWrist.x(), wrist.y() - prevWrist.y()) < GHOST_HAND_DISTANCE) {
+                    continue; // Skip duplicate
+                }
+            } else {
+                firstHand = landmarks;
+            }
+            snapshot.handVisible[handIndex] = true;
+
+            if (handIndex < result.handedness().size()) {
+                String label = result.handedness().get(handIndex).get(0).categoryName();
+                // Note: MediaPipe Front Camera: "Left" label = User's Right Hand
+                snapshot.handedness[handIndex] = label.equals("Left")
+                        ? InputSnapshot.HAND_USER_RIGHT
+                        : InputSnapshot.HAND_USER_LEFT;
+            }
+
+            // Validate the finger on each key against the hand's expected range
+            for (int f = 0; f < FINGERTIPS.length; f++) {
+                int fingerIndex = FINGERTIPS[f];
+                if (!smoothedLandmarks.has(handIndex, fingerIndex))
+                    continue;
+                int keyIndex = keyHitIndex.find(smoothedLandmarks.getX(handIndex, fingerIndex),
+                        smoothedLandmarks.getY(handIndex, fingerIndex));
+                if (keyIndex >= 0) {
+                    boolean isCorrect = validator.isFingerPositionCorrect(result, handIndex, fingerIndex, keyIndex,
+                            wrist.x());
+                    snapshot.fingertipState[handIndex * FINGERTIPS.length + f] = isCorrect
+                            ? InputSnapshot.FINGERTIP_CORRECT
+                            : InputSnapshot.FINGERTIP_INCORRECT;
+                }
+            }
+        }
+    }
+
+    // Detect hi-five gesture for voice command activation
+    private void detectHiFive(List<List<NormalizedLandmark>> hands, int handCount, long frameTime) {
+        if (frameTime - lastHiFiveTimeMs <= HI_FIVE_COOLDOWN_MS)
+            return;
+        for (int handIndex = 0; handIndex < handCount; handIndex++) {
+            if (GestureDetector.isHiFiveGesture(hands.get(handIndex))) {
+                lastHiFiveTimeMs = frameTime;
+                listener.onHiFive();
+                return; // Only trigger once per frame
+            }
+        }
+    }
+
+    private static float getHandScale(List<NormalizedLandmark> landmarks) {
+        if (landmarks == null || landmarks.size() <= 9)
+            return 0;
+        NormalizedLandmark wrist = landmarks.get(0);
+        NormalizedLandmark middleMcp = landmarks.get(9);
+        return (float) Math.hypot(wrist.x() - middleMcp.x(), wrist.y() - middleMcp.y());
+    }
+}
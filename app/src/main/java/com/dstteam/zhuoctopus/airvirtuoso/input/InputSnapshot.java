@@ -0,0 +1,55 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+import com.dstteam.zhuoctopus.airvirtuoso.analysis.PostureAnalyzer;
+
+/**
+ * Everything the overlay needs to draw one input frame, published by {@link InputEngine}.
+ * Written only on the input thread and handed to the UI through a triple buffer, so the
+ * UI reads a stable copy and never touches the engine's working state.
+ */
+public class InputSnapshot {
+
+    public static final int HAND_UNKNOWN = 0;
+    public static final int HAND_USER_RIGHT = 1; // MediaPipe "Left" on the mirrored front camera
+    public static final int HAND_USER_LEFT = 2;
+
+    public static final int FINGERTIP_IDLE = 0; // Not on a key
+    public static final int FINGERTIP_CORRECT = 1;
+    public static final int FINGERTIP_INCORRECT = 2;
+
+    public static final int FINGERTIPS_PER_HAND = 5;
+
+    public long frameTimeMs;
+    public int handCount; // Hands reported by the landmarker, capped at MAX_HANDS
+
+    // Per hand slot
+    public final boolean[] handVisible = new boolean[LandmarkBuffer.MAX_HANDS]; // False for ghost duplicates
+    public final boolean[] handTooFar = new boolean[LandmarkBuffer.MAX_HANDS];
+    public final int[] handedness = new int[LandmarkBuffer.MAX_HANDS];
+    public final PostureAnalyzer.PostureResult[] handPosture =
+            new PostureAnalyzer.PostureResult[LandmarkBuffer.MAX_HANDS];
+
+    // Smoothed landmarks in view coordinates, [hand * LANDMARKS_PER_HAND + landmark]
+    public final float[] x = new float[LandmarkBuffer.MAX_HANDS * LandmarkBuffer.LANDMARKS_PER_HAND];
+    public final float[] y = new float[LandmarkBuffer.MAX_HANDS * LandmarkBuffer.LANDMARKS_PER_HAND];
+    public final boolean[] present = new boolean[LandmarkBuffer.MAX_HANDS * LandmarkBuffer.LANDMARKS_PER_HAND];
+
+    // FINGERTIP_* per fingertip, [hand * FINGERTIPS_PER_HAND + finger]
+    public final int[] fingertipState = new int[LandmarkBuffer.MAX_HANDS * FINGERTIPS_PER_HAND];
+
+    // Summary of the first hand (distance, fist, posture)
+    public PostureAnalyzer.PostureResult posture;
+    public boolean fistDetected;
+
+    public boolean has(int hand, int landmark) {
+        return present[hand * LandmarkBuffer.LANDMARKS_PER_HAND + landmark];
+    }
+
+    public float getX(int hand, int landmark) {
+        return x[hand * LandmarkBuffer.LANDMARKS_PER_HAND + landmark];
+    }
+
+    public float getY(int hand, int landmark) {
+        return y[hand * LandmarkBuffer.LANDMARKS_PER_HAND + landmark];
+    }
+}
@@ -0,0 +1,89 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Constant-velocity Kalman filter per channel (state: position and velocity).
+ * Process noise models unknown acceleration, measurement noise the landmark jitter.
+ * Defaults are tuned for positions in view pixels.
+ */
+public class KalmanFilter implements LandmarkFilter {
+
+    public static final float DEFAULT_PROCESS_NOISE = 3.0e4f; // Acceleration spectral density, px^2/s^3
+    public static final float DEFAULT_MEASUREMENT_NOISE = 36f; // Landmark variance, px^2 (about 6 px std)
+    private static final float INITIAL_VELOCITY_VARIANCE = 1.0e6f;
+
+    private final float[] position;
+    private final float[] velocity;
+    // Covariance matrix [[p00, p01], [p01, p11]]
+    private final float[] p00;
+    private final float[] p01;
+    private final float[] p11;
+    private final boolean[] initialized;
+
+    private float processNoise = DEFAULT_PROCESS_NOISE;
+    private float measurementNoise = DEFAULT_MEASUREMENT_NOISE;
+
+    public KalmanFilter(int channels) {
+        position = new float[channels];
+        velocity = new float[channels];
+        p00 = new float[channels];
+        p01 = new float[channels];
+        p11 = new float[channels];
+        initialized = new boolean[channels];
+    }
+
+    public void setNoise(float processNoise, float measurementNoise) {
+        this.processNoise = processNoise;
+        this.measurementNoise = measurementNoise;
+    }
+
+    /**
+     * Estimated velocity of a channel in units per second.
+     */
+    public float getVelocity(int channel) {
+        return velocity[channel];
+    }
+
+    @Override
+    public void reset(int channel) {
+        initialized[channel] = false;
+    }
+
+    @Override
+    public float filter(int channel, float raw, float dtSeconds) {
+        int i = channel;
+        if (!initialized[i]) {
+            initialized[i] = true;
+            position[i] = raw;
+            velocity[i] = 0;
+            p00[i] = measurementNoise;
+            p01[i] = 0;
+            p11[i] = INITIAL_VELOCITY_VARIANCE;
+            return raw;
+        }
+
+        if (dtSeconds > 0) {
+            // Predict
+            float dt = dtSeconds;
+            float dt2 = dt * dt;
+            position[i] += velocity[i] * dt;
+            p00[i] += dt * (2 * p01[i] + dt * p11[i]) + processNoise * dt2 * dt / 3f;
+            p01[i] += dt * p11[i] + processNoise * dt2 / 2f;
+            p11[i] += processNoise * dt;
+        }
+
+        // Update
+        float innovation = raw - position[i];
+        float s = p00[i] + measurementNoise;
+        float k0 = p00[i] / s;
+        float k1 = p01[i] / s;
+        position[i] += k0 * innovation;
+        velocity[i] += k1 * innovation;
+
+        float oldP00 = p00[i];
+        float oldP01 = p01[i];
+        p00[i] = (1 - k0) * oldP00;
+        p01[i] = (1 - k0) * oldP01;
+        p11[i] -= k1 * oldP01;
+        return position[i];
+    }
+}
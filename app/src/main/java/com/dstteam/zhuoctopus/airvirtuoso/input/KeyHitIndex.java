@@ -0,0 +1,113 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Spatial index for hit-testing points against key rectangles.
+ *
+ * Keys are split into two layers (black keys on top of white keys). Each layer is sorted
+ * by left edge, so a lookup is a binary search per layer followed by a containment check.
+ * Built once when the key layout changes; lookups do not allocate.
+ */
+public class KeyHitIndex {
+
+    private final Layer upper = new Layer();
+    private final Layer lower = new Layer();
+
+    private static class Layer {
+        int size = 0;
+        int[] keyIndex = new int[0]; // Original key index, sorted by left edge
+        float[] left = new float[0];
+        float[] top = new float[0];
+        float[] right = new float[0];
+        float[] bottom = new float[0];
+        float[] maxRight = new float[0]; // Largest right edge among entries 0..i
+
+        void build(float[] l, float[] t, float[] r, float[] b, boolean[] upperLayer, boolean wantUpper,
+                int count) {
+            size = 0;
+            for (int i = 0; i < count; i++) {
+                if (upperLayer[i] == wantUpper) {
+                    size++;
+                }
+            }
+            keyIndex = new int[size];
+            left = new float[size];
+            top = new float[size];
+            right = new float[size];
+            bottom = new float[size];
+            maxRight = new float[size];
+
+            // Insertion sort by left edge; keys usually arrive in keyboard order already
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                if (upperLayer[i] != wantUpper)
+                    continue;
+                int j = n - 1;
+                while (j >= 0 && left[j] > l[i]) {
+                    keyIndex[j + 1] = keyIndex[j];
+                    left[j + 1] = left[j];
+                    top[j + 1] = top[j];
+                    right[j + 1] = right[j];
+                    bottom[j + 1] = bottom[j];
+                    j--;
+                }
+                keyIndex[j + 1] = i;
+                left[j + 1] = l[i];
+                top[j + 1] = t[i];
+                right[j + 1] = r[i];
+                bottom[j + 1] = b[i];
+                n++;
+            }
+
+            for (int i = 0; i < size; i++) {
+                maxRight[i] = i == 0 ? right[i] : Math.max(maxRight[i - 1], right[i]);
+            }
+        }
+
+        int find(float x, float y) {
+            // Last entry whose left edge is <= x
+            int lo = 0;
+            int hi = size - 1;
+            int candidate = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (left[mid] <= x) {
+                    candidate = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+
+            // Walk back only while an earlier key could still reach x (overlapping keys)
+            int best = -1;
+            for (int i = candidate; i >= 0 && maxRight[i] > x; i--) {
+                if (x < right[i] && y >= top[i] && y < bottom[i]) {
+                    if (best == -1 || keyIndex[i] < best) {
+                        best = keyIndex[i]; // Same tie-break as a linear scan
+                    }
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Rebuild the index. Arrays are indexed by key index and only read during the call.
+     *
+     * @param upperLayer True for keys drawn on top (black keys), which win over the lower layer
+     */
+    public void build(float[] left, float[] top, float[] right, float[] bottom, boolean[] upperLayer, int count) {
+        upper.build(left, top, right, bottom, upperLayer, true, count);
+        lower.build(left, top, right, bottom, upperLayer, false, count);
+    }
+
+    /**
+     * @return Index of the key containing the point, or -1 if none
+     */
+    public int find(float x, float y) {
+        int index = upper.find(x, y);
+        if (index != -1)
+            return index;
+        return lower.find(x, y);
+    }
+}
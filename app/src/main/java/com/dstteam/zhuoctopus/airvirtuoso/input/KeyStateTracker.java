@@ -0,0 +1,109 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Per-frame key state kept in bitsets (one bit per key index).
+ *
+ * During a frame, fingers mark keys as held or triggered in constant time. At the end of
+ * the frame the tracker compares against the previous frame and reports note-on edges for
+ * triggered keys and note-off edges for keys that are no longer held.
+ */
+public class KeyStateTracker {
+
+    public interface EdgeListener {
+        void onNoteOn(int keyIndex);
+
+        void onNoteOff(int keyIndex);
+    }
+
+    private int keyCount = 0;
+    private long[] pressed = new long[0];
+    private long[] nextPressed = new long[0];
+    private long[] triggered = new long[0];
+
+    /**
+     * Size the bitsets for a key layout. State is kept if the key count is unchanged.
+     *
+     * @return true if the key count changed and all state was dropped
+     */
+    public boolean resize(int count) {
+        if (count == keyCount)
+            return false;
+
+        int words = (count + 63) >>> 6;
+        keyCount = count;
+        pressed = new long[words];
+        nextPressed = new long[words];
+        triggered = new long[words];
+        return true;
+    }
+
+    public int getKeyCount() {
+        return keyCount;
+    }
+
+    public void beginFrame() {
+        for (int w = 0; w < nextPressed.length; w++) {
+            nextPressed[w] = 0;
+            triggered[w] = 0;
+        }
+    }
+
+    /**
+     * Mark a key as held down during this frame.
+     */
+    public void hold(int keyIndex) {
+        if (keyIndex < 0 || keyIndex >= keyCount)
+            return;
+        nextPressed[keyIndex >>> 6] |= 1L << keyIndex;
+    }
+
+    /**
+     * Mark a key as struck during this frame (also holds it). Several fingers striking the
+     * same key in one frame produce a single note-on.
+     */
+    public void trigger(int keyIndex) {
+        if (keyIndex < 0 || keyIndex >= keyCount)
+            return;
+        long bit = 1L << keyIndex;
+        nextPressed[keyIndex >>> 6] |= bit;
+        triggered[keyIndex >>> 6] |= bit;
+    }
+
+    /**
+     * Commit the frame and report edges in key order: releases, then strikes.
+     */
+    public void endFrame(EdgeListener listener) {
+        for (int w = 0; w < pressed.length; w++) {
+            long released = pressed[w] & ~nextPressed[w];
+            long struck = triggered[w];
+            pressed[w] = nextPressed[w];
+
+            if (listener == null)
+                continue;
+            while (released != 0) {
+                int bit = Long.numberOfTrailingZeros(released);
+                released &= released - 1;
+                listener.onNoteOff((w << 6) + bit);
+            }
+            while (struck != 0) {
+                int bit = Long.numberOfTrailingZeros(struck);
+                struck &= struck - 1;
+                listener.onNoteOn((w << 6) + bit);
+            }
+        }
+    }
+
+    /**
+     * Release every held key, reporting a note-off for each.
+     */
+    public void releaseAll(EdgeListener listener) {
+        beginFrame();
+        endFrame(listener);
+    }
+
+    public boolean isPressed(int keyIndex) {
+        if (keyIndex < 0 || keyIndex >= keyCount)
+            return false;
+        return (pressed[keyIndex >>> 6] & (1L << keyIndex)) != 0;
+    }
+}
@@ -0,0 +1,141 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Preallocated store of smoothed landmark positions in view coordinates.
+ * Indexed by hand slot and MediaPipe landmark id, so per-frame updates never allocate.
+ * Smoothing is delegated to a {@link LandmarkFilter} that can be swapped at runtime.
+ */
+public class LandmarkBuffer {
+
+    public static final int MAX_HANDS = 2;
+    public static final int LANDMARKS_PER_HAND = 21;
+
+    private static final int SLOT_COUNT = MAX_HANDS * LANDMARKS_PER_HAND;
+    private static final float DEFAULT_FRAME_INTERVAL_S = 1f / 30f; // Used for the first frame
+
+    private final float[] x = new float[SLOT_COUNT];
+    private final float[] y = new float[SLOT_COUNT];
+    private final boolean[] present = new boolean[SLOT_COUNT];
+    private final boolean[] handUpdated = new boolean[MAX_HANDS];
+
+    // Built lazily per type and kept, so switching back and forth does not allocate again
+    private final LandmarkFilter[] filters = new LandmarkFilter[LandmarkFilter.Type.values().length];
+    private LandmarkFilter.Type filterType;
+    private LandmarkFilter filter;
+
+    private long lastFrameTimeMs = -1;
+    private float frameDt = DEFAULT_FRAME_INTERVAL_S;
+
+    public LandmarkBuffer() {
+        this(LandmarkFilter.Type.ONE_EURO);
+    }
+
+    public LandmarkBuffer(LandmarkFilter.Type type) {
+        setFilterType(type);
+    }
+
+    private static int slot(int hand, int landmark) {
+        return hand * LANDMARKS_PER_HAND + landmark;
+    }
+
+    /**
+     * Switch the smoothing filter. Tracked hands restart from their next raw position.
+     */
+    public void setFilterType(LandmarkFilter.Type type) {
+        if (type == filterType)
+            return;
+
+        if (filter != null) {
+            clear(); // Leaves the old filter fully reset in case it is selected again
+        }
+
+        int index = type.ordinal();
+        if (filters[index] == null) {
+            // Two channels (x, y) per landmark slot
+            filters[index] = type.create(SLOT_COUNT * 2);
+        }
+        filterType = type;
+        filter = filters[index];
+    }
+
+    public LandmarkFilter.Type getFilterType() {
+        return filterType;
+    }
+
+    /**
+     * Start a new frame. Hands that receive no update before {@link #endFrame()} are cleared.
+     *
+     * @param frameTimeMs Capture timestamp of the frame, used as the filter time step
+     */
+    public void beginFrame(long frameTimeMs) {
+        if (lastFrameTimeMs >= 0 && frameTimeMs > lastFrameTimeMs) {
+            frameDt = (frameTimeMs - lastFrameTimeMs) / 1000f;
+        }
+        lastFrameTimeMs = frameTimeMs;
+
+        for (int hand = 0; hand < MAX_HANDS; hand++) {
+            handUpdated[hand] = false;
+        }
+    }
+
+    /**
+     * Feed the raw position of one landmark (already in view coordinates).
+     */
+    public void update(int hand, int landmark, float targetX, float targetY) {
+        if (hand < 0 || hand >= MAX_HANDS || landmark < 0 || landmark >= LANDMARKS_PER_HAND)
+            return;
+
+        int i = slot(hand, landmark);
+        x[i] = filter.filter(i * 2, targetX, frameDt);
+        y[i] = filter.filter(i * 2 + 1, targetY, frameDt);
+        present[i] = true;
+        handUpdated[hand] = true;
+    }
+
+    public void endFrame() {
+        for (int hand = 0; hand < MAX_HANDS; hand++) {
+            if (!handUpdated[hand]) {
+                clearHand(hand);
+            }
+        }
+    }
+
+    public void clear() {
+        for (int hand = 0; hand < MAX_HANDS; hand++) {
+            clearHand(hand);
+        }
+    }
+
+    private void clearHand(int hand) {
+        int start = slot(hand, 0);
+        for (int i = start; i < start + LANDMARKS_PER_HAND; i++) {
+            if (present[i]) {
+                present[i] = false;
+                filter.reset(i * 2);
+                filter.reset(i * 2 + 1);
+            }
+        }
+    }
+
+    /**
+     * Copy all slots into caller-owned arrays of MAX_HANDS * LANDMARKS_PER_HAND entries.
+     */
+    public void copyTo(float[] dstX, float[] dstY, boolean[] dstPresent) {
+        System.arraycopy(x, 0, dstX, 0, SLOT_COUNT);
+        System.arraycopy(y, 0, dstY, 0, SLOT_COUNT);
+        System.arraycopy(present, 0, dstPresent, 0, SLOT_COUNT);
+    }
+
+    public boolean has(int hand, int landmark) {
+        return hand >= 0 && hand < MAX_HANDS && landmark >= 0 && landmark < LANDMARKS_PER_HAND
+                && present[slot(hand, landmark)];
+    }
+
+    public float getX(int hand, int landmark) {
+        return x[slot(hand, landmark)];
+    }
+
+    public float getY(int hand, int landmark) {
+        return y[slot(hand, landmark)];
+    }
+}
@@ -0,0 +1,44 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Per-channel 1D filter for landmark coordinates.
+ * Each channel is one axis of one landmark; implementations keep their state in
+ * primitive arrays sized up front, so filtering never allocates.
+ */
+public interface LandmarkFilter {
+
+    /**
+     * Forget the history of a channel, e.g. when its hand disappears.
+     * The next sample passes through unfiltered.
+     */
+    void reset(int channel);
+
+    /**
+     * @param channel   Channel index, 0 to the channel count given at construction
+     * @param value     Raw measurement
+     * @param dtSeconds Time since the previous sample of this channel
+     * @return Filtered value
+     */
+    float filter(int channel, float value, float dtSeconds);
+
+    /**
+     * Built-in filters, selectable at runtime through {@link LandmarkBuffer#setFilterType}.
+     */
+    enum Type {
+        EMA,
+        ONE_EURO,
+        KALMAN;
+
+        public LandmarkFilter create(int channels) {
+            switch (this) {
+                case EMA:
+                    return new EmaFilter(channels);
+                case KALMAN:
+                    return new KalmanFilter(channels);
+                case ONE_EURO:
+                default:
+                    return new OneEuroFilter(channels);
+            }
+        }
+    }
+}
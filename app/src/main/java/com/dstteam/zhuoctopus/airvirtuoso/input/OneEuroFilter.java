@@ -0,0 +1,67 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * One Euro filter (Casiez et al.): a low-pass filter whose cutoff rises with speed.
+ * A resting hand gets a low cutoff (little jitter), a striking finger a high one (little lag).
+ * Defaults are tuned for positions in view pixels.
+ */
+public class OneEuroFilter implements LandmarkFilter {
+
+    public static final float DEFAULT_MIN_CUTOFF_HZ = 1.0f;
+    public static final float DEFAULT_BETA = 0.01f; // Cutoff gain per px/s of speed
+    public static final float DEFAULT_DERIVATIVE_CUTOFF_HZ = 1.0f;
+
+    private final float[] value;
+    private final float[] derivative;
+    private final boolean[] initialized;
+
+    private float minCutoff = DEFAULT_MIN_CUTOFF_HZ;
+    private float beta = DEFAULT_BETA;
+    private float derivativeCutoff = DEFAULT_DERIVATIVE_CUTOFF_HZ;
+
+    public OneEuroFilter(int channels) {
+        value = new float[channels];
+        derivative = new float[channels];
+        initialized = new boolean[channels];
+    }
+
+    public void setParameters(float minCutoffHz, float beta, float derivativeCutoffHz) {
+        this.minCutoff = minCutoffHz;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoffHz;
+    }
+
+    @Override
+    public void reset(int channel) {
+        initialized[channel] = false;
+    }
+
+    @Override
+    public float filter(int channel, float raw, float dtSeconds) {
+        if (!initialized[channel] || dtSeconds <= 0) {
+            if (!initialized[channel]) {
+                initialized[channel] = true;
+                value[channel] = raw;
+                derivative[channel] = 0;
+            }
+            return value[channel];
+        }
+
+        float rawDerivative = (raw - value[channel]) / dtSeconds;
+        float smoothedDerivative = lerp(derivative[channel], rawDerivative, alpha(derivativeCutoff, dtSeconds));
+        derivative[channel] = smoothedDerivative;
+
+        float cutoff = minCutoff + beta * Math.abs(smoothedDerivative);
+        value[channel] = lerp(value[channel], raw, alpha(cutoff, dtSeconds));
+        return value[channel];
+    }
+
+    private static float alpha(float cutoffHz, float dtSeconds) {
+        float tau = 1f / (2f * (float) Math.PI * cutoffHz);
+        return 1f / (1f + tau / dtSeconds);
+    }
+
+    private static float lerp(float previous, float target, float alpha) {
+        return previous + alpha * (target - previous);
+    }
+}
@@ -0,0 +1,164 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Extrapolates fingertip motion to compensate for pipeline latency.
+ *
+ * Keeps the last three positions of every finger, estimates velocity and acceleration
+ * by finite differences and projects the fingertip forward by the lookahead. A projection
+ * is only reported when the motion looks like a strike: steadily downward, fast enough,
+ * and the model has been predicting recent samples accurately.
+ * All state lives in primitive arrays, so per-frame use does not allocate.
+ */
+public class StrikePredictor {
+
+    private static final int HISTORY = 3;
+    private static final long MAX_SAMPLE_GAP_MS = 150; // Larger gaps restart the history
+    private static final float ERROR_EMA_ALPHA = 0.5f;
+    // Recent one-step prediction error must stay below this fraction of the projected travel
+    private static final float MAX_ERROR_RATIO = 0.35f;
+
+    private final float[] x;
+    private final float[] y;
+    private final long[] time;
+    private final int[] count;
+    private final float[] errorEma;
+    private final int[] scoredSamples; // Samples the motion estimate was checked against
+
+    // Motion estimate at the latest sample, in px/s and px/s^2
+    private final float[] vx;
+    private final float[] vy;
+    private final float[] ax;
+    private final float[] ay;
+    private final boolean[] downwardSegments; // Both history segments moved downward
+
+    private float predictedX;
+    private float predictedY;
+
+    public StrikePredictor(int fingers) {
+        x = new float[fingers * HISTORY];
+        y = new float[fingers * HISTORY];
+        time = new long[fingers * HISTORY];
+        count = new int[fingers];
+        errorEma = new float[fingers];
+        scoredSamples = new int[fingers];
+        vx = new float[fingers];
+        vy = new float[fingers];
+        ax = new float[fingers];
+        ay = new float[fingers];
+        downwardSegments = new boolean[fingers];
+    }
+
+    public void reset(int finger) {
+        count[finger] = 0;
+        errorEma[finger] = 0;
+        scoredSamples[finger] = 0;
+    }
+
+    /**
+     * Record the (smoothed) fingertip position of a frame.
+     */
+    public void addSample(int finger, float sampleX, float sampleY, long timeMs) {
+        int n = count[finger];
+        int base = finger * HISTORY;
+
+        if (n > 0) {
+            long lastTime = time[base + (n - 1) % HISTORY];
+            if (timeMs <= lastTime)
+                return; // Same frame delivered twice
+            if (timeMs - lastTime > MAX_SAMPLE_GAP_MS) {
+                reset(finger);
+                n = 0;
+            }
+        }
+
+        if (n >= HISTORY) {
+            // Score the previous motion estimate against this sample
+            int last = base + (n - 1) % HISTORY;
+            float dt = (timeMs - time[last]) / 1000f;
+            float expectedX = x[last] + vx[finger] * dt + 0.5f * ax[finger] * dt * dt;
+            float expectedY = y[last] + vy[finger] * dt + 0.5f * ay[finger] * dt * dt;
+            float error = (float) Math.hypot(sampleX - expectedX, sampleY - expectedY);
+            errorEma[finger] = ERROR_EMA_ALPHA * error + (1 - ERROR_EMA_ALPHA) * errorEma[finger];
+            scoredSamples[finger]++;
+        }
+
+        int slot = base + n % HISTORY;
+        x[slot] = sampleX;
+        y[slot] = sampleY;
+        time[slot] = timeMs;
+        count[finger] = n = n + 1;
+
+        if (n >= HISTORY) {
+            estimateMotion(finger, n);
+        }
+    }
+
+    private void estimateMotion(int finger, int n) {
+        int base = finger * HISTORY;
+        int i0 = base + (n - 3) % HISTORY;
+        int i1 = base + (n - 2) % HISTORY;
+        int i2 = base + (n - 1) % HISTORY;
+
+        float dt1 = (time[i1] - time[i0]) / 1000f;
+        float dt2 = (time[i2] - time[i1]) / 1000f;
+
+        float v1x = (x[i1] - x[i0]) / dt1;
+        float v1y = (y[i1] - y[i0]) / dt1;
+        float v2x = (x[i2] - x[i1]) / dt2;
+        float v2y = (y[i2] - y[i1]) / dt2;
+
+        float mid = (dt1 + dt2) / 2f;
+        ax[finger] = (v2x - v1x) / mid;
+        ay[finger] = (v2y - v1y) / mid;
+        // Segment velocities are centered between samples; advance to the latest sample
+        vx[finger] = v2x + ax[finger] * dt2 / 2f;
+        vy[finger] = v2y + ay[finger] * dt2 / 2f;
+        downwardSegments[finger] = v1y > 0 && v2y > 0;
+    }
+
+    /**
+     * Project the fingertip forward if the motion passes the confidence gate.
+     *
+     * @param lookaheadMs     How far ahead of the latest sample to project
+     * @param minStrikeSpeed  Minimum downward speed in px/s for a strike
+     * @return true if {@link #getPredictedX()} / {@link #getPredictedY()} hold a confident projection
+     */
+    public boolean predict(int finger, float lookaheadMs, float minStrikeSpeed) {
+        int n = count[finger];
+        if (n < HISTORY || lookaheadMs <= 0)
+            return false;
+        // The error estimate means nothing until a projection has been checked against a sample
+        if (scoredSamples[finger] == 0)
+            return false;
+
+        // Confidence gate: a fast, consistent downward stroke that the model has been tracking well
+        float speedY = vy[finger];
+        if (!downwardSegments[finger] || speedY < minStrikeSpeed)
+            return false;
+
+        float t = lookaheadMs / 1000f;
+        float accelY = ay[finger];
+        float accelX = ax[finger];
+        if (speedY + accelY * t < 0) {
+            // Decelerating finger stops before the lookahead: project to where it stops
+            t = -speedY / accelY;
+        }
+
+        float travel = (float) Math.hypot(vx[finger] * t + 0.5f * accelX * t * t, speedY * t + 0.5f * accelY * t * t);
+        if (errorEma[finger] > MAX_ERROR_RATIO * travel)
+            return false;
+
+        int last = finger * HISTORY + (n - 1) % HISTORY;
+        predictedX = x[last] + vx[finger] * t + 0.5f * accelX * t * t;
+        predictedY = y[last] + speedY * t + 0.5f * accelY * t * t;
+        return true;
+    }
+
+    public float getPredictedX() {
+        return predictedX;
+    }
+
+    public float getPredictedY() {
+        return predictedY;
+    }
+}
@@ -0,0 +1,125 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Estimates how hard a fingertip strikes from its motion over the last few frames.
+ *
+ * Positions are the raw normalized landmark y and z divided by the hand scale, so the
+ * speed is measured in hand lengths per second and does not depend on how far the hand
+ * is from the camera. The strike speed combines downward image motion with motion
+ * towards the camera (MediaPipe z shrinks as the fingertip gets closer). Each axis gets a
+ * least-squares slope over a short window, which is steadier than a two-frame difference
+ * and costs a handful of multiplies per finger.
+ */
+public class StrikeVelocityEstimator {
+
+    public static final int MIN_VELOCITY = 1;
+    public static final int MAX_VELOCITY = 127;
+    public static final int DEFAULT_VELOCITY = 100; // Used until a finger has enough history
+
+    private static final int HISTORY = 4;
+    private static final long MAX_SAMPLE_GAP_MS = 150; // Larger gaps restart the history
+    private static final float MIN_STRIKE_SPEED = 0.5f; // Hand lengths per second for velocity 1
+    private static final float MAX_STRIKE_SPEED = 6f; // Hand lengths per second for velocity 127
+
+    private final float[] height;
+    private final float[] depth;
+    private final long[] time;
+    private final int[] count;
+
+    public StrikeVelocityEstimator(int fingers) {
+        height = new float[fingers * HISTORY];
+        depth = new float[fingers * HISTORY];
+        time = new long[fingers * HISTORY];
+        count = new int[fingers];
+    }
+
+    public void reset(int finger) {
+        count[finger] = 0;
+    }
+
+    /**
+     * Record the raw fingertip position of a frame.
+     *
+     * @param normalizedY Landmark y in image-normalized units
+     * @param normalizedZ Landmark z (depth relative to the wrist, same scale as x)
+     * @param handScale   Wrist to middle knuckle distance in image-normalized units
+     */
+    public void addSample(int finger, float normalizedY, float normalizedZ, float handScale, long timeMs) {
+        if (!(handScale > 0))
+            return;
+
+        int n = count[finger];
+        int base = finger * HISTORY;
+        if (n > 0) {
+            long lastTime = time[base + (n - 1) % HISTORY];
+            if (timeMs <= lastTime)
+                return; // Same frame delivered twice
+            if (timeMs - lastTime > MAX_SAMPLE_GAP_MS) {
+                n = 0;
+            }
+        }
+
+        int slot = base + n % HISTORY;
+        height[slot] = normalizedY / handScale;
+        depth[slot] = normalizedZ / handScale;
+        time[slot] = timeMs;
+        count[finger] = n + 1;
+    }
+
+    /**
+     * @return Current strike speed in hand lengths per second, 0 if the finger is not
+     *         moving into the keys or has fewer than two samples
+     */
+    public float getStrikeSpeed(int finger) {
+        int n = Math.min(count[finger], HISTORY);
+        if (n < 2)
+            return 0f;
+
+        int base = finger * HISTORY;
+        long newest = time[base + (count[finger] - 1) % HISTORY];
+
+        // Least-squares slopes of height and depth over time
+        float sumT = 0f;
+        float sumTT = 0f;
+        float sumH = 0f;
+        float sumTH = 0f;
+        float sumD = 0f;
+        float sumTD = 0f;
+        for (int i = 0; i < n; i++) {
+            int slot = base + i;
+            float t = (time[slot] - newest) / 1000f;
+            sumT += t;
+            sumTT += t * t;
+            sumH += height[slot];
+            sumTH += t * height[slot];
+            sumD += depth[slot];
+            sumTD += t * depth[slot];
+        }
+        float denominator = n * sumTT - sumT * sumT;
+        if (denominator <= 0f)
+            return 0f;
+
+        float downward = Math.max(0f, (n * sumTH - sumT * sumH) / denominator);
+        float towardCamera = Math.max(0f, -(n * sumTD - sumT * sumD) / denominator);
+        return (float) Math.sqrt(downward * downward + towardCamera * towardCamera);
+    }
+
+    /**
+     * MIDI-style velocity (1-127) of a strike happening now.
+     */
+    public int getVelocity(int finger) {
+        if (Math.min(count[finger], HISTORY) < 2)
+            return DEFAULT_VELOCITY;
+        return speedToVelocity(getStrikeSpeed(finger));
+    }
+
+    /**
+     * Square-root curve: gives more resolution to soft strikes, where tracking noise
+     * matters most.
+     */
+    static int speedToVelocity(float speed) {
+        float normalized = (speed - MIN_STRIKE_SPEED) / (MAX_STRIKE_SPEED - MIN_STRIKE_SPEED);
+        normalized = Math.max(0f, Math.min(1f, normalized));
+        return MIN_VELOCITY + Math.round((MAX_VELOCITY - MIN_VELOCITY) * (float) Math.sqrt(normalized));
+    }
+}
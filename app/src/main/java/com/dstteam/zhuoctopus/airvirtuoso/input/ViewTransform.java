@@ -0,0 +1,54 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+/**
+ * Maps normalized landmark coordinates to view coordinates, accounting for the
+ * center crop of the camera preview and the alignment spread factors.
+ * Parameters are precomputed in {@link #configure}, so mapping a point is plain arithmetic.
+ */
+public class ViewTransform {
+
+    private float scaleX = 0;
+    private float scaleY = 0;
+    private float offsetX = 0;
+    private float offsetY = 0;
+
+    /**
+     * @param spreadX Horizontal spread away from the view center to fix alignment
+     * @param spreadY Vertical spread away from the view center to fix alignment
+     */
+    public void configure(int viewWidth, int viewHeight, int imageWidth, int imageHeight,
+            float spreadX, float spreadY) {
+        float centerX = viewWidth / 2f;
+        float centerY = viewHeight / 2f;
+
+        if (imageWidth == 0 || imageHeight == 0 || viewWidth == 0 || viewHeight == 0) {
+            // Fallback simple scaling
+            scaleX = viewWidth;
+            scaleY = viewHeight;
+            offsetX = 0;
+            offsetY = 0;
+            return;
+        }
+
+        // Compute scale factor for center-crop (fill view)
+        float scale = Math.max((float) viewWidth / imageWidth, (float) viewHeight / imageHeight);
+        // Compute offset due to cropping
+        float cropOffsetX = (viewWidth - imageWidth * scale) / 2f;
+        float cropOffsetY = (viewHeight - imageHeight * scale) / 2f;
+
+        // Fold crop and spread into one affine map per axis:
+        // view = ((norm * image * scale + cropOffset) - center) * spread + center
+        scaleX = imageWidth * scale * spreadX;
+        scaleY = imageHeight * scale * spreadY;
+        offsetX = (cropOffsetX - centerX) * spreadX + centerX;
+        offsetY = (cropOffsetY - centerY) * spreadY + centerY;
+    }
+
+    public float mapX(float xNorm) {
+        return xNorm * scaleX + offsetX;
+    }
+
+    public float mapY(float yNorm) {
+        return yNorm * scaleY + offsetY;
+    }
+}
@@ -0,0 +1,152 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clock-driven playback of a note sequence.
+ *
+ * Every onset is computed from the song timeline (the sum of the preceding durations)
+ * against one time anchor, instead of sleeping for each note's duration in turn, so
+ * callback and scheduling overhead never accumulates into drift. Notes are handed to the
+ * listener up to the lookahead before their onset, together with the exact onset time,
+ * so the audio layer can start them on time regardless of thread wake-up jitter.
+ * The tempo can change during playback: the anchor moves to the current song position
+ * and later onsets are recomputed from there.
+ */
+public class DemoScheduler {
+
+    public interface Clock {
+        long nanoTime();
+
+        /**
+         * Block until the clock reaches the deadline. May overshoot.
+         */
+        void sleepUntil(long deadlineNanos) throws InterruptedException;
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepUntil(long deadlineNanos) throws InterruptedException {
+            long remaining;
+            while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        }
+    };
+
+    public interface Listener {
+        /**
+         * Called on the scheduler thread shortly before the note is due.
+         *
+         * @param onsetNanos When the note should sound, on the scheduler's clock
+         */
+        void onNoteScheduled(int index, long onsetNanos);
+
+        /**
+         * The last note's duration has elapsed.
+         */
+        void onFinished();
+    }
+
+    public static final long DEFAULT_LOOKAHEAD_MS = 50;
+    public static final float MIN_TEMPO = 0.25f;
+    public static final float MAX_TEMPO = 4f;
+
+    private final Clock clock;
+    private final long lookaheadNanos;
+    private final long maxSleepNanos; // Wake at least this often to pick up tempo changes
+    private final long[] onsetMs; // Song time of each onset; the extra last entry is the end
+
+    // Maps song time to clock time; guarded by this
+    private long anchorNanos;
+    private double anchorSongMs;
+    private double tempo = 1.0;
+
+    /**
+     * @param durationsMs Duration of each note at tempo 1.0
+     */
+    public DemoScheduler(Clock clock, long lookaheadMs, int[] durationsMs) {
+        this.clock = clock;
+        this.lookaheadNanos = lookaheadMs * 1_000_000L;
+        this.maxSleepNanos = Math.max(1_000_000L, lookaheadNanos / 2);
+        onsetMs = new long[durationsMs.length + 1];
+        for (int i = 0; i < durationsMs.length; i++) {
+            onsetMs[i + 1] = onsetMs[i] + durationsMs[i];
+        }
+    }
+
+    /**
+     * Change the playback speed (1.0 = as written). Takes effect for notes not yet handed
+     * to the listener.
+     */
+    public synchronized void setTempo(double newTempo) {
+        newTempo = Math.max(MIN_TEMPO, Math.min(MAX_TEMPO, newTempo));
+        long now = clock.nanoTime();
+        if (now > anchorNanos) {
+            anchorSongMs = songPositionMs(now);
+            anchorNanos = now;
+        }
+        tempo = newTempo;
+    }
+
+    public synchronized double getTempo() {
+        return tempo;
+    }
+
+    /**
+     * Clock time at which a note index (or {@code getNoteCount()} for the end) is due.
+     */
+    public synchronized long getOnsetNanos(int index) {
+        return anchorNanos + Math.round((onsetMs[index] - anchorSongMs) / tempo * 1_000_000.0);
+    }
+
+    public int getNoteCount() {
+        return onsetMs.length - 1;
+    }
+
+    private double songPositionMs(long nanos) {
+        return anchorSongMs + (nanos - anchorNanos) * tempo / 1_000_000.0;
+    }
+
+    /**
+     * Play from the given note on the calling thread. Returns after
+     * {@link Listener#onFinished()}, or throws when the thread is interrupted.
+     */
+    public void run(int startIndex, Listener listener) throws InterruptedException {
+        synchronized (this) {
+            // The first note also gets the full lookahead
+            anchorNanos = clock.nanoTime() + lookaheadNanos;
+            anchorSongMs = onsetMs[startIndex];
+        }
+
+        int count = getNoteCount();
+        for (int i = startIndex; i < count; i++) {
+            waitUntil(i, lookaheadNanos);
+            listener.onNoteScheduled(i, getOnsetNanos(i));
+        }
+        waitUntil(count, 0);
+        listener.onFinished();
+    }
+
+    /**
+     * Sleep until {@code leadNanos} before the onset of a note, following tempo changes.
+     */
+    private void waitUntil(int index, long leadNanos) throws InterruptedException {
+        while (true) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            long wake = getOnsetNanos(index) - leadNanos;
+            long now = clock.nanoTime();
+            if (now >= wake)
+                return;
+            clock.sleepUntil(Math.min(wake, now + maxSleepNanos));
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Pitch;
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+import com.dstteam.zhuoctopus.airvirtuoso.util.Keyboard;
+
+/**
+ * Assigns recommended fingers to scores that have none.
+ *
+ * Notes from C4 up are played by the right hand and lower notes by the left. For each
+ * hand a Viterbi pass over its notes picks the finger sequence with the lowest total
+ * cost: a finger outside its comfortable keys (the reach ranges of
+ * {@link HandPositionValidator}), the thumb or pinky on a black key, intervals far from
+ * the natural span between two fingers, repeated fingers on different keys, and finger
+ * crossings other than the thumb passing under. Notes of a chord must use fingers in key
+ * order. Work is O(notes x 25), and a score is solved once when it is imported.
+ */
+public final class FingeringOptimizer {
+    private static final int FINGERS = 5; // Piano numbering: 1 = thumb ... 5 = pinky
+    private static final int INFINITE = Integer.MAX_VALUE / 4;
+
+    private static final int OUT_OF_REACH_COST = 6;
+    private static final int THUMB_ON_BLACK_COST = 2;
+    private static final int PINKY_ON_BLACK_COST = 1;
+    private static final int SAME_FINGER_COST = 5; // Plus the interval in semitones
+    private static final int CHANGE_ON_REPEAT_COST = 1;
+    private static final int OVERSTRETCH_COST = 3; // Per semitone beyond the span limit
+    private static final int THUMB_CROSSING_COST = 3;
+    private static final int PINKY_CROSSING_COST = 5;
+    private static final int OTHER_CROSSING_COST = 15;
+
+    private static final int RIGHT_HAND_LOWEST_MIDI = 60; // C4
+
+    private FingeringOptimizer() {
+    }
+
+    /**
+     * @return The score with generated fingers, or the score itself if it already has any
+     */
+    public static Score apply(Score score) {
+        if (score == null || score.size() == 0 || score.hasFingering())
+            return score;
+
+        return score.withFingers(solve(score));
+    }
+
+    /**
+     * Fingers for every note in {@link Score#getFinger} numbering (0 = pinky ... 4 = thumb).
+     */
+    static byte[] solve(Score score) {
+        byte[] fingers = new byte[score.size()];
+        // Visit notes by step, lowest key first within a chord
+        int[] order = new int[score.size()];
+        int count = 0;
+        for (int step = 0; step < score.getStepCount(); step++) {
+            int start = count;
+            for (int i = score.getStepStart(step); i < score.getStepStart(step + 1); i++) {
+                int j = count++;
+                while (j > start && score.getMidi(order[j - 1]) > score.getMidi(i)) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = i;
+            }
+        }
+        solveHand(score, order, HandPositionValidator.HandType.LEFT, fingers);
+        solveHand(score, order, HandPositionValidator.HandType.RIGHT, fingers);
+        return fingers;
+    }
+
+    private static void solveHand(Score score, int[] order, HandPositionValidator.HandType hand, byte[] fingers) {
+        boolean right = hand == HandPositionValidator.HandType.RIGHT;
+        int[] notes = new int[order.length];
+        int n = 0;
+        for (int index : order) {
+            if ((score.getMidi(index) >= RIGHT_HAND_LOWEST_MIDI) == right) {
+                notes[n++] = index;
+            }
+        }
+        if (n == 0)
+            return;
+
+        byte[] back = new byte[n * FINGERS];
+        int[] cost = new int[FINGERS];
+        int[] next = new int[FINGERS];
+        for (int f = 0; f < FINGERS; f++) {
+            cost[f] = noteCost(hand, f + 1, score.getMidi(notes[0]));
+        }
+        for (int k = 1; k < n; k++) {
+            int previous = notes[k - 1];
+            int current = notes[k];
+            boolean sameChord = score.getOnsetTicks(previous) == score.getOnsetTicks(current);
+            // Positive intervals move towards the pinky
+            int interval = score.getMidi(current) - score.getMidi(previous);
+            if (!right) {
+                interval = -interval;
+            }
+            for (int f = 0; f < FINGERS; f++) {
+                int best = INFINITE;
+                int bestFrom = 0;
+                for (int from = 0; from < FINGERS; from++) {
+                    int total = cost[from] + transitionCost(from + 1, f + 1, interval, sameChord);
+                    if (total < best) {
+                        best = total;
+                        bestFrom = from;
+                    }
+                }
+                next[f] = Math.min(INFINITE, best + noteCost(hand, f + 1, score.getMidi(current)));
+                back[k * FINGERS + f] = (byte) bestFrom;
+            }
+            int[] swap = cost;
+            cost = next;
+            next = swap;
+        }
+
+        int finger = 0;
+        for (int f = 1; f < FINGERS; f++) {
+            if (cost[f] < cost[finger]) {
+                finger = f;
+            }
+        }
+        for (int k = n - 1; k >= 0; k--) {
+            fingers[notes[k]] = (byte) (FINGERS - 1 - finger); // Thumb (0 here) is 4 in the score
+            finger = back[k * FINGERS + finger];
+        }
+    }
+
+    private static int noteCost(HandPositionValidator.HandType hand, int finger, int midi) {
+        int cost = 0;
+        int keyIndex = Keyboard.keyIndex(midi);
+        if (keyIndex >= 0 && !HandPositionValidator.isFingerAppropriateForKey(hand, finger, keyIndex)) {
+            cost += OUT_OF_REACH_COST;
+        }
+        if (Pitch.of(midi).isBlackKey()) {
+            if (finger == 1) {
+                cost += THUMB_ON_BLACK_COST;
+            } else if (finger == 5) {
+                cost += PINKY_ON_BLACK_COST;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * @param interval Semitones, positive towards the pinky side of the hand
+     */
+    private static int transitionCost(int from, int to, int interval, boolean sameChord) {
+        int gap = to - from;
+        int distance = Math.abs(interval);
+        if (gap == 0) {
+            if (sameChord)
+                return INFINITE;
+            return interval == 0 ? 0 : SAME_FINGER_COST + distance;
+        }
+        if (interval == 0)
+            return sameChord ? INFINITE : CHANGE_ON_REPEAT_COST;
+
+        if ((gap > 0) == (interval > 0)) {
+            // Roughly a whole tone per finger; the thumb opens wider
+            int fingers = Math.abs(gap);
+            int limit = 2 * fingers + (from == 1 || to == 1 ? 4 : 2);
+            int cost = Math.abs(distance - 2 * fingers);
+            if (distance > limit) {
+                cost += OVERSTRETCH_COST * (distance - limit);
+            }
+            return cost;
+        }
+
+        if (sameChord)
+            return INFINITE;
+        // Thumb under, or a finger over the thumb
+        boolean thumbCrossing = (to == 1 && interval > 0) || (from == 1 && interval < 0);
+        if (!thumbCrossing)
+            return OTHER_CROSSING_COST + distance;
+        int other = to == 1 ? from : to;
+        return THUMB_CROSSING_COST + Math.max(0, distance - 4)
+                + (other == 5 ? PINKY_CROSSING_COST : 0);
+    }
+}
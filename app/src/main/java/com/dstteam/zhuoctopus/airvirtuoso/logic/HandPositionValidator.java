@@ -14,6 +14,13 @@ public class HandPositionValidator {
     private static final int LEFT_HAND_MAX_KEY_INDEX = 9; // Up to C5 allowed for Left Hand
     private static final int RIGHT_HAND_MIN_KEY_INDEX = 2;  // Down to C4 allowed for Right Hand
 
+    // Outcomes of the shared position check
+    private static final int CHECK_OK = 0;
+    private static final int CHECK_NO_HAND = 1;
+    private static final int CHECK_LEFT_TOO_FAR_RIGHT = 2;
+    private static final int CHECK_RIGHT_TOO_FAR_LEFT = 3;
+    private static final int CHECK_REACH_EXCEEDED = 4;
+
     public enum HandType {
         LEFT,
         RIGHT,
@@ -52,8 +59,38 @@ public class HandPositionValidator {
             int keyIndex,
             float wristX) {
 
+        HandType detectedHand = getHandType(handLandmarkerResult, handIndex);
+        switch (check(handLandmarkerResult, handIndex, detectedHand, fingerIndex, keyIndex, wristX)) {
+            case CHECK_NO_HAND:
+                return new ValidationResult(false, HandType.UNKNOWN, "No hand detected");
+            case CHECK_LEFT_TOO_FAR_RIGHT:
+                return new ValidationResult(false, detectedHand, "Left hand too far right");
+            case CHECK_RIGHT_TOO_FAR_LEFT:
+                return new ValidationResult(false, detectedHand, "Right hand too far left");
+            case CHECK_REACH_EXCEEDED:
+                return new ValidationResult(false, detectedHand, "Comfortable reach exceeded");
+            default:
+                return new ValidationResult(true, detectedHand, "Correct position");
+        }
+    }
+
+    /**
+     * Same check as {@link #validateFingerPosition} without building a result object,
+     * for per-frame callers that only need the verdict.
+     */
+    public boolean isFingerPositionCorrect(
+            HandLandmarkerResult handLandmarkerResult,
+            int handIndex,
+            int fingerIndex,
+            int keyIndex,
+            float wristX) {
+        HandType detectedHand = getHandType(handLandmarkerResult, handIndex);
+        return check(handLandmarkerResult, handIndex, detectedHand, fingerIndex, keyIndex, wristX) == CHECK_OK;
+    }
+
+    private HandType getHandType(HandLandmarkerResult handLandmarkerResult, int handIndex) {
         if (handLandmarkerResult == null || handIndex >= handLandmarkerResult.handedness().size()) {
-            return new ValidationResult(false, HandType.UNKNOWN, "No hand detected");
+            return HandType.UNKNOWN;
         }
 
         // Get MediaPipe's handedness detection
@@ -70,6 +107,20 @@ public class HandPositionValidator {
                 detectedHand = HandType.LEFT; // Camera's right = user's left
             }
         }
+        return detectedHand;
+    }
+
+    private int check(
+            HandLandmarkerResult handLandmarkerResult,
+            int handIndex,
+            HandType detectedHand,
+            int fingerIndex,
+            int keyIndex,
+            float wristX) {
+
+        if (handLandmarkerResult == null || handIndex >= handLandmarkerResult.handedness().size()) {
+            return CHECK_NO_HAND;
+        }
 
         // Double-check with wrist position if handedness confidence is low or ambiguous
         // But generally trust the classifier first unless it completely contradicts position
@@ -88,20 +139,20 @@ public class HandPositionValidator {
 
         // Check if hand is in correct zone
         if (detectedHand == HandType.LEFT && !isLeftZone) {
-            return new ValidationResult(false, detectedHand, "Left hand too far right");
+            return CHECK_LEFT_TOO_FAR_RIGHT;
         }
         if (detectedHand == HandType.RIGHT && !isRightZone) {
-            return new ValidationResult(false, detectedHand, "Right hand too far left");
+            return CHECK_RIGHT_TOO_FAR_LEFT;
         }
 
         // Check finger appropriateness for the key
         boolean fingerIsAppropriate = isFingerAppropriateForKey(detectedHand, fingerNumber, keyIndex);
 
         if (!fingerIsAppropriate) {
-            return new ValidationResult(false, detectedHand, "Comfortable reach exceeded");
+            return CHECK_REACH_EXCEEDED;
         }
 
-        return new ValidationResult(true, detectedHand, "Correct position");
+        return CHECK_OK;
     }
 
     /**
@@ -127,8 +178,9 @@ public class HandPositionValidator {
     /**
      * Check if finger is appropriate for the key based on hand and position.
      * Ranges are relaxed to allow for hand movement and comfortable reaches.
+     * Also used by {@link FingeringOptimizer} when generating fingerings.
      */
-    private boolean isFingerAppropriateForKey(HandType hand, int fingerNumber, int keyIndex) {
+    static boolean isFingerAppropriateForKey(HandType hand, int fingerNumber, int keyIndex) {
         if (hand == HandType.LEFT) {
             // Left hand finger mapping (A3=0 ... C6=16)
             // Tighter ranges than before, but covering C4 for Pinky
@@ -0,0 +1,166 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+
+/**
+ * Repeats a section of a score at a practice tempo, after a count-in.
+ *
+ * The onsets of the section's steps are computed once per tempo into a primitive
+ * timeline (nanoseconds from the start of the section, with the section length as the
+ * last entry) and kept, so restarting the loop only moves the time anchor by the section
+ * length and changing the tempo only switches timelines. Like {@link DemoScheduler},
+ * every onset is taken from the anchor rather than from the previous note, and notes are
+ * handed over with a lookahead.
+ */
+public class PracticeLoop {
+
+    public interface Listener {
+        /**
+         * A count-in click, before the first pass.
+         *
+         * @param beat 0 for the first click
+         */
+        void onCountIn(int beat, int beats, long onsetNanos);
+
+        /**
+         * A pass through the section is about to start, shortly before its first step.
+         *
+         * @param pass 0 for the first pass
+         */
+        void onPassStarted(int pass, long startNanos);
+
+        /**
+         * Called on the loop thread shortly before the step is due.
+         */
+        void onStepScheduled(int step, long onsetNanos);
+    }
+
+    public static final int MIN_TEMPO_PERCENT = 50;
+    public static final int MAX_TEMPO_PERCENT = 150;
+    public static final int DEFAULT_COUNT_IN_BEATS = 4;
+
+    private final DemoScheduler.Clock clock;
+    private final long lookaheadNanos;
+    private final long maxSleepNanos;
+    private final int firstStep;
+    private final int stepCount;
+    private final int countInBeats;
+    private final long[] sectionMs; // Step onsets from the section start; the last entry is its length
+    private final long quarterMs;
+    private final long[][] timelines = new long[MAX_TEMPO_PERCENT - MIN_TEMPO_PERCENT + 1][];
+
+    // Clock time of the current pass's start; guarded by this
+    private long anchorNanos;
+    private int tempoPercent = 100;
+
+    /**
+     * Loop steps {@code firstStep} up to, not including, {@code endStep}.
+     */
+    public PracticeLoop(DemoScheduler.Clock clock, long lookaheadMs, Score score,
+                        int firstStep, int endStep, int countInBeats) {
+        if (firstStep < 0 || endStep <= firstStep || endStep > score.getStepCount())
+            throw new IllegalArgumentException("Invalid section: steps " + firstStep + " to " + endStep);
+        this.clock = clock;
+        this.lookaheadNanos = lookaheadMs * 1_000_000L;
+        this.maxSleepNanos = Math.max(1_000_000L, lookaheadNanos / 2);
+        this.firstStep = firstStep;
+        this.stepCount = endStep - firstStep;
+        this.countInBeats = Math.max(0, countInBeats);
+        this.quarterMs = score.getQuarterMs();
+
+        int startTicks = score.getStepOnsetTicks(firstStep);
+        sectionMs = new long[stepCount + 1];
+        for (int i = 0; i <= stepCount; i++) {
+            sectionMs[i] = score.ticksToMs(score.getStepOnsetTicks(firstStep + i) - startTicks);
+        }
+    }
+
+    /**
+     * Change the speed in percent of the written tempo, clamped to 50-150. Takes effect
+     * for notes not yet handed to the listener.
+     */
+    public synchronized void setTempoPercent(int percent) {
+        percent = Math.max(MIN_TEMPO_PERCENT, Math.min(MAX_TEMPO_PERCENT, percent));
+        if (percent == tempoPercent)
+            return;
+        // Keep the current position in the section; the count-in scales with it
+        long now = clock.nanoTime();
+        if (anchorNanos != 0) {
+            anchorNanos = now - (now - anchorNanos) * tempoPercent / percent;
+        }
+        tempoPercent = percent;
+    }
+
+    public synchronized int getTempoPercent() {
+        return tempoPercent;
+    }
+
+    /**
+     * Onsets of the section's steps at a tempo, in nanoseconds from the section start.
+     * The last entry is the section length. Computed on first use and kept.
+     */
+    public synchronized long[] getTimeline(int percent) {
+        int slot = percent - MIN_TEMPO_PERCENT;
+        long[] timeline = timelines[slot];
+        if (timeline == null) {
+            timeline = new long[sectionMs.length];
+            for (int i = 0; i < timeline.length; i++) {
+                timeline[i] = sectionMs[i] * 100_000_000L / percent;
+            }
+            timelines[slot] = timeline;
+        }
+        return timeline;
+    }
+
+    private synchronized long getStepOnsetNanos(int i) {
+        return anchorNanos + getTimeline(tempoPercent)[i];
+    }
+
+    private synchronized long getCountInOnsetNanos(int beat) {
+        return anchorNanos - (countInBeats - beat) * (quarterMs * 100_000_000L / tempoPercent);
+    }
+
+    /**
+     * Count in, then loop the section on the calling thread until it is interrupted.
+     */
+    public void run(Listener listener) throws InterruptedException {
+        synchronized (this) {
+            getTimeline(tempoPercent);
+            anchorNanos = clock.nanoTime() + lookaheadNanos
+                    + countInBeats * (quarterMs * 100_000_000L / tempoPercent);
+        }
+
+        for (int beat = 0; beat < countInBeats; beat++) {
+            waitUntil(-1 - beat);
+            listener.onCountIn(beat, countInBeats, getCountInOnsetNanos(beat));
+        }
+        for (int pass = 0; ; pass++) {
+            waitUntil(0);
+            listener.onPassStarted(pass, getStepOnsetNanos(0));
+            for (int i = 0; i < stepCount; i++) {
+                waitUntil(i);
+                listener.onStepScheduled(firstStep + i, getStepOnsetNanos(i));
+            }
+            synchronized (this) {
+                anchorNanos += getTimeline(tempoPercent)[stepCount];
+            }
+        }
+    }
+
+    /**
+     * Sleep until the lookahead before a step, or before count-in beat {@code -1 - index}
+     * when the index is negative, following tempo changes.
+     */
+    private void waitUntil(int index) throws InterruptedException {
+        while (true) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            long onset = index >= 0 ? getStepOnsetNanos(index) : getCountInOnsetNanos(-1 - index);
+            long wake = onset - lookaheadNanos;
+            long now = clock.nanoTime();
+            if (now >= wake)
+                return;
+            clock.sleepUntil(Math.min(wake, now + maxSleepNanos));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+import com.dstteam.zhuoctopus.airvirtuoso.util.Keyboard;
+
+/**
+ * Picks the transposition that moves a score onto the on-screen keyboard.
+ *
+ * The {@link Keyboard} only has the white keys from A3 to C6, so imported scores often have
+ * notes that cannot be played. The transposer builds a histogram of the score's pitches
+ * and, in one pass over it, counts for every possible shift how many notes would land on
+ * a key. The shift with the highest count wins; ties go to whole octaves, which keep the
+ * key of the piece, and then to the smallest shift.
+ */
+public final class RangeTransposer {
+
+    private static final int NOTE_COUNT = 128;
+    private static final int NO_SHIFT = NOTE_COUNT - 1; // Index of shift 0 in the counts
+
+    private RangeTransposer() {
+    }
+
+    /**
+     * Shift in semitones that puts the most notes on playable keys, keeping every note
+     * within MIDI range.
+     */
+    public static int bestShift(Score score) {
+        if (score == null || score.size() == 0)
+            return 0;
+
+        int[] histogram = new int[NOTE_COUNT];
+        int lowest = NOTE_COUNT;
+        int highest = -1;
+        for (int i = 0; i < score.size(); i++) {
+            int midi = score.getMidi(i);
+            histogram[midi]++;
+            lowest = Math.min(lowest, midi);
+            highest = Math.max(highest, midi);
+        }
+
+        // counts[NO_SHIFT + s] = notes on a key after shifting by s
+        int[] counts = new int[2 * NOTE_COUNT - 1];
+        for (int midi = lowest; midi <= highest; midi++) {
+            if (histogram[midi] == 0)
+                continue;
+            for (int key = 0; key < Keyboard.KEY_COUNT; key++) {
+                counts[NO_SHIFT + Keyboard.getMidi(key) - midi] += histogram[midi];
+            }
+        }
+
+        int best = 0;
+        for (int shift = -lowest; shift <= NOTE_COUNT - 1 - highest; shift++) {
+            if (isBetter(shift, counts[NO_SHIFT + shift], best, counts[NO_SHIFT + best])) {
+                best = shift;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isBetter(int shift, int count, int best, int bestCount) {
+        if (count != bestCount)
+            return count > bestCount;
+        boolean octave = shift % 12 == 0;
+        boolean bestOctave = best % 12 == 0;
+        if (octave != bestOctave)
+            return octave;
+        return Math.abs(shift) < Math.abs(best);
+    }
+}
@@ -0,0 +1,134 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+
+/**
+ * Online alignment of played notes against the steps of a score.
+ *
+ * Each played note extends a dynamic-time-warping alignment by one row. A row holds the
+ * cheapest cost of ending the alignment at each step, reached by advancing to the step
+ * (0 if the note is in it, a substitution otherwise), by staying on the same step (free
+ * for another note of the step, the extra-note cost for anything else) or by skipping
+ * steps without playing them. The follower's position is the cheapest step of the
+ * latest row. Only a band of steps around the position is kept, so memory is two rows of
+ * the band width and each note costs work proportional to it.
+ */
+public class ScoreFollower {
+    public static final int DEFAULT_BAND_WIDTH = 16;
+
+    // Costs in tenths. Skipping one step is cheaper than an extra note, so playing the
+    // note after a forgotten one moves on at once; a larger jump needs a second note to
+    // confirm it.
+    private static final int SUBSTITUTION_COST = 10;
+    private static final int EXTRA_NOTE_COST = 5;
+    private static final int SKIP_COST = 4;
+    private static final int INFINITE = Integer.MAX_VALUE / 2;
+
+    private final int bandWidth;
+    private final int bandBehind; // Columns kept behind the position
+    private int[] previousRow;
+    private int[] currentRow;
+
+    private Score score;
+    private int stepCount;
+    private int bandStart; // Step of column 0; -1 is the virtual step before the first
+    private int position = -1;
+
+    public ScoreFollower(int bandWidth) {
+        if (bandWidth < 2)
+            throw new IllegalArgumentException("Band width must be at least 2");
+        this.bandWidth = bandWidth;
+        this.bandBehind = Math.max(1, bandWidth / 4);
+        previousRow = new int[bandWidth];
+        currentRow = new int[bandWidth];
+    }
+
+    /**
+     * Follow a new score from its beginning.
+     */
+    public void reset(Score score) {
+        this.score = score;
+        this.stepCount = score != null ? score.getStepCount() : 0;
+        seek(0);
+    }
+
+    /**
+     * Restart the alignment so the given step is the next one expected.
+     */
+    public void seek(int nextStep) {
+        position = Math.max(-1, Math.min(nextStep - 1, stepCount - 1));
+        bandStart = position;
+        for (int k = 0; k < bandWidth; k++) {
+            previousRow[k] = k * SKIP_COST;
+        }
+    }
+
+    /**
+     * Last step the played notes are aligned to, or -1 before the first step.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Add a played note to the alignment.
+     *
+     * @return The new position
+     */
+    public int onNote(int midi) {
+        if (score == null)
+            return position;
+
+        int width = columnCount();
+        int best = INFINITE;
+        int bestColumn = 0;
+        for (int k = 0; k < width; k++) {
+            int step = bandStart + k;
+            boolean inStep = step >= 0 && midi >= 0 && score.stepContains(step, midi);
+
+            int cost = previousRow[k] + (inStep ? 0 : EXTRA_NOTE_COST);
+            if (k > 0) {
+                cost = Math.min(cost, previousRow[k - 1] + (inStep ? 0 : SUBSTITUTION_COST));
+                cost = Math.min(cost, currentRow[k - 1] + SKIP_COST);
+            }
+            currentRow[k] = Math.min(cost, INFINITE);
+
+            if (currentRow[k] <= best) { // Ties go to the later step
+                best = currentRow[k];
+                bestColumn = k;
+            }
+        }
+
+        int[] swap = previousRow;
+        previousRow = currentRow;
+        currentRow = swap;
+        // Only differences between columns matter; keep the numbers small on long songs
+        for (int k = 0; k < width; k++) {
+            previousRow[k] = Math.min(INFINITE, previousRow[k] - best);
+        }
+        position = bandStart + bestColumn;
+        moveBand(width);
+        return position;
+    }
+
+    private int columnCount() {
+        return Math.max(1, Math.min(bandWidth, stepCount - bandStart));
+    }
+
+    /**
+     * Slide the band forward so it keeps a few steps behind the position and the rest
+     * ahead. Steps entering the band are reached by skipping from the last column.
+     */
+    private void moveBand(int width) {
+        int shift = Math.max(0, position - bandBehind - bandStart);
+        if (shift == 0)
+            return;
+
+        int kept = width - shift;
+        System.arraycopy(previousRow, shift, previousRow, 0, kept);
+        for (int k = kept; k < bandWidth; k++) {
+            previousRow[k] = Math.min(INFINITE, previousRow[k - 1] + SKIP_COST);
+        }
+        bandStart += shift;
+    }
+}
@@ -1,356 +1,804 @@
 package com.dstteam.zhuoctopus.airvirtuoso.logic;
 
 import com.dstteam.zhuoctopus.airvirtuoso.model.Note;
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
 import com.dstteam.zhuoctopus.airvirtuoso.model.Song;
+import com.dstteam.zhuoctopus.airvirtuoso.util.Midi;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheet-mode progress and demo playback.
+ *
+ * The engine is a single-writer actor: every command (note checks from the input thread,
+ * demo progress, UI and voice commands) is queued to one engine thread, which alone owns
+ * the mutable state. After each change it publishes an immutable {@link Snapshot}, which
+ * the getters read and listeners receive, so callers on any thread see a consistent view
+ * without locking.
+ */
 public class SheetMusicEngine {
+    // Note values and pitches used by the built-in songs
+    private static final int QUARTER_MS = 750; // Slowed down tempo
+    private static final int BEATS_PER_BAR = 4;
+    private static final int QUARTER = Score.TICKS_PER_QUARTER;
+    private static final int EIGHTH = QUARTER / 2;
+    private static final int DOTTED_QUARTER = QUARTER * 3 / 2;
+    private static final int HALF = QUARTER * 2;
+    private static final int C4 = 60;
+    private static final int D4 = 62;
+    private static final int E4 = 64;
+    private static final int F4 = 65;
+    private static final int G4 = 67;
+    private static final int A4 = 69;
+
+    public static final int DEFAULT_CHORD_WINDOW_MS = 300;
+
+    private final ScheduledExecutorService executor;
+    private final List<Song> songLibrary = loadSongLibrary();
+    private volatile SheetMusicListener listener;
+    private volatile Snapshot snapshot;
+
+    // Owned by the engine thread
     private Song currentSong;
-    private int currentNoteIndex = 0;
-    private SheetMusicListener listener;
-    private List<Song> songLibrary = new ArrayList<>();
+    private int currentStep = 0; // Notes that start together form one step
+    private int currentNoteIndex = 0; // First note of the current step
+    // Members of the current step played so far, as a 128-bit MIDI mask
+    private long heldMaskLow = 0;
+    private long heldMaskHigh = 0;
+    private long chordStartNanos = 0;
+    private long chordWindowNanos = DEFAULT_CHORD_WINDOW_MS * 1_000_000L;
+    private final ScoreFollower follower = new ScoreFollower(ScoreFollower.DEFAULT_BAND_WIDTH);
+    private Score followedScore;
     private boolean useLongVersion = false; // Default to short version
     private boolean isDemoPlaying = false;
     private Thread demoThread;
+    private DemoScheduler demoScheduler;
+    private PracticeLoop practiceLoop;
+    private int loopFirstStep = -1; // Section being practised, or -1 outside a loop
+    private int loopEndStep = -1;
+    private volatile double demoTempo = 1.0; // Written by setDemoTempo callers, read on the engine thread
+    private int demoGeneration = 0; // Drops messages from a demo that has been stopped
+
+    /**
+     * Immutable view of the engine state at one point in time.
+     */
+    public static final class Snapshot {
+        private final Song song;
+        private final boolean useLongVersion;
+        private final int step;
+        private final int noteIndex;
+        private final boolean demoPlaying;
+
+        Snapshot(Song song, boolean useLongVersion, int step, int noteIndex, boolean demoPlaying) {
+            this.song = song;
+            this.useLongVersion = useLongVersion;
+            this.step = step;
+            this.noteIndex = noteIndex;
+            this.demoPlaying = demoPlaying;
+        }
+
+        public Song getSong() {
+            return song;
+        }
+
+        public boolean isUseLongVersion() {
+            return useLongVersion;
+        }
+
+        public Score getScore() {
+            return song != null ? song.getScore(useLongVersion) : null;
+        }
 
+        public List<Note> getNotes() {
+            return song != null ? song.getNotes(useLongVersion) : Collections.emptyList();
+        }
+
+        public int getTotalNotes() {
+            return song != null ? song.getTotalNotes(useLongVersion) : 0;
+        }
+
+        /**
+         * Index of the next note to play (the first one of a chord).
+         */
+        public int getProgress() {
+            return noteIndex;
+        }
+
+        /**
+         * Index of the next step (single note or chord) to play.
+         */
+        public int getStep() {
+            return step;
+        }
+
+        public Note getCurrentNote() {
+            return noteIndex < getTotalNotes() ? getNotes().get(noteIndex) : null;
+        }
+
+        public boolean isComplete() {
+            return song != null && noteIndex >= getTotalNotes();
+        }
+
+        public boolean isDemoPlaying() {
+            return demoPlaying;
+        }
+    }
+
+    /**
+     * Called on the engine thread.
+     */
     public interface SheetMusicListener {
         void onNoteCorrect(Note note, int progress, int total);
 
-        void onNoteIncorrect(Note expected, double played);
+        void onNoteIncorrect(Note expected, int playedMidi);
 
         void onSongComplete();
+
+        /**
+         * Any change of song, progress or demo state.
+         */
+        void onProgressChanged(Snapshot snapshot);
     }
 
     public interface AutoPlayCallback {
-        void onPlayNote(double frequency);
+        /**
+         * Called on the demo thread shortly before the note is due.
+         *
+         * @param onsetNanos When the note should sound, on the System.nanoTime() clock
+         */
+        void onPlayNote(double frequency, long onsetNanos);
+
+        /**
+         * A count-in click before a practice loop starts.
+         *
+         * @param beat 0 for the first of {@code beats} clicks
+         */
+        void onCountIn(int beat, int beats, long onsetNanos);
 
         void onAutoDemoComplete();
     }
 
     public SheetMusicEngine() {
-        // Initialize song library
-        loadSongLibrary();
+        this(Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "SheetMusicEngine")));
+    }
+
+    /**
+     * @param executor Must run one task at a time
+     */
+    public SheetMusicEngine(ScheduledExecutorService executor) {
+        this.executor = executor;
         // Set first song as default
         if (!songLibrary.isEmpty()) {
             currentSong = songLibrary.get(0);
         }
+        moveToStep(0);
+        snapshot = new Snapshot(currentSong, useLongVersion, currentStep, currentNoteIndex, isDemoPlaying);
     }
 
     public void setListener(SheetMusicListener listener) {
         this.listener = listener;
     }
 
-    private void loadSongLibrary() {
+    /**
+     * Stop the demo and the engine thread. Commands sent afterwards are ignored.
+     */
+    public void shutdown() {
+        post(this::stopDemoInternal);
+        executor.shutdown();
+    }
+
+    private void post(Runnable command) {
+        schedule(command, 0);
+    }
+
+    private void schedule(Runnable command, long delayNanos) {
+        try {
+            executor.schedule(command, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Engine shut down
+        }
+    }
+
+    /**
+     * Move to the start of a step, forgetting any partly played chord.
+     */
+    private void moveToStep(int step) {
+        Score score = currentSong != null ? currentSong.getScore(useLongVersion) : null;
+        currentStep = score != null ? Math.max(0, Math.min(step, score.getStepCount())) : 0;
+        currentNoteIndex = score != null ? score.getStepStart(currentStep) : 0;
+        heldMaskLow = 0;
+        heldMaskHigh = 0;
+        if (score != followedScore) {
+            follower.reset(score);
+            followedScore = score;
+        }
+        follower.seek(currentStep);
+    }
+
+    private void publish() {
+        Snapshot next = new Snapshot(currentSong, useLongVersion, currentStep, currentNoteIndex, isDemoPlaying);
+        snapshot = next;
+        SheetMusicListener currentListener = listener;
+        if (currentListener != null) {
+            currentListener.onProgressChanged(next);
+        }
+    }
+
+    private static List<Song> loadSongLibrary() {
+        List<Song> songLibrary = new ArrayList<>();
         // Song 1: Twinkle Twinkle Little Star
         // Quarter note = 750ms, Half note = 1500ms (slowed down tempo)
         // Fingering: 0=pinky, 1=ring, 2=middle, 3=index, 4=thumb
-        List<Note> twinkleShort = Arrays.asList(
-                new Note("C", 4, 261.63, 750, 4), // Twin- (thumb)
-                new Note("C", 4, 261.63, 750, 4), // kle (thumb)
-                new Note("G", 4, 392.00, 750, 0), // twin- (pinky)
-                new Note("G", 4, 392.00, 750, 0), // kle (pinky)
-                new Note("A", 4, 440.00, 750, 0), // lit- (pinky)
-                new Note("A", 4, 440.00, 750, 0), // tle (pinky)
-                new Note("G", 4, 392.00, 1500, 0), // star (pinky, half note)
-                new Note("F", 4, 349.23, 750, 1), // How (ring)
-                new Note("F", 4, 349.23, 750, 1), // I (ring)
-                new Note("E", 4, 329.63, 750, 2), // won- (middle)
-                new Note("E", 4, 329.63, 750, 2), // der (middle)
-                new Note("D", 4, 293.66, 750, 3), // what (index)
-                new Note("D", 4, 293.66, 750, 3), // you (index)
-                new Note("C", 4, 261.63, 1500, 4) // are (thumb, half note)
-        );
-
-        List<Note> twinkleLong = Arrays.asList(
+        Score twinkleShort = new Score.Builder(QUARTER_MS)
+                .note(C4, QUARTER, 4) // Twin- (thumb)
+                .note(C4, QUARTER, 4) // kle (thumb)
+                .note(G4, QUARTER, 0) // twin- (pinky)
+                .note(G4, QUARTER, 0) // kle (pinky)
+                .note(A4, QUARTER, 0) // lit- (pinky)
+                .note(A4, QUARTER, 0) // tle (pinky)
+                .note(G4, HALF, 0) // star (pinky, half note)
+                .note(F4, QUARTER, 1) // How (ring)
+                .note(F4, QUARTER, 1) // I (ring)
+                .note(E4, QUARTER, 2) // won- (middle)
+                .note(E4, QUARTER, 2) // der (middle)
+                .note(D4, QUARTER, 3) // what (index)
+                .note(D4, QUARTER, 3) // you (index)
+                .note(C4, HALF, 4) // are (thumb, half note)
+                .build();
+
+        Score twinkleLong = new Score.Builder(QUARTER_MS)
                 // Verse 1
-                new Note("C", 4, 261.63, 750, 4), new Note("C", 4, 261.63, 750, 4),
-                new Note("G", 4, 392.00, 750, 0), new Note("G", 4, 392.00, 750, 0),
-                new Note("A", 4, 440.00, 750, 0), new Note("A", 4, 440.00, 750, 0),
-                new Note("G", 4, 392.00, 1500, 0),
-                new Note("F", 4, 349.23, 750, 1), new Note("F", 4, 349.23, 750, 1),
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("D", 4, 293.66, 750, 3), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 1500, 4),
+                .note(C4, QUARTER, 4).note(C4, QUARTER, 4)
+                .note(G4, QUARTER, 0).note(G4, QUARTER, 0)
+                .note(A4, QUARTER, 0).note(A4, QUARTER, 0)
+                .note(G4, HALF, 0)
+                .note(F4, QUARTER, 1).note(F4, QUARTER, 1)
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(D4, QUARTER, 3).note(D4, QUARTER, 3)
+                .note(C4, HALF, 4)
                 // Verse 2
-                new Note("G", 4, 392.00, 750, 0), new Note("G", 4, 392.00, 750, 0),
-                new Note("F", 4, 349.23, 750, 1), new Note("F", 4, 349.23, 750, 1),
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("D", 4, 293.66, 1500, 3),
-                new Note("G", 4, 392.00, 750, 0), new Note("G", 4, 392.00, 750, 0),
-                new Note("F", 4, 349.23, 750, 1), new Note("F", 4, 349.23, 750, 1),
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("D", 4, 293.66, 1500, 3),
+                .note(G4, QUARTER, 0).note(G4, QUARTER, 0)
+                .note(F4, QUARTER, 1).note(F4, QUARTER, 1)
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(D4, HALF, 3)
+                .note(G4, QUARTER, 0).note(G4, QUARTER, 0)
+                .note(F4, QUARTER, 1).note(F4, QUARTER, 1)
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(D4, HALF, 3)
                 // Repeat Verse 1
-                new Note("C", 4, 261.63, 750, 4), new Note("C", 4, 261.63, 750, 4),
-                new Note("G", 4, 392.00, 750, 0), new Note("G", 4, 392.00, 750, 0),
-                new Note("A", 4, 440.00, 750, 0), new Note("A", 4, 440.00, 750, 0),
-                new Note("G", 4, 392.00, 1500, 0),
-                new Note("F", 4, 349.23, 750, 1), new Note("F", 4, 349.23, 750, 1),
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("D", 4, 293.66, 750, 3), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 1500, 4));
+                .note(C4, QUARTER, 4).note(C4, QUARTER, 4)
+                .note(G4, QUARTER, 0).note(G4, QUARTER, 0)
+                .note(A4, QUARTER, 0).note(A4, QUARTER, 0)
+                .note(G4, HALF, 0)
+                .note(F4, QUARTER, 1).note(F4, QUARTER, 1)
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(D4, QUARTER, 3).note(D4, QUARTER, 3)
+                .note(C4, HALF, 4)
+                .build();
 
         // Add both Short and Long versions as separate entries
         songLibrary.add(new Song("Twinkle Twinkle Little Star (Short)", twinkleShort, twinkleShort)); // Use short notes for both
         songLibrary.add(new Song("Twinkle Twinkle Little Star (Long)", twinkleLong, twinkleLong));   // Use long notes for both
 
         // Song 2: Mary Had a Little Lamb
-        List<Note> maryShort = Arrays.asList(
-                new Note("C", 4, 261.63, 750), // had
-                new Note("D", 4, 293.66, 750), // a
-                new Note("E", 4, 329.63, 750), // lit-
-                new Note("E", 4, 329.63, 750), // tle
-                new Note("E", 4, 329.63, 1500), // lamb (half note)
-                new Note("D", 4, 293.66, 750), // lit-
-                new Note("D", 4, 293.66, 750), // tle
-                new Note("D", 4, 293.66, 1500), // lamb (half note)
-                new Note("E", 4, 329.63, 750), // lit-
-                new Note("G", 4, 392.00, 750), // tle
-                new Note("G", 4, 392.00, 1500) // lamb (half note)
-        );
-
-        List<Note> maryLong = Arrays.asList(
+        Score maryShort = new Score.Builder(QUARTER_MS)
+                .note(C4, QUARTER) // had
+                .note(D4, QUARTER) // a
+                .note(E4, QUARTER) // lit-
+                .note(E4, QUARTER) // tle
+                .note(E4, HALF) // lamb (half note)
+                .note(D4, QUARTER) // lit-
+                .note(D4, QUARTER) // tle
+                .note(D4, HALF) // lamb (half note)
+                .note(E4, QUARTER) // lit-
+                .note(G4, QUARTER) // tle
+                .note(G4, HALF) // lamb (half note)
+                .build();
+
+        Score maryLong = new Score.Builder(QUARTER_MS)
                 // Verse 1
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 750, 4), new Note("D", 4, 293.66, 750, 3),
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("E", 4, 329.63, 1500, 2),
-                new Note("D", 4, 293.66, 750, 3), new Note("D", 4, 293.66, 750, 3),
-                new Note("D", 4, 293.66, 1500, 3),
-                new Note("E", 4, 329.63, 750, 2), new Note("G", 4, 392.00, 750, 0),
-                new Note("G", 4, 392.00, 1500, 0),
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, QUARTER, 4).note(D4, QUARTER, 3)
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(E4, HALF, 2)
+                .note(D4, QUARTER, 3).note(D4, QUARTER, 3)
+                .note(D4, HALF, 3)
+                .note(E4, QUARTER, 2).note(G4, QUARTER, 0)
+                .note(G4, HALF, 0)
                 // Verse 2
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 750, 4), new Note("D", 4, 293.66, 750, 3),
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("D", 4, 293.66, 750, 3), new Note("D", 4, 293.66, 750, 3),
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 1500, 4));
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, QUARTER, 4).note(D4, QUARTER, 3)
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(D4, QUARTER, 3).note(D4, QUARTER, 3)
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, HALF, 4)
+                .build();
 
         songLibrary.add(new Song("Mary Had a Little Lamb (Short)", maryShort, maryShort));
         songLibrary.add(new Song("Mary Had a Little Lamb (Long)", maryLong, maryLong));
 
         // Song 3: Hot Cross Buns
-        List<Note> hotCrossShort = Arrays.asList(
-                new Note("E", 4, 329.63, 750, 2), // Hot (middle)
-                new Note("D", 4, 293.66, 750, 3), // cross (index)
-                new Note("C", 4, 261.63, 1500, 4), // buns (thumb, half note)
-                new Note("E", 4, 329.63, 750, 2), // Hot (middle)
-                new Note("D", 4, 293.66, 750, 3), // cross (index)
-                new Note("C", 4, 261.63, 1500, 4), // buns (thumb, half note)
-                new Note("C", 4, 261.63, 375, 4), // One (thumb)
-                new Note("C", 4, 261.63, 375, 4), // a (thumb)
-                new Note("C", 4, 261.63, 375, 4), // pen- (thumb)
-                new Note("C", 4, 261.63, 375, 4), // ny (thumb)
-                new Note("D", 4, 293.66, 375, 3), // Two (index)
-                new Note("D", 4, 293.66, 375, 3), // a (index)
-                new Note("D", 4, 293.66, 375, 3), // pen- (index)
-                new Note("D", 4, 293.66, 375, 3), // ny (index)
-                new Note("E", 4, 329.63, 750, 2), // Hot (middle)
-                new Note("D", 4, 293.66, 750, 3), // cross (index)
-                new Note("C", 4, 261.63, 1500, 4) // buns (thumb, half note)
-        );
-
-        List<Note> hotCrossLong = Arrays.asList(
+        Score hotCrossShort = new Score.Builder(QUARTER_MS)
+                .note(E4, QUARTER, 2) // Hot (middle)
+                .note(D4, QUARTER, 3) // cross (index)
+                .note(C4, HALF, 4) // buns (thumb, half note)
+                .note(E4, QUARTER, 2) // Hot (middle)
+                .note(D4, QUARTER, 3) // cross (index)
+                .note(C4, HALF, 4) // buns (thumb, half note)
+                .note(C4, EIGHTH, 4) // One (thumb)
+                .note(C4, EIGHTH, 4) // a (thumb)
+                .note(C4, EIGHTH, 4) // pen- (thumb)
+                .note(C4, EIGHTH, 4) // ny (thumb)
+                .note(D4, EIGHTH, 3) // Two (index)
+                .note(D4, EIGHTH, 3) // a (index)
+                .note(D4, EIGHTH, 3) // pen- (index)
+                .note(D4, EIGHTH, 3) // ny (index)
+                .note(E4, QUARTER, 2) // Hot (middle)
+                .note(D4, QUARTER, 3) // cross (index)
+                .note(C4, HALF, 4) // buns (thumb, half note)
+                .build();
+
+        Score hotCrossLong = new Score.Builder(QUARTER_MS)
                 // Verse 1
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 1500, 4),
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 1500, 4),
-                new Note("C", 4, 261.63, 375, 4), new Note("C", 4, 261.63, 375, 4),
-                new Note("C", 4, 261.63, 375, 4), new Note("C", 4, 261.63, 375, 4),
-                new Note("D", 4, 293.66, 375, 3), new Note("D", 4, 293.66, 375, 3),
-                new Note("D", 4, 293.66, 375, 3), new Note("D", 4, 293.66, 375, 3),
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 1500, 4),
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, HALF, 4)
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, HALF, 4)
+                .note(C4, EIGHTH, 4).note(C4, EIGHTH, 4)
+                .note(C4, EIGHTH, 4).note(C4, EIGHTH, 4)
+                .note(D4, EIGHTH, 3).note(D4, EIGHTH, 3)
+                .note(D4, EIGHTH, 3).note(D4, EIGHTH, 3)
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, HALF, 4)
                 // Repeat
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 1500, 4),
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 1500, 4));
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, HALF, 4)
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, HALF, 4)
+                .build();
         
         songLibrary.add(new Song("Hot Cross Buns (Short)", hotCrossShort, hotCrossShort));
         songLibrary.add(new Song("Hot Cross Buns (Long)", hotCrossLong, hotCrossLong));
 
         // Song 4: Ode to Joy (simplified)
-        List<Note> odeShort = Arrays.asList(
-                new Note("E", 4, 329.63, 750, 2),
-                new Note("E", 4, 329.63, 750, 2),
-                new Note("F", 4, 349.23, 750, 1),
-                new Note("G", 4, 392.00, 750, 0),
-                new Note("G", 4, 392.00, 750, 0),
-                new Note("F", 4, 349.23, 750, 1),
-                new Note("E", 4, 329.63, 750, 2),
-                new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 750, 4),
-                new Note("C", 4, 261.63, 750, 4),
-                new Note("D", 4, 293.66, 750, 3),
-                new Note("E", 4, 329.63, 750, 2),
-                new Note("E", 4, 329.63, 1125, 2),
-                new Note("D", 4, 293.66, 375, 3),
-                new Note("D", 4, 293.66, 1500, 3));
-
-        List<Note> odeLong = Arrays.asList(
+        Score odeShort = new Score.Builder(QUARTER_MS)
+                .note(E4, QUARTER, 2)
+                .note(E4, QUARTER, 2)
+                .note(F4, QUARTER, 1)
+                .note(G4, QUARTER, 0)
+                .note(G4, QUARTER, 0)
+                .note(F4, QUARTER, 1)
+                .note(E4, QUARTER, 2)
+                .note(D4, QUARTER, 3)
+                .note(C4, QUARTER, 4)
+                .note(C4, QUARTER, 4)
+                .note(D4, QUARTER, 3)
+                .note(E4, QUARTER, 2)
+                .note(E4, DOTTED_QUARTER, 2)
+                .note(D4, EIGHTH, 3)
+                .note(D4, HALF, 3)
+                .build();
+
+        Score odeLong = new Score.Builder(QUARTER_MS)
                 // Part 1
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("F", 4, 349.23, 750, 1), new Note("G", 4, 392.00, 750, 0),
-                new Note("G", 4, 392.00, 750, 0), new Note("F", 4, 349.23, 750, 1),
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 750, 4), new Note("C", 4, 261.63, 750, 4),
-                new Note("D", 4, 293.66, 750, 3), new Note("E", 4, 329.63, 750, 2),
-                new Note("E", 4, 329.63, 1125, 2), new Note("D", 4, 293.66, 375, 3),
-                new Note("D", 4, 293.66, 1500, 3),
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(F4, QUARTER, 1).note(G4, QUARTER, 0)
+                .note(G4, QUARTER, 0).note(F4, QUARTER, 1)
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, QUARTER, 4).note(C4, QUARTER, 4)
+                .note(D4, QUARTER, 3).note(E4, QUARTER, 2)
+                .note(E4, DOTTED_QUARTER, 2).note(D4, EIGHTH, 3)
+                .note(D4, HALF, 3)
                 // Part 2
-                new Note("E", 4, 329.63, 750, 2), new Note("E", 4, 329.63, 750, 2),
-                new Note("F", 4, 349.23, 750, 1), new Note("G", 4, 392.00, 750, 0),
-                new Note("G", 4, 392.00, 750, 0), new Note("F", 4, 349.23, 750, 1),
-                new Note("E", 4, 329.63, 750, 2), new Note("D", 4, 293.66, 750, 3),
-                new Note("C", 4, 261.63, 750, 4), new Note("C", 4, 261.63, 750, 4),
-                new Note("D", 4, 293.66, 750, 3), new Note("E", 4, 329.63, 750, 2),
-                new Note("D", 4, 293.66, 1125, 3), new Note("C", 4, 261.63, 375, 4),
-                new Note("C", 4, 261.63, 1500, 4));
+                .note(E4, QUARTER, 2).note(E4, QUARTER, 2)
+                .note(F4, QUARTER, 1).note(G4, QUARTER, 0)
+                .note(G4, QUARTER, 0).note(F4, QUARTER, 1)
+                .note(E4, QUARTER, 2).note(D4, QUARTER, 3)
+                .note(C4, QUARTER, 4).note(C4, QUARTER, 4)
+                .note(D4, QUARTER, 3).note(E4, QUARTER, 2)
+                .note(D4, DOTTED_QUARTER, 3).note(C4, EIGHTH, 4)
+                .note(C4, HALF, 4)
+                .build();
         
         songLibrary.add(new Song("Ode to Joy (Short)", odeShort, odeShort));
         songLibrary.add(new Song("Ode to Joy (Long)", odeLong, odeLong));
 
         // Placeholder for future additions (Samsung theme to be reintroduced later)
+        return Collections.unmodifiableList(songLibrary);
     }
 
     public List<Song> getSongLibrary() {
-        return new ArrayList<>(songLibrary);
+        return songLibrary;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
     }
 
     public void setUseLongVersion(boolean useLongVersion) {
-        this.useLongVersion = useLongVersion;
+        post(() -> {
+            this.useLongVersion = useLongVersion;
+            if (currentSong != null) {
+                Score score = currentSong.getScore(useLongVersion);
+                moveToStep(score.getStepOfNote(Math.min(currentNoteIndex, score.size())));
+            }
+            publish();
+        });
     }
 
     public boolean isUseLongVersion() {
-        return useLongVersion;
+        return snapshot.isUseLongVersion();
     }
 
     public void loadSong(int index) {
         if (index >= 0 && index < songLibrary.size()) {
-            currentSong = songLibrary.get(index);
-            currentNoteIndex = 0;
+            startSong(songLibrary.get(index));
         }
     }
 
     public void startSong(Song song) {
-        this.currentSong = song;
-        this.currentNoteIndex = 0;
+        post(() -> {
+            currentSong = song;
+            moveToStep(0);
+            publish();
+        });
     }
 
     public Song getCurrentSong() {
-        return currentSong;
+        return snapshot.getSong();
     }
 
     public Note getCurrentNote() {
-        if (currentSong == null || currentNoteIndex >= currentSong.getNotes(useLongVersion).size()) {
-            return null;
-        }
-        return currentSong.getNotes(useLongVersion).get(currentNoteIndex);
+        return snapshot.getCurrentNote();
     }
 
     public List<Note> getUpcomingNotes(int count) {
-        if (currentSong == null)
-            return new ArrayList<>();
+        Snapshot current = snapshot;
+        int start = current.getProgress();
+        int end = Math.min(start + count, current.getTotalNotes());
+        return start < end ? new ArrayList<>(current.getNotes().subList(start, end)) : new ArrayList<>();
+    }
 
-        List<Note> upcoming = new ArrayList<>();
-        int endIndex = Math.min(currentNoteIndex + count, currentSong.getNotes(useLongVersion).size());
-        for (int i = currentNoteIndex; i < endIndex; i++) {
-            upcoming.add(currentSong.getNotes(useLongVersion).get(i));
-        }
-        return upcoming;
+    /**
+     * Check a played note against the expected step. The result arrives through the
+     * listener.
+     */
+    public void checkNote(double playedFrequency) {
+        checkNote(playedFrequency, System.nanoTime());
     }
 
-    public boolean checkNote(double playedFrequency) {
-        Note expectedNote = getCurrentNote();
-        if (expectedNote == null) {
-            return false;
-        }
+    /**
+     * @param eventNanos When the key was struck, on the System.nanoTime() clock
+     */
+    public void checkNote(double playedFrequency, long eventNanos) {
+        checkMidi(Midi.fromFrequency(playedFrequency), eventNanos);
+    }
 
-        // Allow small tolerance for floating point comparison
-        boolean isCorrect = Math.abs(playedFrequency - expectedNote.getFrequency()) < 1.0;
+    /**
+     * @param eventNanos When the key was struck, on the System.nanoTime() clock
+     */
+    public void checkMidi(int playedMidi, long eventNanos) {
+        post(() -> checkMidiInternal(playedMidi, eventNanos));
+    }
 
-        if (isCorrect) {
-            currentNoteIndex++;
-            if (listener != null) {
-                listener.onNoteCorrect(expectedNote, currentNoteIndex, currentSong.getTotalNotes(useLongVersion));
+    /**
+     * All members of a chord must be struck within this time of the first one.
+     */
+    public void setChordWindowMs(int windowMs) {
+        post(() -> chordWindowNanos = windowMs * 1_000_000L);
+    }
 
-                if (currentNoteIndex >= currentSong.getTotalNotes(useLongVersion)) {
-                    listener.onSongComplete();
-                }
+    private void checkMidiInternal(int playedMidi, long eventNanos) {
+        if (currentSong == null)
+            return;
+        Score score = currentSong.getScore(useLongVersion);
+        boolean looping = loopEndStep >= 0;
+        int endStep = looping ? loopEndStep : score.getStepCount();
+        if (currentStep >= endStep)
+            return; // Done, or waiting for the next pass of the loop
+
+        Note expectedNote = currentSong.getNotes(useLongVersion).get(currentNoteIndex);
+        SheetMusicListener currentListener = listener;
+
+        // Align the note with the score; wrong, repeated and skipped notes move the
+        // alignment without derailing it
+        int previousStep = follower.getPosition();
+        int alignedStep = follower.onNote(playedMidi);
+        boolean outsideLoop = looping && (alignedStep < loopFirstStep || alignedStep >= loopEndStep);
+        if (alignedStep < 0 || playedMidi < 0 || outsideLoop || !score.stepContains(alignedStep, playedMidi)) {
+            if (currentListener != null) {
+                currentListener.onNoteIncorrect(expectedNote, playedMidi);
             }
+            return;
+        }
+
+        boolean sameChord = alignedStep == previousStep && eventNanos - chordStartNanos <= chordWindowNanos;
+        if (!sameChord) {
+            // New step, or too slow to count as one chord with the earlier notes
+            heldMaskLow = 0;
+            heldMaskHigh = 0;
+            chordStartNanos = eventNanos;
+        }
+        if (playedMidi < 64) {
+            heldMaskLow |= 1L << playedMidi;
         } else {
-            if (listener != null) {
-                listener.onNoteIncorrect(expectedNote, playedFrequency);
+            heldMaskHigh |= 1L << (playedMidi - 64);
+        }
+        boolean chordComplete = heldMaskLow == score.getStepMask(alignedStep, 0)
+                && heldMaskHigh == score.getStepMask(alignedStep, 1);
+        int nextStep = chordComplete ? alignedStep + 1 : alignedStep;
+        if (nextStep <= currentStep)
+            return; // Chord still filling up, or a repeat of a finished step
+
+        currentStep = nextStep;
+        currentNoteIndex = score.getStepStart(nextStep);
+        publish();
+        if (currentListener != null) {
+            currentListener.onNoteCorrect(expectedNote, currentNoteIndex, score.size());
+
+            if (!looping && currentNoteIndex >= score.size()) {
+                currentListener.onSongComplete();
             }
         }
-
-        return isCorrect;
     }
 
     public void reset() {
-        currentNoteIndex = 0;
-        stopDemo();
+        post(() -> {
+            moveToStep(0);
+            stopDemoInternal();
+            publish();
+        });
     }
 
     public int getProgress() {
-        return currentNoteIndex;
+        return snapshot.getProgress();
     }
 
     public void setProgress(int index) {
-        if (currentSong != null && index >= 0 && index < currentSong.getTotalNotes(useLongVersion)) {
-            this.currentNoteIndex = index;
-        }
+        post(() -> {
+            if (currentSong != null && index >= 0 && index < currentSong.getTotalNotes(useLongVersion)) {
+                moveToStep(currentSong.getScore(useLongVersion).getStepOfNote(index));
+                publish();
+            }
+        });
     }
 
     public boolean isComplete() {
-        return currentSong != null && currentNoteIndex >= currentSong.getTotalNotes(useLongVersion);
+        return snapshot.isComplete();
     }
 
     public boolean isDemoPlaying() {
-        return isDemoPlaying;
+        return snapshot.isDemoPlaying();
     }
 
     public void stopDemo() {
-        if (demoThread != null && demoThread.isAlive()) {
+        post(() -> {
+            if (stopDemoInternal()) {
+                publish();
+            }
+        });
+    }
+
+    /**
+     * @return true if a demo was playing
+     */
+    private boolean stopDemoInternal() {
+        demoGeneration++;
+        if (demoThread != null) {
             demoThread.interrupt();
+            demoThread = null;
         }
+        demoScheduler = null;
+        practiceLoop = null;
+        loopFirstStep = -1;
+        loopEndStep = -1;
+        boolean wasPlaying = isDemoPlaying;
         isDemoPlaying = false;
-        demoThread = null;
+        return wasPlaying;
+    }
+
+    /**
+     * Demo playback speed (1.0 = as written). Applies immediately if a demo or practice
+     * loop is playing; loops clamp it to 0.5-1.5.
+     *
+     * The value is stored before the command is posted, so {@link #getDemoTempo()} already
+     * returns it and a caller stepping the tempo twice in a row builds on its own change.
+     */
+    public void setDemoTempo(double tempo) {
+        demoTempo = Math.max(DemoScheduler.MIN_TEMPO, Math.min(DemoScheduler.MAX_TEMPO, tempo));
+        post(() -> {
+            // Apply the latest value; an older command may run after a newer store
+            double latest = demoTempo;
+            if (demoScheduler != null) {
+                demoScheduler.setTempo(latest);
+            }
+            if (practiceLoop != null) {
+                practiceLoop.setTempoPercent((int) Math.round(latest * 100));
+            }
+        });
+    }
+
+    public double getDemoTempo() {
+        return demoTempo;
     }
 
     // Auto-play demo: plays through the song automatically
     public void playDemo(AutoPlayCallback callback) {
-        if (currentSong == null || callback == null || isDemoPlaying)
+        if (callback == null)
             return;
+        post(() -> startDemo(callback));
+    }
+
+    private void startDemo(AutoPlayCallback callback) {
+        if (currentSong == null || isDemoPlaying)
+            return;
+
+        // One scheduler event per step; chord members start together
+        Score score = currentSong.getScore(useLongVersion);
+        int[] durations = new int[score.getStepCount()];
+        for (int step = 0; step < durations.length; step++) {
+            durations[step] = score.ticksToMs(score.getStepOnsetTicks(step + 1))
+                    - score.ticksToMs(score.getStepOnsetTicks(step));
+        }
+        DemoScheduler scheduler = new DemoScheduler(DemoScheduler.SYSTEM_CLOCK,
+                DemoScheduler.DEFAULT_LOOKAHEAD_MS, durations);
+        scheduler.setTempo(demoTempo);
+        int generation = ++demoGeneration;
 
-        isDemoPlaying = true;
         demoThread = new Thread(() -> {
-            currentNoteIndex = 0; // Reset progress at the start
-            List<Note> notes = currentSong.getNotes(useLongVersion);
             try {
-                for (int i = 0; i < notes.size(); i++) {
-                    if (Thread.interrupted()) throw new InterruptedException();
-                    
-                    Note note = notes.get(i);
-                    callback.onPlayNote(note.getFrequency());
-                    currentNoteIndex = i + 1; // Update progress
-                    Thread.sleep(note.getDurationMs()); // Use note's duration
-                }
-                // Only call complete if we finished naturally
-                isDemoPlaying = false;
-                callback.onAutoDemoComplete();
+                scheduler.run(0, new DemoScheduler.Listener() {
+                    @Override
+                    public void onNoteScheduled(int step, long onsetNanos) {
+                        for (int i = score.getStepStart(step); i < score.getStepStart(step + 1); i++) {
+                            callback.onPlayNote(score.getPitch(i).getFrequency(), onsetNanos);
+                        }
+                        // Progress moves when the notes actually sound
+                        long delay = Math.max(0, onsetNanos - System.nanoTime());
+                        schedule(() -> onDemoProgress(generation, step + 1), delay);
+                    }
+
+                    @Override
+                    public void onFinished() {
+                        post(() -> onDemoFinished(generation, callback));
+                    }
+                });
             } catch (InterruptedException e) {
                 // Demo stopped
-                isDemoPlaying = false;
+            }
+        }, "DemoPlayback");
+        demoThread.setPriority(Thread.MAX_PRIORITY);
+        demoScheduler = scheduler;
+        isDemoPlaying = true;
+        moveToStep(0); // Reset progress at the start
+        publish();
+        demoThread.start();
+    }
+
+    /**
+     * Play notes {@code firstNote} to {@code lastNote} over and over, widened to whole
+     * chords, after a count-in of one bar. Runs until {@link #stopDemo()}.
+     *
+     * Notes passed to {@link #checkNote} are scored against the section while it loops;
+     * each pass starts the score follower again at the first step of the section.
+     */
+    public void playLoop(int firstNote, int lastNote, AutoPlayCallback callback) {
+        if (callback == null)
+            return;
+        post(() -> {
+            if (currentSong == null || isDemoPlaying)
+                return;
+            Score score = currentSong.getScore(useLongVersion);
+            int first = Math.max(0, Math.min(firstNote, lastNote));
+            int last = Math.min(score.size() - 1, Math.max(firstNote, lastNote));
+            if (first > last)
+                return;
+            startLoop(score, score.getStepOfNote(first), score.getStepOfNote(last) + 1, callback);
+        });
+    }
+
+    /**
+     * Loop whole bars of four quarter notes, counting from 0.
+     */
+    public void playBarLoop(int firstBar, int barCount, AutoPlayCallback callback) {
+        if (callback == null)
+            return;
+        post(() -> {
+            if (currentSong == null || isDemoPlaying)
+                return;
+            Score score = currentSong.getScore(useLongVersion);
+            int barTicks = BEATS_PER_BAR * Score.TICKS_PER_QUARTER;
+            int firstStep = score.getStepAtTicks(Math.max(0, firstBar) * barTicks);
+            int endStep = score.getStepAtTicks((Math.max(0, firstBar) + Math.max(1, barCount)) * barTicks);
+            if (firstStep < endStep) {
+                startLoop(score, firstStep, endStep, callback);
             }
         });
+    }
+
+    /**
+     * Bar (of four quarter notes) containing the current note.
+     */
+    public int getCurrentBar() {
+        Snapshot current = snapshot;
+        Score score = current.getScore();
+        if (score == null || score.size() == 0)
+            return 0;
+        int index = Math.min(current.getProgress(), score.size() - 1);
+        return score.getOnsetTicks(index) / (BEATS_PER_BAR * Score.TICKS_PER_QUARTER);
+    }
+
+    private void startLoop(Score score, int firstStep, int endStep, AutoPlayCallback callback) {
+        PracticeLoop loop = new PracticeLoop(DemoScheduler.SYSTEM_CLOCK, DemoScheduler.DEFAULT_LOOKAHEAD_MS,
+                score, firstStep, endStep, BEATS_PER_BAR);
+        loop.setTempoPercent((int) Math.round(demoTempo * 100));
+        int generation = ++demoGeneration;
+
+        demoThread = new Thread(() -> {
+            try {
+                loop.run(new PracticeLoop.Listener() {
+                    @Override
+                    public void onCountIn(int beat, int beats, long onsetNanos) {
+                        callback.onCountIn(beat, beats, onsetNanos);
+                    }
+
+                    @Override
+                    public void onPassStarted(int pass, long startNanos) {
+                        // Leaves the lookahead for a first note played a little early
+                        post(() -> onLoopPass(generation));
+                    }
+
+                    @Override
+                    public void onStepScheduled(int step, long onsetNanos) {
+                        // Guide notes only; progress follows what the player plays
+                        for (int i = score.getStepStart(step); i < score.getStepStart(step + 1); i++) {
+                            callback.onPlayNote(score.getPitch(i).getFrequency(), onsetNanos);
+                        }
+                    }
+                });
+            } catch (InterruptedException e) {
+                // Loop stopped
+            }
+        }, "PracticeLoop");
+        demoThread.setPriority(Thread.MAX_PRIORITY);
+        practiceLoop = loop;
+        loopFirstStep = firstStep;
+        loopEndStep = endStep;
+        isDemoPlaying = true;
+        moveToStep(firstStep);
+        publish();
         demoThread.start();
     }
+
+    private void onLoopPass(int generation) {
+        if (generation != demoGeneration)
+            return;
+        moveToStep(loopFirstStep);
+        publish();
+    }
+
+    private void onDemoProgress(int generation, int step) {
+        if (generation != demoGeneration)
+            return;
+        moveToStep(step);
+        publish();
+    }
+
+    private void onDemoFinished(int generation, AutoPlayCallback callback) {
+        if (generation != demoGeneration)
+            return;
+        // Only call complete if we finished naturally
+        demoThread = null;
+        demoScheduler = null;
+        isDemoPlaying = false;
+        publish();
+        callback.onAutoDemoComplete();
+    }
 }
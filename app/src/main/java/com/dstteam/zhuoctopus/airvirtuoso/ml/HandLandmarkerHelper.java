@@ -2,35 +2,80 @@ package com.dstteam.zhuoctopus.airvirtuoso.ml;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 import androidx.camera.core.ImageProxy;
 
+import com.dstteam.zhuoctopus.airvirtuoso.perf.AnalysisGovernor;
+import com.dstteam.zhuoctopus.airvirtuoso.perf.LatencyTracer;
 import com.google.mediapipe.framework.image.BitmapImageBuilder;
 import com.google.mediapipe.framework.image.MPImage;
 import com.google.mediapipe.tasks.core.BaseOptions;
 import com.google.mediapipe.tasks.core.Delegate;
+import com.google.mediapipe.tasks.vision.core.ImageProcessingOptions;
 import com.google.mediapipe.tasks.vision.core.RunningMode;
 import com.google.mediapipe.tasks.vision.handlandmarker.HandLandmarker;
 import com.google.mediapipe.tasks.vision.handlandmarker.HandLandmarkerResult;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 public class HandLandmarkerHelper {
     private static final String TAG = "HandLandmarkerHelper";
     private static final String MP_HAND_LANDMARKER_TASK = "hand_landmarker.task";
 
+    // Number of pooled frame bitmaps. MediaPipe copies the bitmap into its own packet
+    // inside detectAsync, but keeping two lets the next frame be filled while the
+    // previous one is still being handed over.
+    private static final int FRAME_POOL_SIZE = 2;
+
     private final Context context;
     private HandLandmarker handLandmarker;
     private final LandmarkerListener listener;
+    private final LatencyTracer tracer = LatencyTracer.getInstance();
+
+    // Pooled frame path (allocated lazily, re-allocated only when the analysis size changes)
+    private final Bitmap[] framePool = new Bitmap[FRAME_POOL_SIZE];
+    private final Canvas[] framePoolCanvas = new Canvas[FRAME_POOL_SIZE];
+    private int framePoolIndex = 0;
+    private Bitmap mirrorSource; // Scratch bitmap the camera plane is copied into before mirroring
+    private final Matrix mirrorMatrix = new Matrix();
+    private final Paint mirrorPaint = new Paint(); // No filtering: a mirror is an exact pixel remap
+
+    // One immutable options instance per supported rotation (0, 90, 180, 270)
+    private final ImageProcessingOptions[] rotationOptions = new ImageProcessingOptions[4];
+    private boolean pooledPathSupported = true;
+
+    // Submit times of frames in flight, for measuring inference latency, and the rotation
+    // MediaPipe applies to each so results are reported in that frame's dimensions
+    private static final int SUBMIT_SLOTS = 8;
+    private final AtomicLongArray submitFrameTime = new AtomicLongArray(SUBMIT_SLOTS);
+    private final AtomicLongArray submitTimeNs = new AtomicLongArray(SUBMIT_SLOTS);
+    private final AtomicIntegerArray submitRotation = new AtomicIntegerArray(SUBMIT_SLOTS);
+    private volatile AnalysisGovernor governor;
 
     public HandLandmarkerHelper(Context context, LandmarkerListener listener) {
         this.context = context;
         this.listener = listener;
+        for (int i = 0; i < rotationOptions.length; i++) {
+            rotationOptions[i] = ImageProcessingOptions.builder().setRotationDegrees(i * 90).build();
+        }
         setupHandLandmarker();
     }
 
+    /**
+     * Report each frame's inference latency to the governor so it can scale the workload.
+     */
+    public void setAnalysisGovernor(AnalysisGovernor governor) {
+        this.governor = governor;
+    }
+
     private void setupHandLandmarker() {
         BaseOptions.Builder baseOptionsBuilder = BaseOptions.builder()
                 .setModelAssetPath(MP_HAND_LANDMARKER_TASK)
@@ -60,14 +105,109 @@ public class HandLandmarkerHelper {
             return;
 
         long frameTime = SystemClock.uptimeMillis();
+        int rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
+        tracer.beginFrame(frameTime, imageProxy.getImageInfo().getTimestamp());
+        int submitSlot = (int) (frameTime % SUBMIT_SLOTS);
+        submitFrameTime.set(submitSlot, frameTime);
+        submitTimeNs.set(submitSlot, System.nanoTime());
 
-        // Note: Creating a new Bitmap every frame is expensive.
-        // Ideally, we should reuse a bitmap or use the ImageProxy directly if possible.
-        // But for rotation/mirroring, we need a transformation.
+        if (!pooledPathSupported || rotationDegrees % 90 != 0 || !detectPooled(imageProxy, rotationDegrees,
+                isFrontCamera, frameTime)) {
+            detectLegacy(imageProxy, rotationDegrees, isFrontCamera, frameTime);
+        }
+        tracer.mark(LatencyTracer.STAGE_SUBMIT, frameTime);
+    }
+
+    /**
+     * Copies the RGBA plane into a pooled bitmap and lets MediaPipe apply the rotation.
+     * Mirroring has no equivalent in {@link ImageProcessingOptions}, so it is done as an
+     * unfiltered blit between pooled bitmaps before the rotation is applied.
+     *
+     * @return false if the frame layout or the landmarker does not support this path
+     */
+    private boolean detectPooled(ImageProxy imageProxy, int rotationDegrees, boolean isFrontCamera,
+            long frameTime) {
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        if (planes.length != 1)
+            return false;
+
+        int width = imageProxy.getWidth();
+        int height = imageProxy.getHeight();
+        ImageProxy.PlaneProxy plane = planes[0];
+        // copyPixelsFromBuffer needs tightly packed RGBA rows
+        if (plane.getPixelStride() != 4 || plane.getRowStride() != width * 4)
+            return false;
+
+        ensureFramePool(width, height);
+
+        Bitmap frame = framePool[framePoolIndex];
+        ByteBuffer buffer = plane.getBuffer();
+        buffer.rewind();
+
+        if (isFrontCamera) {
+            mirrorSource.copyPixelsFromBuffer(buffer);
+            // The legacy path mirrors horizontally after rotating. Before a 90/270 rotation
+            // that axis is the vertical one of the sensor frame.
+            mirrorMatrix.reset();
+            if (rotationDegrees == 90 || rotationDegrees == 270) {
+                mirrorMatrix.setScale(1f, -1f, width / 2f, height / 2f);
+            } else {
+                mirrorMatrix.setScale(-1f, 1f, width / 2f, height / 2f);
+            }
+            framePoolCanvas[framePoolIndex].drawBitmap(mirrorSource, mirrorMatrix, mirrorPaint);
+        } else {
+            frame.copyPixelsFromBuffer(buffer);
+        }
+        framePoolIndex = (framePoolIndex + 1) % FRAME_POOL_SIZE;
 
+        MPImage mpImage = new BitmapImageBuilder(frame).build();
+        submitRotation.set((int) (frameTime % SUBMIT_SLOTS), rotationDegrees);
+        try {
+            handLandmarker.detectAsync(mpImage, rotationOptions[rotationDegrees / 90 % 4], frameTime);
+        } catch (IllegalArgumentException e) {
+            // Some delegates reject rotated input; stay on the legacy path from now on.
+            Log.w(TAG, "Rotation via ImageProcessingOptions unsupported, using bitmap fallback", e);
+            pooledPathSupported = false;
+            return false;
+        }
+        return true;
+    }
+
+    private void ensureFramePool(int width, int height) {
+        if (mirrorSource != null && mirrorSource.getWidth() == width && mirrorSource.getHeight() == height)
+            return;
+
+        releaseFramePool();
+        mirrorSource = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        for (int i = 0; i < FRAME_POOL_SIZE; i++) {
+            framePool[i] = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            framePoolCanvas[i] = new Canvas(framePool[i]);
+        }
+        framePoolIndex = 0;
+    }
+
+    private void releaseFramePool() {
+        if (mirrorSource != null) {
+            mirrorSource.recycle();
+            mirrorSource = null;
+        }
+        for (int i = 0; i < FRAME_POOL_SIZE; i++) {
+            if (framePool[i] != null) {
+                framePool[i].recycle();
+                framePool[i] = null;
+            }
+            framePoolCanvas[i] = null;
+        }
+    }
+
+    /**
+     * Original path: rasterizes a rotated (and mirrored) copy of every frame.
+     * Used when the camera plane is padded or the landmarker rejects rotation options.
+     */
+    private void detectLegacy(ImageProxy imageProxy, int rotationDegrees, boolean isFrontCamera, long frameTime) {
         Bitmap bitmap = imageProxy.toBitmap();
         Matrix matrix = new Matrix();
-        matrix.postRotate(imageProxy.getImageInfo().getRotationDegrees());
+        matrix.postRotate(rotationDegrees);
         if (isFrontCamera) {
             matrix.postScale(-1f, 1f, imageProxy.getWidth() / 2f, imageProxy.getHeight() / 2f);
         }
@@ -76,6 +216,7 @@ public class HandLandmarkerHelper {
 
         MPImage mpImage = new BitmapImageBuilder(rotatedBitmap).build();
 
+        submitRotation.set((int) (frameTime % SUBMIT_SLOTS), 0); // Already rotated
         detectAsync(mpImage, frameTime);
     }
 
@@ -87,7 +228,20 @@ public class HandLandmarkerHelper {
     }
 
     private void returnLivestreamResult(HandLandmarkerResult result, MPImage input) {
-        listener.onResults(result, input.getWidth(), input.getHeight());
+        tracer.mark(LatencyTracer.STAGE_INFERENCE, result.timestampMs());
+        AnalysisGovernor currentGovernor = governor;
+        int submitSlot = (int) (result.timestampMs() % SUBMIT_SLOTS);
+        if (currentGovernor != null && submitFrameTime.get(submitSlot) == result.timestampMs()) {
+            currentGovernor.onInferenceLatency(System.nanoTime() - submitTimeNs.get(submitSlot));
+        }
+
+        // Landmarks are normalized to the rotated frame, so report its dimensions
+        int rotation = submitRotation.get(submitSlot);
+        if (rotation == 90 || rotation == 270) {
+            listener.onResults(result, input.getHeight(), input.getWidth());
+        } else {
+            listener.onResults(result, input.getWidth(), input.getHeight());
+        }
     }
 
     private void returnLivestreamError(RuntimeException error) {
@@ -99,6 +253,7 @@ public class HandLandmarkerHelper {
             handLandmarker.close();
             handLandmarker = null;
         }
+        releaseFramePool();
     }
 
     public interface LandmarkerListener {
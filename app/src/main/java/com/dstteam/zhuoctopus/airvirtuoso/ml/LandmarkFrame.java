@@ -0,0 +1,18 @@
+package com.dstteam.zhuoctopus.airvirtuoso.ml;
+
+import com.google.mediapipe.tasks.vision.handlandmarker.HandLandmarkerResult;
+
+/**
+ * Mutable holder for one landmarker result, reused across frames by the UI handoff.
+ */
+public class LandmarkFrame {
+    public HandLandmarkerResult result;
+    public int imageWidth;
+    public int imageHeight;
+
+    public void set(HandLandmarkerResult result, int imageWidth, int imageHeight) {
+        this.result = result;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+    }
+}
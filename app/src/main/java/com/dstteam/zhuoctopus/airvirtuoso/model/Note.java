@@ -1,38 +1,38 @@
 package com.dstteam.zhuoctopus.airvirtuoso.model;
 
+/**
+ * One note of a {@link Score}, as handed to the UI. Pitch metadata is shared through
+ * {@link Pitch}; compare notes by {@link #getMidi()}.
+ */
 public class Note {
-    private String name; // e.g., "A", "B", "C"
-    private int octave; // e.g., 3, 4, 5
-    private double frequency;
-    private int durationMs; // Duration in milliseconds for demo playback
-    private int recommendedFinger; // 0-4 for fingers, -1 for none
+    private final Pitch pitch;
+    private final int durationMs; // Duration in milliseconds for demo playback
+    private final int recommendedFinger; // 0-4 for fingers, -1 for none
 
-    public Note(String name, int octave, double frequency) {
-        this(name, octave, frequency, 500, -1); // Default 500ms, no finger
+    public Note(Pitch pitch, int durationMs, int recommendedFinger) {
+        this.pitch = pitch;
+        this.durationMs = durationMs;
+        this.recommendedFinger = recommendedFinger;
     }
 
-    public Note(String name, int octave, double frequency, int durationMs) {
-        this(name, octave, frequency, durationMs, -1); // Default no finger
+    public Pitch getPitch() {
+        return pitch;
     }
 
-    public Note(String name, int octave, double frequency, int durationMs, int recommendedFinger) {
-        this.name = name;
-        this.octave = octave;
-        this.frequency = frequency;
-        this.durationMs = durationMs;
-        this.recommendedFinger = recommendedFinger;
+    public int getMidi() {
+        return pitch.getMidi();
     }
 
     public String getName() {
-        return name;
+        return pitch.getName();
     }
 
     public int getOctave() {
-        return octave;
+        return pitch.getOctave();
     }
 
     public double getFrequency() {
-        return frequency;
+        return pitch.getFrequency();
     }
 
     public int getDurationMs() {
@@ -44,7 +44,7 @@ public class Note {
     }
 
     public String getDisplayName() {
-        return name + octave;
+        return pitch.getDisplayName();
     }
 
     @Override
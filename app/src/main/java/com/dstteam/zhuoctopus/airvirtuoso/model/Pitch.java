@@ -0,0 +1,94 @@
+package com.dstteam.zhuoctopus.airvirtuoso.model;
+
+import com.dstteam.zhuoctopus.airvirtuoso.util.Midi;
+
+/**
+ * Shared metadata for one MIDI pitch. There is exactly one instance per MIDI note number,
+ * so scores store only the number and compare pitches as integers.
+ */
+public final class Pitch {
+    private static final String[] NAMES = { "C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B" };
+    private static final Pitch[] TABLE = new Pitch[Midi.NOTE_COUNT];
+
+    static {
+        for (int midi = 0; midi < Midi.NOTE_COUNT; midi++) {
+            TABLE[midi] = new Pitch(midi);
+        }
+    }
+
+    private final int midi;
+    private final String name;
+    private final int octave;
+    private final double frequency;
+
+    private Pitch(int midi) {
+        this.midi = midi;
+        this.name = NAMES[midi % 12];
+        this.octave = midi / 12 - 1; // MIDI 60 = C4
+        this.frequency = Midi.toFrequency(midi);
+    }
+
+    public static Pitch of(int midi) {
+        return TABLE[midi];
+    }
+
+    /**
+     * @param name Note letter with an optional '#' or 'b', e.g. "C", "F#", "Bb"
+     * @return MIDI note number, or -1 if the name is not a note or out of range
+     */
+    public static int parse(String name, int octave) {
+        if (name == null || name.isEmpty())
+            return -1;
+
+        int semitone;
+        switch (Character.toUpperCase(name.charAt(0))) {
+            case 'C': semitone = 0; break;
+            case 'D': semitone = 2; break;
+            case 'E': semitone = 4; break;
+            case 'F': semitone = 5; break;
+            case 'G': semitone = 7; break;
+            case 'A': semitone = 9; break;
+            case 'B': semitone = 11; break;
+            default: return -1;
+        }
+        if (name.length() > 1) {
+            if (name.charAt(1) == '#') {
+                semitone++;
+            } else if (name.charAt(1) == 'b') {
+                semitone--;
+            }
+        }
+
+        int midi = (octave + 1) * 12 + semitone;
+        return midi >= 0 && midi < Midi.NOTE_COUNT ? midi : -1;
+    }
+
+    public int getMidi() {
+        return midi;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getOctave() {
+        return octave;
+    }
+
+    public double getFrequency() {
+        return frequency;
+    }
+
+    public boolean isBlackKey() {
+        return Midi.isBlackKey(midi);
+    }
+
+    public String getDisplayName() {
+        return name + octave;
+    }
+
+    @Override
+    public String toString() {
+        return getDisplayName();
+    }
+}
@@ -0,0 +1,268 @@
+package com.dstteam.zhuoctopus.airvirtuoso.model;
+
+import java.util.Arrays;
+
+/**
+ * Immutable packed note sequence: one entry per note in parallel primitive arrays (MIDI pitch,
+ * onset and duration in ticks, recommended finger). Pitch metadata comes from the
+ * shared {@link Pitch} table instead of being stored per note.
+ *
+ * Notes are ordered by onset. Notes sharing an onset form a step (a chord, or both
+ * hands together); each step also carries a 128-bit mask of its pitches so a played key
+ * can be checked against the whole chord in constant time.
+ */
+public final class Score {
+    public static final int TICKS_PER_QUARTER = 480;
+    public static final int NO_FINGER = -1;
+
+    private final byte[] pitches;
+    private final int[] onsetTicks;
+    private final int[] durationTicks;
+    private final byte[] fingers;
+    private final int quarterMs;
+    private final int[] stepStarts; // First note of each step; the extra last entry is size()
+    private final long[] stepMasks; // Two words per step: MIDI 0-63, then 64-127
+    private final int lengthTicks;
+
+    private Score(byte[] pitches, int[] onsetTicks, int[] durationTicks, byte[] fingers, int quarterMs) {
+        this.pitches = pitches;
+        this.onsetTicks = onsetTicks;
+        this.durationTicks = durationTicks;
+        this.fingers = fingers;
+        this.quarterMs = quarterMs;
+
+        int steps = 0;
+        for (int i = 0; i < pitches.length; i++) {
+            if (i == 0 || onsetTicks[i] != onsetTicks[i - 1]) {
+                steps++;
+            }
+        }
+        stepStarts = new int[steps + 1];
+        stepMasks = new long[steps * 2];
+        int step = -1;
+        for (int i = 0; i < pitches.length; i++) {
+            if (i == 0 || onsetTicks[i] != onsetTicks[i - 1]) {
+                stepStarts[++step] = i;
+            }
+            stepMasks[step * 2 + (pitches[i] >> 6)] |= 1L << (pitches[i] & 63);
+        }
+        stepStarts[steps] = pitches.length;
+
+        int end = 0;
+        for (int i = 0; i < pitches.length; i++) {
+            end = Math.max(end, onsetTicks[i] + durationTicks[i]);
+        }
+        lengthTicks = end;
+    }
+
+    public int size() {
+        return pitches.length;
+    }
+
+    public int getMidi(int index) {
+        return pitches[index];
+    }
+
+    public Pitch getPitch(int index) {
+        return Pitch.of(pitches[index]);
+    }
+
+    public int getOnsetTicks(int index) {
+        return onsetTicks[index];
+    }
+
+    public int getDurationTicks(int index) {
+        return durationTicks[index];
+    }
+
+    /**
+     * @return 0-4 (pinky to thumb) or {@link #NO_FINGER}
+     */
+    public int getFinger(int index) {
+        return fingers[index];
+    }
+
+    /**
+     * @return true if any note has a recommended finger
+     */
+    public boolean hasFingering() {
+        for (byte finger : fingers) {
+            if (finger != NO_FINGER)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Same notes with the given finger for each.
+     */
+    public Score withFingers(byte[] fingers) {
+        if (fingers.length != pitches.length)
+            throw new IllegalArgumentException("Expected " + pitches.length + " fingers, got " + fingers.length);
+        return new Score(pitches, onsetTicks, durationTicks, fingers.clone(), quarterMs);
+    }
+
+    /**
+     * Same notes shifted by a number of semitones. Scores never change once built, so the
+     * timing arrays are shared with this one.
+     *
+     * @return This score if the shift is 0
+     */
+    public Score transpose(int semitones) {
+        if (semitones == 0)
+            return this;
+        byte[] shifted = new byte[pitches.length];
+        for (int i = 0; i < pitches.length; i++) {
+            int midi = pitches[i] + semitones;
+            if (midi < 0 || midi > Byte.MAX_VALUE)
+                throw new IllegalArgumentException("Transposed note out of range: " + midi);
+            shifted[i] = (byte) midi;
+        }
+        return new Score(shifted, onsetTicks, durationTicks, fingers, quarterMs);
+    }
+
+    /**
+     * Milliseconds per quarter note at the written tempo.
+     */
+    public int getQuarterMs() {
+        return quarterMs;
+    }
+
+    public int ticksToMs(int ticks) {
+        return (int) ((long) ticks * quarterMs / TICKS_PER_QUARTER);
+    }
+
+    public int getDurationMs(int index) {
+        return ticksToMs(durationTicks[index]);
+    }
+
+    public int getOnsetMs(int index) {
+        return ticksToMs(onsetTicks[index]);
+    }
+
+    public int getStepCount() {
+        return stepStarts.length - 1;
+    }
+
+    /**
+     * Index of the first note of a step; {@code getStepStart(getStepCount())} is size().
+     */
+    public int getStepStart(int step) {
+        return stepStarts[step];
+    }
+
+    public int getStepSize(int step) {
+        return stepStarts[step + 1] - stepStarts[step];
+    }
+
+    /**
+     * @return Step containing the note at the index, or getStepCount() for size()
+     */
+    public int getStepOfNote(int index) {
+        int found = Arrays.binarySearch(stepStarts, index);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    public int getStepOnsetTicks(int step) {
+        return step < getStepCount() ? onsetTicks[stepStarts[step]] : getLengthTicks();
+    }
+
+    /**
+     * @return First step starting at or after the tick, or getStepCount() if none does
+     */
+    public int getStepAtTicks(int ticks) {
+        int low = 0;
+        int high = getStepCount();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (onsetTicks[stepStarts[middle]] < ticks) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param word 0 for MIDI 0-63, 1 for MIDI 64-127
+     */
+    public long getStepMask(int step, int word) {
+        return stepMasks[step * 2 + word];
+    }
+
+    public boolean stepContains(int step, int midi) {
+        return (stepMasks[step * 2 + (midi >> 6)] & (1L << (midi & 63))) != 0;
+    }
+
+    /**
+     * Tick at which the last note ends.
+     */
+    public int getLengthTicks() {
+        return lengthTicks;
+    }
+
+    /**
+     * Appends notes one after another; {@link #chord} adds notes that start together.
+     */
+    public static final class Builder {
+        private final int quarterMs;
+        private byte[] pitches = new byte[32];
+        private int[] onsetTicks = new int[32];
+        private int[] durationTicks = new int[32];
+        private byte[] fingers = new byte[32];
+        private int size = 0;
+        private int cursorTicks = 0;
+
+        /**
+         * @param quarterMs Length of a quarter note at the written tempo
+         */
+        public Builder(int quarterMs) {
+            this.quarterMs = quarterMs;
+        }
+
+        public Builder note(int midi, int durationTicks) {
+            return note(midi, durationTicks, NO_FINGER);
+        }
+
+        public Builder note(int midi, int durationTicks, int finger) {
+            if (midi < 0 || midi > Byte.MAX_VALUE)
+                throw new IllegalArgumentException("MIDI note out of range: " + midi);
+            if (size == pitches.length) {
+                int capacity = size * 2;
+                pitches = Arrays.copyOf(pitches, capacity);
+                onsetTicks = Arrays.copyOf(onsetTicks, capacity);
+                this.durationTicks = Arrays.copyOf(this.durationTicks, capacity);
+                fingers = Arrays.copyOf(fingers, capacity);
+            }
+            pitches[size] = (byte) midi;
+            onsetTicks[size] = cursorTicks;
+            this.durationTicks[size] = durationTicks;
+            fingers[size] = (byte) finger;
+            size++;
+            cursorTicks += durationTicks;
+            return this;
+        }
+
+        /**
+         * Add notes that start at the same time and share a duration.
+         */
+        public Builder chord(int durationTicks, int... midis) {
+            int onset = cursorTicks;
+            for (int midi : midis) {
+                cursorTicks = onset;
+                note(midi, durationTicks, NO_FINGER);
+            }
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public Score build() {
+            return new Score(Arrays.copyOf(pitches, size), Arrays.copyOf(onsetTicks, size),
+                    Arrays.copyOf(durationTicks, size), Arrays.copyOf(fingers, size), quarterMs);
+        }
+    }
+}
@@ -1,44 +1,69 @@
 package com.dstteam.zhuoctopus.airvirtuoso.model;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class Song {
-    private String title;
-    private List<Note> shortNotes;
+    private final String title;
+    private final Score shortScore;
+    private final Score longScore;
+    private List<Note> shortNotes; // Note views, created when the UI first asks
     private List<Note> longNotes;
 
-    public Song(String title, List<Note> shortNotes, List<Note> longNotes) {
+    public Song(String title, Score shortScore, Score longScore) {
         this.title = title;
-        this.shortNotes = shortNotes;
-        this.longNotes = longNotes;
+        this.shortScore = shortScore;
+        this.longScore = longScore;
     }
 
     public String getTitle() {
         return title;
     }
 
+    public Score getScore(boolean useLongVersion) {
+        return useLongVersion ? longScore : shortScore;
+    }
+
     public List<Note> getShortNotes() {
-        return shortNotes;
+        return getNotes(false);
     }
 
     public List<Note> getLongNotes() {
-        return longNotes;
+        return getNotes(true);
     }
 
-    public List<Note> getNotes(boolean useLongVersion) {
-        return useLongVersion ? longNotes : shortNotes;
+    public synchronized List<Note> getNotes(boolean useLongVersion) {
+        if (useLongVersion) {
+            if (longNotes == null) {
+                longNotes = toNotes(longScore);
+            }
+            return longNotes;
+        }
+        if (shortNotes == null) {
+            shortNotes = toNotes(shortScore);
+        }
+        return shortNotes;
     }
 
     public int getTotalNotes(boolean useLongVersion) {
-        return useLongVersion ? longNotes.size() : shortNotes.size();
+        return getScore(useLongVersion).size();
     }
 
     // Legacy methods for backward compatibility
     public List<Note> getNotes() {
-        return shortNotes;
+        return getNotes(false);
     }
 
     public int getTotalNotes() {
-        return shortNotes.size();
+        return shortScore.size();
+    }
+
+    private static List<Note> toNotes(Score score) {
+        Note[] notes = new Note[score.size()];
+        for (int i = 0; i < notes.length; i++) {
+            notes[i] = new Note(score.getPitch(i), score.getDurationMs(i), score.getFinger(i));
+        }
+        return Collections.unmodifiableList(Arrays.asList(notes));
     }
 }
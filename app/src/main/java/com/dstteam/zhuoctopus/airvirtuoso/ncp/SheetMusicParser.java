@@ -2,11 +2,12 @@ package com.dstteam.zhuoctopus.airvirtuoso.ncp;
 
 import android.util.Log;
 
-import com.dstteam.zhuoctopus.airvirtuoso.model.Note;
+import com.dstteam.zhuoctopus.airvirtuoso.logic.FingeringOptimizer;
+import com.dstteam.zhuoctopus.airvirtuoso.logic.RangeTransposer;
+import com.dstteam.zhuoctopus.airvirtuoso.model.Pitch;
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
 import com.dstteam.zhuoctopus.airvirtuoso.model.Song;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,21 +18,7 @@ import java.util.regex.Pattern;
 public class SheetMusicParser {
     private static final String TAG = "SheetMusicParser";
     
-    // Note frequencies (Hz) for octaves 3-6
-    private static final double[] NOTE_FREQUENCIES = {
-        261.63,  // C4
-        277.18,  // C#4/Db4
-        293.66,  // D4
-        311.13,  // D#4/Eb4
-        329.63,  // E4
-        349.23,  // F4
-        369.99,  // F#4/Gb4
-        392.00,  // G4
-        415.30,  // G#4/Ab4
-        440.00,  // A4
-        466.16,  // A#4/Bb4
-        493.88   // B4
-    };
+    private static final int DEFAULT_QUARTER_MS = 750; // One quarter note per parsed note
     
     /**
      * Parse OCR text into a Song object
@@ -47,47 +34,42 @@ public class SheetMusicParser {
         }
         
         // Try different parsing strategies
-        List<Note> notes = null;
+        Score.Builder notes = new Score.Builder(DEFAULT_QUARTER_MS);
         
         // Strategy 1: ABC notation (e.g., "C D E F G A B")
-        notes = parseAbcNotation(ocrText);
+        parseAbcNotation(ocrText, notes);
         
         // Strategy 2: Simple note names with octaves (e.g., "C4 D4 E4")
-        if (notes == null || notes.isEmpty()) {
-            notes = parseNoteNames(ocrText);
+        if (notes.size() == 0) {
+            parseNoteNames(ocrText, notes);
         }
         
         // Strategy 3: Solfege notation (e.g., "Do Re Mi")
-        if (notes == null || notes.isEmpty()) {
-            notes = parseSolfegeNotation(ocrText);
+        if (notes.size() == 0) {
+            parseSolfegeNotation(ocrText, notes);
         }
         
-        if (notes == null || notes.isEmpty()) {
+        if (notes.size() == 0) {
             Log.w(TAG, "Failed to parse any notes from OCR text: " + ocrText);
             return null;
         }
         
-        // Create song with default duration (750ms per note)
-        List<Note> notesWithDuration = new ArrayList<>();
-        for (Note note : notes) {
-            notesWithDuration.add(new Note(
-                note.getName(),
-                note.getOctave(),
-                note.getFrequency(),
-                750, // Default duration
-                note.getRecommendedFinger()
-            ));
+        Score score = notes.build();
+        // Octaves read from OCR text can be anywhere; move the notes onto the keyboard
+        int shift = RangeTransposer.bestShift(score);
+        if (shift != 0) {
+            Log.d(TAG, "Transposed by " + shift + " semitones to fit the keyboard");
+            score = score.transpose(shift);
         }
-        
-        return new Song(songTitle, notesWithDuration, notesWithDuration);
+        // OCR text carries no fingering; generate it
+        score = FingeringOptimizer.apply(score);
+        return new Song(songTitle, score, score);
     }
     
     /**
      * Parse ABC notation: "C D E F G A B" or "C4 D4 E4"
      */
-    private static List<Note> parseAbcNotation(String text) {
-        List<Note> notes = new ArrayList<>();
-        
+    private static void parseAbcNotation(String text, Score.Builder notes) {
         // Pattern for note names with optional octave: C, C4, C#4, Db4, etc.
         Pattern pattern = Pattern.compile("([A-G][#b]?)(\\d)?", Pattern.CASE_INSENSITIVE);
         Matcher matcher = pattern.matcher(text);
@@ -97,21 +79,14 @@ public class SheetMusicParser {
             String octaveStr = matcher.group(2);
             int octave = octaveStr != null ? Integer.parseInt(octaveStr) : 4; // Default to octave 4
             
-            Note note = createNote(noteName, octave);
-            if (note != null) {
-                notes.add(note);
-            }
+            addNote(notes, noteName, octave);
         }
-        
-        return notes;
     }
     
     /**
      * Parse simple note names: "C D E F G A B"
      */
-    private static List<Note> parseNoteNames(String text) {
-        List<Note> notes = new ArrayList<>();
-        
+    private static void parseNoteNames(String text, Score.Builder notes) {
         // Simple pattern for single letter notes
         Pattern pattern = Pattern.compile("\\b([A-G])\\b", Pattern.CASE_INSENSITIVE);
         Matcher matcher = pattern.matcher(text);
@@ -119,21 +94,14 @@ public class SheetMusicParser {
         int octave = 4; // Default octave
         while (matcher.find()) {
             String noteName = matcher.group(1).toUpperCase();
-            Note note = createNote(noteName, octave);
-            if (note != null) {
-                notes.add(note);
-            }
+            addNote(notes, noteName, octave);
         }
-        
-        return notes;
     }
     
     /**
      * Parse solfege notation: "Do Re Mi Fa Sol La Si"
      */
-    private static List<Note> parseSolfegeNotation(String text) {
-        List<Note> notes = new ArrayList<>();
-        
+    private static void parseSolfegeNotation(String text, Score.Builder notes) {
         // Map solfege to note names
         String[] solfege = {"DO", "RE", "MI", "FA", "SOL", "LA", "SI"};
         String[] noteNames = {"C", "D", "E", "F", "G", "A", "B"};
@@ -146,67 +114,20 @@ public class SheetMusicParser {
             String solfegeName = matcher.group(1).toUpperCase();
             for (int i = 0; i < solfege.length; i++) {
                 if (solfege[i].equals(solfegeName)) {
-                    Note note = createNote(noteNames[i], octave);
-                    if (note != null) {
-                        notes.add(note);
-                    }
+                    addNote(notes, noteNames[i], octave);
                     break;
                 }
             }
         }
-        
-        return notes;
     }
     
     /**
-     * Create a Note object from note name and octave
+     * Append a quarter note for the note name and octave, if it is a valid pitch
      */
-    private static Note createNote(String noteName, int octave) {
-        // Map note names to semitones from C
-        int semitone = 0;
-        
-        switch (noteName.charAt(0)) {
-            case 'C':
-                semitone = 0;
-                break;
-            case 'D':
-                semitone = 2;
-                break;
-            case 'E':
-                semitone = 4;
-                break;
-            case 'F':
-                semitone = 5;
-                break;
-            case 'G':
-                semitone = 7;
-                break;
-            case 'A':
-                semitone = 9;
-                break;
-            case 'B':
-                semitone = 11;
-                break;
-            default:
-                return null;
-        }
-        
-        // Handle sharps and flats
-        if (noteName.length() > 1) {
-            if (noteName.charAt(1) == '#') {
-                semitone++;
-            } else if (noteName.charAt(1) == 'b') {
-                semitone--;
-            }
+    private static void addNote(Score.Builder notes, String noteName, int octave) {
+        int midi = Pitch.parse(noteName, octave);
+        if (midi >= 0) {
+            notes.note(midi, Score.TICKS_PER_QUARTER);
         }
-        
-        // Calculate frequency
-        int semitonesFromC4 = (octave - 4) * 12 + semitone;
-        double frequency = NOTE_FREQUENCIES[0] * Math.pow(2, semitonesFromC4 / 12.0);
-        
-        // Clamp octave to supported range (3-6)
-        octave = Math.max(3, Math.min(6, octave));
-        
-        return new Note(noteName.charAt(0) + "", octave, frequency);
     }
 }
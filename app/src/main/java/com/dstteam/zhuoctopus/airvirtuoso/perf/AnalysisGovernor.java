@@ -0,0 +1,218 @@
+package com.dstteam.zhuoctopus.airvirtuoso.perf;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Adapts the hand-tracking workload to hold a latency budget.
+ *
+ * The governor walks a ladder of analysis resolutions. It steps down when the smoothed
+ * inference latency exceeds the budget and steps back up when there is comfortable
+ * headroom. Frame stride does not change the time one inference takes, so it is not
+ * steered by latency: it follows the power state instead, which also caps the best
+ * resolution while the device is hot or in power-save mode.
+ */
+public class AnalysisGovernor {
+
+    public interface Listener {
+        /**
+         * Called when the analysis resolution should change. Frame stride changes are
+         * applied internally through {@link #shouldProcessFrame()}.
+         */
+        void onAnalysisResolutionChanged(int width, int height);
+    }
+
+    // { width, height } from best to cheapest
+    private static final int[][] RESOLUTIONS = {
+            { 1280, 720 },
+            { 960, 540 },
+            { 640, 360 }
+    };
+    private static final int DEFAULT_RESOLUTION = 1; // Matches the original 960x540 setup
+
+    // Thermal status values mirror PowerManager.THERMAL_STATUS_*
+    static final int THERMAL_STATUS_MODERATE = 2;
+    static final int THERMAL_STATUS_SEVERE = 3;
+
+    private static final float LATENCY_EMA_ALPHA = 0.1f;
+    private static final float STEP_UP_RATIO = 0.6f; // Step up only when well under budget
+    static final int SAMPLES_PER_DECISION = 30; // About one second of results
+    static final long RESOLUTION_CHANGE_COOLDOWN_NS = 3_000_000_000L; // Rebinding the camera is costly
+
+    private final long latencyBudgetNs;
+    private final LongSupplier clock;
+    private Listener listener;
+
+    private int resolution = DEFAULT_RESOLUTION;
+    private int thermalStatus = 0;
+    private boolean powerSaveMode = false;
+    private boolean thermalHeadroomLow = false;
+
+    private float latencyEmaNs = 0;
+    private int samplesSinceDecision = 0;
+    private long lastResolutionChangeNs;
+    private int frameCounter = 0;
+
+    /**
+     * @param latencyBudgetMs Target inference latency per frame
+     */
+    public AnalysisGovernor(long latencyBudgetMs) {
+        this(latencyBudgetMs, System::nanoTime);
+    }
+
+    AnalysisGovernor(long latencyBudgetMs, LongSupplier clock) {
+        this.latencyBudgetNs = latencyBudgetMs * 1_000_000L;
+        this.clock = clock;
+        this.lastResolutionChangeNs = clock.getAsLong() - RESOLUTION_CHANGE_COOLDOWN_NS;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized int getTargetWidth() {
+        return RESOLUTIONS[resolution][0];
+    }
+
+    public synchronized int getTargetHeight() {
+        return RESOLUTIONS[resolution][1];
+    }
+
+    /**
+     * @return 0 for the best resolution
+     */
+    public synchronized int getResolutionLevel() {
+        return resolution;
+    }
+
+    /**
+     * Inference runs on every Nth camera frame.
+     */
+    public synchronized int getFrameStride() {
+        if (thermalStatus >= THERMAL_STATUS_SEVERE)
+            return 3;
+        if (thermalStatus >= THERMAL_STATUS_MODERATE || thermalHeadroomLow || powerSaveMode)
+            return 2;
+        return 1;
+    }
+
+    /**
+     * Called by the camera analyzer for each frame; false means the frame should be
+     * dropped without running inference.
+     */
+    public synchronized boolean shouldProcessFrame() {
+        frameCounter = (frameCounter + 1) % getFrameStride();
+        return frameCounter == 0;
+    }
+
+    /**
+     * Feed the measured time from detectAsync to the landmarker result.
+     */
+    public void onInferenceLatency(long latencyNs) {
+        int newWidth = -1;
+        int newHeight = -1;
+
+        synchronized (this) {
+            latencyEmaNs = latencyEmaNs == 0 ? latencyNs
+                    : LATENCY_EMA_ALPHA * latencyNs + (1 - LATENCY_EMA_ALPHA) * latencyEmaNs;
+
+            if (++samplesSinceDecision < SAMPLES_PER_DECISION)
+                return;
+            samplesSinceDecision = 0;
+
+            int target = resolution;
+            if (latencyEmaNs > latencyBudgetNs) {
+                target = resolution + 1;
+            } else if (latencyEmaNs < latencyBudgetNs * STEP_UP_RATIO) {
+                target = resolution - 1;
+            }
+
+            if (applyResolution(target)) {
+                newWidth = RESOLUTIONS[resolution][0];
+                newHeight = RESOLUTIONS[resolution][1];
+            }
+        }
+
+        notifyResolutionChanged(newWidth, newHeight);
+    }
+
+    /**
+     * @param status One of PowerManager.THERMAL_STATUS_*
+     */
+    public void setThermalStatus(int status) {
+        int newWidth = -1;
+        int newHeight = -1;
+        synchronized (this) {
+            thermalStatus = status;
+            if (applyResolution(resolution)) {
+                newWidth = RESOLUTIONS[resolution][0];
+                newHeight = RESOLUTIONS[resolution][1];
+            }
+        }
+        notifyResolutionChanged(newWidth, newHeight);
+    }
+
+    /**
+     * Forecast from PowerManager.getThermalHeadroom; values close to 1.0 mean the device
+     * is about to start throttling.
+     */
+    public void setThermalHeadroom(float headroom) {
+        int newWidth = -1;
+        int newHeight = -1;
+        synchronized (this) {
+            thermalHeadroomLow = !Float.isNaN(headroom) && headroom >= 0.85f;
+            if (applyResolution(resolution)) {
+                newWidth = RESOLUTIONS[resolution][0];
+                newHeight = RESOLUTIONS[resolution][1];
+            }
+        }
+        notifyResolutionChanged(newWidth, newHeight);
+    }
+
+    public void setPowerSaveMode(boolean enabled) {
+        int newWidth = -1;
+        int newHeight = -1;
+        synchronized (this) {
+            powerSaveMode = enabled;
+            if (applyResolution(resolution)) {
+                newWidth = RESOLUTIONS[resolution][0];
+                newHeight = RESOLUTIONS[resolution][1];
+            }
+        }
+        notifyResolutionChanged(newWidth, newHeight);
+    }
+
+    /**
+     * Clamp to the range allowed by the current power state and switch resolution.
+     *
+     * @return true if the analysis resolution changed
+     */
+    private boolean applyResolution(int target) {
+        int bestAllowed = 0;
+        if (thermalStatus >= THERMAL_STATUS_MODERATE || thermalHeadroomLow) {
+            bestAllowed = RESOLUTIONS.length - 1;
+        } else if (powerSaveMode) {
+            bestAllowed = 1;
+        }
+
+        target = Math.max(bestAllowed, Math.min(RESOLUTIONS.length - 1, target));
+        if (target == resolution)
+            return false;
+
+        long now = clock.getAsLong();
+        boolean forced = resolution < bestAllowed; // Power state demands a cheaper resolution right away
+        if (!forced && now - lastResolutionChangeNs < RESOLUTION_CHANGE_COOLDOWN_NS)
+            return false;
+
+        resolution = target;
+        latencyEmaNs = 0; // Start measuring the new resolution from scratch
+        samplesSinceDecision = 0;
+        lastResolutionChangeNs = now;
+        return true;
+    }
+
+    private void notifyResolutionChanged(int width, int height) {
+        if (width > 0 && listener != null) {
+            listener.onAnalysisResolutionChanged(width, height);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.dstteam.zhuoctopus.airvirtuoso.perf;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-bucket latency histogram.
+ * All storage is allocated up front so recording never allocates and is safe from any thread.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_WIDTH_US = 250; // 0.25 ms resolution
+    private static final int BUCKET_COUNT = 2000; // Covers 0-500 ms, last bucket collects overflow
+
+    private final AtomicIntegerArray buckets = new AtomicIntegerArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void record(long latencyNanos) {
+        long micros = Math.max(0, latencyNanos / 1000);
+        int bucket = (int) Math.min(BUCKET_COUNT - 1, micros / BUCKET_WIDTH_US);
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+
+        long currentMax = maxMicros.get();
+        while (micros > currentMax && !maxMicros.compareAndSet(currentMax, micros)) {
+            currentMax = maxMicros.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Percentile in microseconds, reported as the upper edge of the matching bucket.
+     *
+     * @param percentile Value between 0 and 100
+     * @return Latency in microseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return (long) (i + 1) * BUCKET_WIDTH_US;
+            }
+        }
+        return (long) BUCKET_COUNT * BUCKET_WIDTH_US;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        maxMicros.set(0);
+    }
+}
@@ -0,0 +1,193 @@
+package com.dstteam.zhuoctopus.airvirtuoso.perf;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Traces how long a camera frame takes to become audio.
+ *
+ * Pipeline: ImageAnalysis analyzer -> detectAsync -> LandmarkerListener.onResults ->
+ * InputEngine.checkCollisions -> InputEngine.Listener -> AudioEngine.playNote.
+ * Each frame is identified by the timestamp handed to MediaPipe, which comes back
+ * unchanged as {@code HandLandmarkerResult.timestampMs()}. Every stage records the
+ * time since the previous stage into a preallocated {@link LatencyHistogram}.
+ */
+public class LatencyTracer {
+    private static final String TAG = "LatencyTracer";
+
+    public static final int STAGE_SUBMIT = 0; // Capture -> detectAsync submitted
+    public static final int STAGE_INFERENCE = 1; // detectAsync -> onResults
+    public static final int STAGE_DISPATCH = 2; // onResults -> input thread
+    public static final int STAGE_COLLISION = 3; // Input thread -> note-on edge
+    public static final int STAGE_AUDIO = 4; // Note-on edge -> AudioEngine.playNote
+    public static final int STAGE_TOTAL = 5; // Capture -> AudioEngine.playNote
+    public static final int STAGE_COUNT = 6;
+
+    private static final String[] STAGE_NAMES = {
+            "submit", "inference", "dispatch", "collision", "audio", "total"
+    };
+
+    // Frames in flight are kept in a small ring indexed by frame time
+    private static final int SLOT_COUNT = 16;
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+
+    // Capture timestamps further than this from "now" come from a different clock base
+    private static final long MAX_CAPTURE_SKEW_NS = 1_000_000_000L;
+
+    private static final LatencyTracer INSTANCE = new LatencyTracer();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_COUNT];
+    private final AtomicLongArray slotFrameTime = new AtomicLongArray(SLOT_COUNT);
+    private final AtomicLongArray slotCaptureNs = new AtomicLongArray(SLOT_COUNT);
+    private final AtomicLongArray slotLastMarkNs = new AtomicLongArray(SLOT_COUNT);
+    private final AtomicLongArray slotRecordedStages = new AtomicLongArray(SLOT_COUNT);
+
+    private volatile boolean enabled = false;
+    // Frame whose collision results are currently being dispatched to key listeners
+    private volatile long activeFrameTime = -1;
+
+    private LatencyTracer() {
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            slotFrameTime.set(i, -1);
+        }
+    }
+
+    public static LatencyTracer getInstance() {
+        return INSTANCE;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Stamp a new frame.
+     *
+     * @param frameTimeMs   Timestamp passed to MediaPipe for this frame
+     * @param captureNanos  Sensor timestamp from ImageInfo (elapsedRealtime base)
+     */
+    public void beginFrame(long frameTimeMs, long captureNanos) {
+        if (!enabled)
+            return;
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (captureNanos <= 0 || Math.abs(now - captureNanos) > MAX_CAPTURE_SKEW_NS) {
+            // Sensor uses another time base on this device; fall back to analyzer entry
+            captureNanos = now;
+        }
+
+        int slot = (int) (frameTimeMs & SLOT_MASK);
+        slotFrameTime.set(slot, frameTimeMs);
+        slotCaptureNs.set(slot, captureNanos);
+        slotLastMarkNs.set(slot, captureNanos);
+        slotRecordedStages.set(slot, 0);
+    }
+
+    /**
+     * Record the time since the previous stage of the given frame. Each stage is recorded
+     * at most once per frame, so repeated calls for the same frame are ignored.
+     */
+    public void mark(int stage, long frameTimeMs) {
+        if (!enabled || frameTimeMs < 0)
+            return;
+
+        int slot = (int) (frameTimeMs & SLOT_MASK);
+        if (slotFrameTime.get(slot) != frameTimeMs)
+            return; // Frame already evicted from the ring
+
+        long stageBit = 1L << stage;
+        long recorded = slotRecordedStages.get(slot);
+        if ((recorded & stageBit) != 0 || !slotRecordedStages.compareAndSet(slot, recorded, recorded | stageBit))
+            return;
+
+        long now = SystemClock.elapsedRealtimeNanos();
+        histograms[stage].record(now - slotLastMarkNs.get(slot));
+        slotLastMarkNs.set(slot, now);
+
+        if (stage == STAGE_AUDIO) {
+            histograms[STAGE_TOTAL].record(now - slotCaptureNs.get(slot));
+        }
+    }
+
+    /**
+     * Mark the frame whose key events are being dispatched, so the audio layer can
+     * attribute its playNote call without knowing about frames.
+     */
+    public void setActiveFrame(long frameTimeMs) {
+        activeFrameTime = frameTimeMs;
+    }
+
+    public void clearActiveFrame() {
+        activeFrameTime = -1;
+    }
+
+    public void markActiveFrame(int stage) {
+        mark(stage, activeFrameTime);
+    }
+
+    public LatencyHistogram getHistogram(int stage) {
+        return histograms[stage];
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Short multi-line summary (p50/p95/p99 in ms) for the debug overlay.
+     */
+    public String formatSummary() {
+        StringBuilder builder = new StringBuilder("stage       p50   p95   p99");
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            LatencyHistogram histogram = histograms[i];
+            builder.append('\n');
+            builder.append(String.format(Locale.US, "%-9s %5.1f %5.1f %5.1f ms (n=%d)",
+                    STAGE_NAMES[i],
+                    histogram.getPercentileMicros(50) / 1000f,
+                    histogram.getPercentileMicros(95) / 1000f,
+                    histogram.getPercentileMicros(99) / 1000f,
+                    histogram.getCount()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write all stage percentiles as CSV.
+     *
+     * @return true if the file was written
+     */
+    public boolean dumpToFile(File file) {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("stage,count,p50_us,p95_us,p99_us,max_us\n");
+            for (int i = 0; i < STAGE_COUNT; i++) {
+                LatencyHistogram histogram = histograms[i];
+                writer.write(String.format(Locale.US, "%s,%d,%d,%d,%d,%d\n",
+                        STAGE_NAMES[i],
+                        histogram.getCount(),
+                        histogram.getPercentileMicros(50),
+                        histogram.getPercentileMicros(95),
+                        histogram.getPercentileMicros(99),
+                        histogram.getMaxMicros()));
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write latency dump", e);
+            return false;
+        }
+    }
+}
@@ -5,7 +5,6 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.PointF;
 import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.util.TypedValue;
@@ -13,15 +12,18 @@ import android.view.View;
 
 import androidx.annotation.Nullable;
 
-import com.google.mediapipe.tasks.components.containers.NormalizedLandmark;
-import com.google.mediapipe.tasks.vision.handlandmarker.HandLandmarkerResult;
-import com.dstteam.zhuoctopus.airvirtuoso.analysis.PostureAnalyzer;
+import com.dstteam.zhuoctopus.airvirtuoso.input.InputSnapshot;
+import com.dstteam.zhuoctopus.airvirtuoso.input.LandmarkBuffer;
+import com.dstteam.zhuoctopus.airvirtuoso.util.Midi;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Draws the tracked hands and fingering hints over the camera preview.
+ * Input processing happens in {@link com.dstteam.zhuoctopus.airvirtuoso.input.InputEngine};
+ * this view only renders the latest {@link InputSnapshot}.
+ */
 public class PianoOverlayView extends View {
 
     private final List<Key> keys = new ArrayList<>();
@@ -45,39 +47,22 @@ public class PianoOverlayView extends View {
             { 0, 13 }, { 13, 14 }, { 14, 15 }, { 15, 16 }, // Ring
             { 0, 17 }, { 17, 18 }, { 18, 19 }, { 19, 20 } // Pinky
     };
+    private static final int[] PALM_INDICES = { 0, 1, 5, 9, 13, 17 };
+    private static final int[] FINGERTIPS = { 4, 8, 12, 16, 20 };
+    // Display labels indexed by finger number (1-5), so drawing never formats strings
+    private static final String[] FINGER_LABELS = { "0", "1", "2", "3", "4", "5" };
 
-    private HandLandmarkerResult handLandmarkerResult;
-    private int imageWidth;
-    private int imageHeight;
-    private com.dstteam.zhuoctopus.airvirtuoso.logic.HandPositionValidator validator;
-    private boolean isFrontCamera = true; // Default front camera mirroring
-
-    // Smoothing state
-    // Key: "handIndex_landmarkIndex", Value: PointF(x, y) in view coordinates
-    private final Map<String, PointF> smoothedLandmarks = new HashMap<>();
+    private static final int GLOVE_COLOR_USER_RIGHT = Color.parseColor("#A8E6CF"); // Pastel Green
+    private static final int GLOVE_COLOR_USER_LEFT = Color.parseColor("#A0C4FF"); // Pastel Blue
 
-    private static final float SMOOTHING_ALPHA = 0.5f; // Reduced for stronger smoothing (less jitter)
-
-    // Track per-finger tap state to prevent sliding retriggers
-    private static class FingerState {
-        int activeKeyIndex = -1;
-        boolean isArmed = true; // True when finger is above keyboard and ready to trigger
-    }
-
-    private final Map<String, FingerState> fingerStates = new HashMap<>();
+    private InputSnapshot snapshot; // Owned by the UI thread until the next setSnapshot
+    private boolean isFrontCamera = true; // Default front camera mirroring
 
     // AI/CV Features
     private final Paint fingeringPaint = new Paint();
     private final Paint fingertipNumberPaint = new Paint(); // For numbers inside fingertip dots
-    private PostureAnalyzer.PostureResult currentPosture = null;
-    private boolean isFistDetected = false;
     private int recommendedFinger = -1; // Display number (1-5)
-    private double targetNoteFrequency = -1.0; // Frequency of the note to show fingering for
-
-    // Depth/Distance Logic
-    private static final float MIN_HAND_SCALE = 0.08f; // Lowered threshold to allow playing from further away
-    private static final float HAND_SPREAD_FACTOR = 1.10f; // Spread hands horizontally to fix "pinched" alignment
-    private static final float HAND_SPREAD_FACTOR_Y = 1.10f; // Spread hands vertically to fix alignment
+    private int targetNoteMidi = -1; // MIDI note to show fingering for
 
     public PianoOverlayView(Context context) {
         super(context);
@@ -135,20 +120,11 @@ public class PianoOverlayView extends View {
                 TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 14, getResources().getDisplayMetrics()));
         fingertipNumberPaint.setTextAlign(Paint.Align.CENTER);
         fingertipNumberPaint.setFakeBoldText(true);
-
-        validator = new com.dstteam.zhuoctopus.airvirtuoso.logic.HandPositionValidator();
-    }
-
-    private OnKeyListener onKeyListener;
-
-    public interface OnKeyListener {
-        void onKeyPressed(double frequency);
-    }
-
-    public void setOnKeyListener(OnKeyListener listener) {
-        this.onKeyListener = listener;
     }
 
+    /**
+     * Keys are only used to place fingering hints; hit-testing lives in the input engine.
+     */
     public void setKeys(List<Key> newKeys) {
         this.keys.clear();
         this.keys.addAll(newKeys);
@@ -156,53 +132,39 @@ public class PianoOverlayView extends View {
         // debugging
     }
 
+    /**
+     * Render a new input frame. Must be called on the UI thread.
+     */
+    public void setSnapshot(InputSnapshot snapshot) {
+        this.snapshot = snapshot;
+        invalidate();
+    }
+
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
         // Draw Landmarks (Smoothed Fingertips Only with validation)
-        if (handLandmarkerResult != null && imageWidth > 0 && imageHeight > 0) {
-            int handIndex = 0;
-            List<NormalizedLandmark> firstHandWrist = null;
-
-            for (int i = 0; i < handLandmarkerResult.landmarks().size(); i++) {
-                List<NormalizedLandmark> landmarks = handLandmarkerResult.landmarks().get(i);
-
-                // Ghost Hand Filter: Check distance to previous hand
-                if (firstHandWrist != null) {
-                    NormalizedLandmark currentWrist = landmarks.get(0);
-                    NormalizedLandmark prevWrist = firstHandWrist.get(0);
-                    double dist = Math.hypot(currentWrist.x() - prevWrist.x(), currentWrist.y() - prevWrist.y());
-                    if (dist < 0.1) { // If hands are closer than 10% of screen, skip duplicate
-                        continue;
-                    }
-                }
-                if (firstHandWrist == null) {
-                    firstHandWrist = landmarks;
+        InputSnapshot frame = snapshot;
+        if (frame != null) {
+            for (int handIndex = 0; handIndex < LandmarkBuffer.MAX_HANDS; handIndex++) {
+                if (!frame.handVisible[handIndex]) {
+                    continue; // Missing or ghost duplicate
                 }
 
                 // Determine Handedness Color
                 int gloveColor = Color.WHITE; // Default
-                if (i < handLandmarkerResult.handedness().size()) {
-                    String label = handLandmarkerResult.handedness().get(i).get(0).categoryName();
-                    // Note: MediaPipe Front Camera: "Left" label = User's Right Hand (Beige)
-                    // "Right" label = User's Left Hand (Mint)
-                    if (label.equals("Left")) {
-                        gloveColor = Color.parseColor("#A8E6CF"); // Pastel Green
-                    } else {
-                        gloveColor = Color.parseColor("#A0C4FF"); // Pastel Blue
-                    }
+                if (frame.handedness[handIndex] == InputSnapshot.HAND_USER_RIGHT) {
+                    gloveColor = GLOVE_COLOR_USER_RIGHT;
+                } else if (frame.handedness[handIndex] == InputSnapshot.HAND_USER_LEFT) {
+                    gloveColor = GLOVE_COLOR_USER_LEFT;
                 }
 
                 glovePaint.setColor(gloveColor);
                 palmPaint.setColor(gloveColor);
 
                 // Depth Check for Visualization
-                float handScale = getHandScale(landmarks);
-                boolean isTooFar = handScale < MIN_HAND_SCALE;
-
-                int originalAlpha = 255;
-                if (isTooFar) {
+                if (frame.handTooFar[handIndex]) {
                     glovePaint.setAlpha(50); // Ghost mode
                     palmPaint.setAlpha(50);
                 } else {
@@ -215,17 +177,16 @@ public class PianoOverlayView extends View {
 
                 // 1. Draw Palm Fill
                 palmPath.reset();
-                int[] palmIndices = { 0, 1, 5, 9, 13, 17 };
                 boolean first = true;
-                for (int index : palmIndices) {
-                    String key = handIndex + "_" + index;
-                    PointF point = smoothedLandmarks.get(key);
-                    if (point != null) {
+                for (int index : PALM_INDICES) {
+                    if (frame.has(handIndex, index)) {
+                        float x = frame.getX(handIndex, index);
+                        float y = frame.getY(handIndex, index);
                         if (first) {
-                            palmPath.moveTo(point.x, point.y);
+                            palmPath.moveTo(x, y);
                             first = false;
                         } else {
-                            palmPath.lineTo(point.x, point.y);
+                            palmPath.lineTo(x, y);
                         }
                     }
                 }
@@ -234,13 +195,13 @@ public class PianoOverlayView extends View {
 
                 // 2. Draw Glove Fingers (Thick Lines)
                 for (int[] connection : HAND_CONNECTIONS) {
-                    String startKey = handIndex + "_" + connection[0];
-                    String endKey = handIndex + "_" + connection[1];
-                    PointF start = smoothedLandmarks.get(startKey);
-                    PointF end = smoothedLandmarks.get(endKey);
-
-                    if (start != null && end != null) {
-                        canvas.drawLine(start.x, start.y, end.x, end.y, glovePaint);
+                    if (frame.has(handIndex, connection[0]) && frame.has(handIndex, connection[1])) {
+                        canvas.drawLine(
+                                frame.getX(handIndex, connection[0]),
+                                frame.getY(handIndex, connection[0]),
+                                frame.getX(handIndex, connection[1]),
+                                frame.getY(handIndex, connection[1]),
+                                glovePaint);
                     }
                 }
 
@@ -248,62 +209,45 @@ public class PianoOverlayView extends View {
                 canvas.restoreToCount(saveCount);
 
                 // 3. Draw Validation Dots (Fingertips only - ON TOP)
-                int[] fingertips = { 4, 8, 12, 16, 20 };
-                for (int fingerIndex : fingertips) {
-                    String key = handIndex + "_" + fingerIndex;
-                    PointF smoothedPoint = smoothedLandmarks.get(key);
-                    if (smoothedPoint != null) {
-                        // Get wrist position for validation
-                        NormalizedLandmark wrist = landmarks.get(0); // Wrist is index 0
-
-                        // Find which key this fingertip is on
-                        int keyIndexPressed = getKeyIndexAtPosition(smoothedPoint.x, smoothedPoint.y);
-
-                        // Validate finger position
-                        Paint dotPaint = idleLandmarkPaint; // Default White (Idle)
-                        if (keyIndexPressed >= 0) {
-                            com.dstteam.zhuoctopus.airvirtuoso.logic.HandPositionValidator.ValidationResult result = validator
-                                    .validateFingerPosition(
-                                            handLandmarkerResult,
-                                            handIndex,
-                                            fingerIndex,
-                                            keyIndexPressed,
-                                            wrist.x());
-
-                            if (result.isCorrect) {
-                                dotPaint = correctLandmarkPaint; // Blue for correct
-                            } else {
-                                dotPaint = incorrectLandmarkPaint; // Red for incorrect
-                            }
-                        }
-
-                        // Draw larger circle for fingertip
-                        float dotRadius = 25; // Increased from 10
-                        canvas.drawCircle(smoothedPoint.x, smoothedPoint.y, dotRadius, dotPaint);
-
-                        // Draw finger number inside the dot
-                        // Map fingerIndex to finger number: 4->1(thumb), 8->2(index), 12->3(middle),
-                        // 16->4(ring), 20->5(pinky)
-                        int fingerNumber = (fingerIndex / 4); // 4->1, 8->2, 12->3, 16->4, 20->5
-                        String fingerText = String.valueOf(fingerNumber);
-                        // Center text vertically (add textSize/3 to y position)
-                        float textY = smoothedPoint.y + (fingertipNumberPaint.getTextSize() / 3);
-                        canvas.drawText(fingerText, smoothedPoint.x, textY, fingertipNumberPaint);
+                for (int f = 0; f < FINGERTIPS.length; f++) {
+                    int fingerIndex = FINGERTIPS[f];
+                    if (!frame.has(handIndex, fingerIndex))
+                        continue;
+                    float pointX = frame.getX(handIndex, fingerIndex);
+                    float pointY = frame.getY(handIndex, fingerIndex);
+
+                    Paint dotPaint = idleLandmarkPaint; // Default White (Idle)
+                    int state = frame.fingertipState[handIndex * InputSnapshot.FINGERTIPS_PER_HAND + f];
+                    if (state == InputSnapshot.FINGERTIP_CORRECT) {
+                        dotPaint = correctLandmarkPaint; // Blue for correct
+                    } else if (state == InputSnapshot.FINGERTIP_INCORRECT) {
+                        dotPaint = incorrectLandmarkPaint; // Red for incorrect
                     }
+
+                    // Draw larger circle for fingertip
+                    float dotRadius = 25; // Increased from 10
+                    canvas.drawCircle(pointX, pointY, dotRadius, dotPaint);
+
+                    // Draw finger number inside the dot
+                    // Map fingerIndex to finger number: 4->1(thumb), 8->2(index), 12->3(middle),
+                    // 16->4(ring), 20->5(pinky)
+                    int fingerNumber = (fingerIndex / 4); // 4->1, 8->2, 12->3, 16->4, 20->5
+                    // Center text vertically (add textSize/3 to y position)
+                    float textY = pointY + (fingertipNumberPaint.getTextSize() / 3);
+                    canvas.drawText(FINGER_LABELS[fingerNumber], pointX, textY, fingertipNumberPaint);
                 }
-                handIndex++;
             }
         }
 
         // Draw Fingering Numbers (only above the specific next note's key)
-        if (recommendedFinger >= 1 && recommendedFinger <= 5 && targetNoteFrequency > 0) {
-            for (Key key : keys) {
-                // Only show fingering above the key that matches the target frequency
-                if (Math.abs(key.frequency - targetNoteFrequency) < 1.0) {
+        if (recommendedFinger >= 1 && recommendedFinger <= 5 && targetNoteMidi >= 0) {
+            for (int i = 0; i < keys.size(); i++) {
+                Key key = keys.get(i);
+                // Only show fingering above the key that matches the target note
+                if (key.midi == targetNoteMidi) {
                     float centerX = (key.rect.left + key.rect.right) / 2;
                     float fingerY = key.rect.top - 20; // Above the key
-                    String fingerNumber = String.valueOf(recommendedFinger);
-                    canvas.drawText(fingerNumber, centerX, fingerY, fingeringPaint);
+                    canvas.drawText(FINGER_LABELS[recommendedFinger], centerX, fingerY, fingeringPaint);
                     break; // Only one key should match
                 }
             }
@@ -311,263 +255,42 @@ public class PianoOverlayView extends View {
 
     }
 
-    public void setHandLandmarkerResult(HandLandmarkerResult result, int imageWidth, int imageHeight) {
-        this.handLandmarkerResult = result;
-        this.imageWidth = imageWidth;
-        this.imageHeight = imageHeight;
-
-        updateSmoothedLandmarks();
-        checkCollisions();
-        invalidate();
-    }
-
-    private void updateSmoothedLandmarks() {
-        if (handLandmarkerResult == null)
-            return;
-
-        if (handLandmarkerResult.landmarks().isEmpty()) {
-            smoothedLandmarks.clear();
-            return;
-        }
-
-        int handIndex = 0;
-
-        for (List<NormalizedLandmark> landmarks : handLandmarkerResult.landmarks()) {
-            // Process ALL 21 landmarks for the glove
-            for (int index = 0; index < 21; index++) {
-                if (index >= landmarks.size())
-                    continue;
-                if (index >= landmarks.size())
-                    continue;
-
-                NormalizedLandmark landmark = landmarks.get(index);
-                float[] coords = transformCoordinates(landmark.x(), landmark.y());
-                float targetX = coords[0];
-                float targetY = coords[1];
-
-                String key = handIndex + "_" + index;
-                PointF previous = smoothedLandmarks.get(key);
-
-                float newX, newY;
-                if (previous == null) {
-                    newX = targetX;
-                    newY = targetY;
-                } else {
-                    // EMA Filter: smoothed = alpha * target + (1 - alpha) * previous
-                    newX = SMOOTHING_ALPHA * targetX + (1 - SMOOTHING_ALPHA) * previous.x;
-                    newY = SMOOTHING_ALPHA * targetY + (1 - SMOOTHING_ALPHA) * previous.y;
-                }
-
-                smoothedLandmarks.put(key, new PointF(newX, newY));
-            }
-            handIndex++;
-        }
-    }
-
-    // Helper to transform normalized coordinates to view coordinates, accounting
-    // for center crop and aspect ratio
-    private float[] transformCoordinates(float xNorm, float yNorm) {
-        // Get view dimensions
-        int viewW = getWidth();
-        int viewH = getHeight();
-        if (imageWidth == 0 || imageHeight == 0 || viewW == 0 || viewH == 0) {
-            // Fallback simple scaling
-            return new float[] { xNorm * viewW, yNorm * viewH };
-        }
-        // Compute scale factor for center-crop (fill view)
-        float scale = Math.max((float) viewW / imageWidth, (float) viewH / imageHeight);
-        // Compute offset due to cropping
-        float offsetX = (viewW - imageWidth * scale) / 2f;
-        float offsetY = (viewH - imageHeight * scale) / 2f;
-        // Map normalized coordinates (0..1) to image pixel space then to view space
-        float xImg = xNorm * imageWidth;
-        float yImg = yNorm * imageHeight;
-        float xView = xImg * scale + offsetX;
-        float yView = yImg * scale + offsetY;
-
-        // Apply Horizontal Spread to fix alignment
-        // Shift X away from center
-        float centerX = viewW / 2f;
-        xView = (xView - centerX) * HAND_SPREAD_FACTOR + centerX;
-
-        // Apply Vertical Spread to fix alignment
-        // Shift Y away from center
-        float centerY = viewH / 2f;
-        yView = (yView - centerY) * HAND_SPREAD_FACTOR_Y + centerY;
-
-        return new float[] { xView, yView };
-    }
-
-    private void checkCollisions() {
-        if (handLandmarkerResult == null) {
-            if (isFistDetected) {
-                resetKeyPressStates();
-            }
-            return;
-        }
-
-        if (isFistDetected) {
-            resetKeyPressStates();
-            return;
-        }
-
-        List<Key> nextActiveKeys = new ArrayList<>();
-        List<Key> newlyTriggeredKeys = new ArrayList<>();
-
-        int handIndex = 0;
-        for (List<NormalizedLandmark> landmarks : handLandmarkerResult.landmarks()) {
-            // Check if this hand is close enough
-            if (getHandScale(landmarks) < MIN_HAND_SCALE) {
-                handIndex++;
-                continue; // Ignore hands that are too far
-            }
-
-            int[] fingertips = { 4, 8, 12, 16, 20 };
-            for (int index : fingertips) {
-                String fingerId = handIndex + "_" + index;
-                PointF point = smoothedLandmarks.get(fingerId);
-                FingerState state = fingerStates.computeIfAbsent(fingerId, id -> new FingerState());
-
-                int currentKeyIndex = -1;
-                if (point != null) {
-                    currentKeyIndex = getKeyIndexAtPosition(point.x, point.y);
-                }
-
-                if (currentKeyIndex == -1) {
-                    // Finger lifted or is above the keyboard.
-                    state.activeKeyIndex = -1;
-                    state.isArmed = true;
-                    continue;
-                }
-
-                Key currentKey = keys.get(currentKeyIndex);
-
-                if (state.activeKeyIndex == currentKeyIndex) {
-                    if (!nextActiveKeys.contains(currentKey)) {
-                        nextActiveKeys.add(currentKey);
-                    }
-                } else if (state.activeKeyIndex == -1 && state.isArmed) {
-                    state.activeKeyIndex = currentKeyIndex;
-                    state.isArmed = false;
-
-                    if (!nextActiveKeys.contains(currentKey)) {
-                        nextActiveKeys.add(currentKey);
-                    }
-                    if (!newlyTriggeredKeys.contains(currentKey)) {
-                        newlyTriggeredKeys.add(currentKey);
-                    }
-                }
-            }
-            handIndex++;
-        }
-
-        for (Key key : keys) {
-            boolean isNowPressed = nextActiveKeys.contains(key);
-
-            if (newlyTriggeredKeys.contains(key) && onKeyListener != null) {
-                performHapticFeedback(android.view.HapticFeedbackConstants.KEYBOARD_TAP);
-                onKeyListener.onKeyPressed(key.frequency);
-            }
-
-            key.isPressed = isNowPressed;
-        }
-    }
-
     public void highlightKey(double frequency, boolean isCorrect) {
         // Just for visual feedback if needed, but now keys are external views.
         // We can still use this to trigger particles or overlay effects if we want.
     }
 
-    /**
-     * Get the key index at a given screen position
-     */
-    private int getKeyIndexAtPosition(float x, float y) {
-        for (int i = 0; i < keys.size(); i++) {
-            if (keys.get(i).rect.contains(x, y)) {
-                return i;
-            }
-        }
-        return -1; // Not on any key
-    }
-
     public static class Key {
         public RectF rect;
-        public boolean isPressed;
         public double frequency; // For audio mapping
         public String label;
+        public boolean isBlack; // Black keys sit on top of white keys when hit-testing
+        public int midi; // MIDI note number, -1 if the frequency is out of range
 
         public Key(RectF rect, double frequency, String label) {
             this.rect = rect;
             this.frequency = frequency;
             this.label = label;
+            this.midi = Midi.fromFrequency(frequency);
+            this.isBlack = Midi.isBlackKey(midi);
         }
     }
 
     /**
      * Set the recommended finger for the current note.
      */
-    public void setRecommendedFinger(int fingerDisplayNumber, double frequency) {
+    public void setRecommendedFinger(int fingerDisplayNumber, int midiNote) {
         this.recommendedFinger = fingerDisplayNumber;
-        this.targetNoteFrequency = frequency;
+        this.targetNoteMidi = midiNote;
         invalidate();
     }
 
     public void clearRecommendedFinger() {
         this.recommendedFinger = -1;
-        this.targetNoteFrequency = -1.0;
+        this.targetNoteMidi = -1;
         invalidate();
     }
 
-    /**
-     * Analyze and update posture for all visible hands.
-     */
-    public void updatePosture() {
-        if (handLandmarkerResult != null && !handLandmarkerResult.landmarks().isEmpty()) {
-            // Analyze first hand for now
-            List<NormalizedLandmark> landmarks = handLandmarkerResult.landmarks().get(0);
-
-            // 1. Check Distance (Scale)
-            float scale = getHandScale(landmarks);
-            if (scale < MIN_HAND_SCALE) {
-                isFistDetected = false;
-                currentPosture = new PostureAnalyzer.PostureResult(
-                        PostureAnalyzer.PostureStatus.WARNING,
-                        0.0f,
-                        "👋 Move closer to piano");
-            }
-            // 2. Check Fist
-            else if (PostureAnalyzer.isFist(landmarks)) {
-                isFistDetected = true;
-                currentPosture = new PostureAnalyzer.PostureResult(
-                        PostureAnalyzer.PostureStatus.DANGER,
-                        0.0f,
-                        "✋ Open your hand in a curved shape");
-            } else {
-                isFistDetected = false;
-                currentPosture = PostureAnalyzer.analyzePosture(landmarks);
-            }
-        } else {
-            isFistDetected = false;
-            currentPosture = null;
-        }
-        invalidate();
-    }
-
-    private float getHandScale(List<NormalizedLandmark> landmarks) {
-        if (landmarks == null || landmarks.size() <= 9)
-            return 0;
-        NormalizedLandmark wrist = landmarks.get(0);
-        NormalizedLandmark middleMcp = landmarks.get(9);
-        return (float) Math.hypot(wrist.x() - middleMcp.x(), wrist.y() - middleMcp.y());
-    }
-
-    /**
-     * Get current posture result.
-     */
-    public PostureAnalyzer.PostureResult getCurrentPosture() {
-        return currentPosture;
-    }
-
     /**
      * Set whether the camera is front-facing. When true, X coordinates are
      * mirrored.
@@ -575,10 +298,4 @@ public class PianoOverlayView extends View {
     public void setFrontCamera(boolean isFront) {
         this.isFrontCamera = isFront;
     }
-
-    private void resetKeyPressStates() {
-        for (Key key : keys) {
-            key.isPressed = false;
-        }
-    }
 }
@@ -0,0 +1,43 @@
+package com.dstteam.zhuoctopus.airvirtuoso.util;
+
+/**
+ * Layout of the on-screen piano: the white keys from A3 to C6, left to right. The key
+ * views, the range transposer and the fingering all derive their keys from here.
+ */
+public final class Keyboard {
+
+    private static final int[] KEY_MIDI = { 57, 59, 60, 62, 64, 65, 67, 69, 71, 72, 74, 76, 77, 79, 81, 83, 84 };
+
+    public static final int KEY_COUNT = KEY_MIDI.length;
+
+    private Keyboard() {
+    }
+
+    /**
+     * @param keyIndex 0 for the leftmost key
+     */
+    public static int getMidi(int keyIndex) {
+        return KEY_MIDI[keyIndex];
+    }
+
+    public static boolean isPlayable(int midi) {
+        for (int key : KEY_MIDI) {
+            if (key == midi)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Key a note is played on; a black key counts as the white key below it.
+     *
+     * @return The key index, or -1 if the note is off the keyboard
+     */
+    public static int keyIndex(int midi) {
+        for (int i = KEY_COUNT - 1; i >= 0; i--) {
+            if (KEY_MIDI[i] == midi || (KEY_MIDI[i] == midi - 1 && Midi.isBlackKey(midi)))
+                return i;
+        }
+        return -1;
+    }
+}
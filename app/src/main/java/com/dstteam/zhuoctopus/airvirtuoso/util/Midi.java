@@ -0,0 +1,37 @@
+package com.dstteam.zhuoctopus.airvirtuoso.util;
+
+/**
+ * Conversions between equal-tempered frequencies and MIDI note numbers (A4 = 69 = 440 Hz).
+ */
+public final class Midi {
+
+    public static final int NOTE_COUNT = 128;
+    public static final int A4 = 69;
+    public static final double A4_FREQUENCY = 440.0;
+
+    private static final double LN_2 = Math.log(2);
+
+    private Midi() {
+    }
+
+    /**
+     * @return Nearest MIDI note for the frequency, or -1 if it falls outside 0..127
+     */
+    public static int fromFrequency(double frequency) {
+        if (!(frequency > 0))
+            return -1;
+        long note = Math.round(A4 + 12 * Math.log(frequency / A4_FREQUENCY) / LN_2);
+        return note >= 0 && note < NOTE_COUNT ? (int) note : -1;
+    }
+
+    public static double toFrequency(int note) {
+        return A4_FREQUENCY * Math.pow(2.0, (note - A4) / 12.0);
+    }
+
+    public static boolean isBlackKey(int note) {
+        if (note < 0)
+            return false;
+        int pitchClass = note % 12;
+        return pitchClass == 1 || pitchClass == 3 || pitchClass == 6 || pitchClass == 8 || pitchClass == 10;
+    }
+}
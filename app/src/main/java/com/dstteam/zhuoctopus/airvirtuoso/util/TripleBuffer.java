@@ -0,0 +1,72 @@
+package com.dstteam.zhuoctopus.airvirtuoso.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free latest-value handoff between one producer thread and one consumer thread.
+ *
+ * The producer fills {@link #getWriteBuffer()} and calls {@link #publish()}; the consumer
+ * calls {@link #consume()} and gets the newest published value. Values the consumer never
+ * picked up are overwritten (dropped) instead of queued. The three slots are preallocated,
+ * so handing off never allocates.
+ */
+public class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 0x3;
+    private static final int DIRTY = 0x4; // Set while the shared slot holds an unconsumed value
+
+    private final Object[] slots;
+    private final AtomicInteger shared = new AtomicInteger(1);
+    private final AtomicLong droppedCount = new AtomicLong();
+    private int writeIndex = 0; // Owned by the producer
+    private int readIndex = 2; // Owned by the consumer
+
+    public TripleBuffer(T first, T second, T third) {
+        slots = new Object[] { first, second, third };
+    }
+
+    /**
+     * Slot the producer may fill before the next {@link #publish()}.
+     */
+    @SuppressWarnings("unchecked")
+    public T getWriteBuffer() {
+        return (T) slots[writeIndex];
+    }
+
+    /**
+     * Make the write buffer the latest value.
+     *
+     * @return true if a previously published value was dropped unseen
+     */
+    public boolean publish() {
+        int previous = shared.getAndSet(writeIndex | DIRTY);
+        writeIndex = previous & INDEX_MASK;
+        boolean dropped = (previous & DIRTY) != 0;
+        if (dropped) {
+            droppedCount.incrementAndGet();
+        }
+        return dropped;
+    }
+
+    public boolean hasNewValue() {
+        return (shared.get() & DIRTY) != 0;
+    }
+
+    /**
+     * @return The newest published value, or null if nothing new was published since the
+     *         last call. The returned object stays untouched until the next consume().
+     */
+    @SuppressWarnings("unchecked")
+    public T consume() {
+        if (!hasNewValue())
+            return null;
+        int previous = shared.getAndSet(readIndex);
+        readIndex = previous & INDEX_MASK;
+        return (T) slots[readIndex];
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+}
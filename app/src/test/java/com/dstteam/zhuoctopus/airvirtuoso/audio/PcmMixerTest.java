@@ -0,0 +1,300 @@
+package com.dstteam.zhuoctopus.airvirtuoso.audio;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the mixer on the JVM: mixing, envelopes, voice stealing and a steady-state allocation check.
+ */
+public class PcmMixerTest {
+
+    private static final int BLOCK = 192;
+    private static final int RATE = 48_000;
+
+    private static ShortBuffer constantSample(short value, int length) {
+        ShortBuffer buffer = ByteBuffer.allocateDirect(length * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int i = 0; i < length; i++) {
+            buffer.put(value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void render_sumsActiveVoices() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        mixer.setMasterGain(1f);
+        mixer.setEnvelope(0f, 0f, 1f, 300f);
+        int a = mixer.addSample(constantSample((short) 1000, 1000));
+        int b = mixer.addSample(constantSample((short) 2000, 100));
+
+        assertTrue(mixer.noteOn(a, 1f));
+        assertTrue(mixer.noteOn(b, 0.5f));
+
+        short[] out = new short[BLOCK];
+        mixer.render(out, 0, BLOCK);
+        assertEquals(2000, out[0], 2); // 1000 + 2000 * 0.5
+        assertEquals(1000, out[150], 2); // Second sample already finished
+        assertEquals(1, mixer.getActiveVoiceCount());
+    }
+
+    @Test
+    public void render_clipsInsteadOfWrapping() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        mixer.setMasterGain(1f);
+        int loud = mixer.addSample(constantSample((short) 30000, 1000));
+        mixer.noteOn(loud, 1f);
+        mixer.noteOn(loud, 1f);
+
+        short[] out = new short[BLOCK];
+        mixer.render(out, 0, BLOCK);
+        assertEquals(32767, out[BLOCK - 1]); // Past the 2 ms attack
+    }
+
+    @Test
+    public void attack_rampsUpFromSilence() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        mixer.setMasterGain(1f);
+        mixer.setEnvelope(2f, 0f, 1f, 300f); // 96 samples
+        mixer.noteOn(mixer.addSample(constantSample((short) 10_000, 1000)), 1f);
+
+        short[] out = new short[BLOCK];
+        mixer.render(out, 0, BLOCK);
+        assertTrue(out[0] < 200);
+        assertEquals(5000, out[47], 150);
+        assertEquals(10_000, out[120], 2);
+    }
+
+    @Test
+    public void noteOff_releasesOnlyThatNote() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        mixer.setEnvelope(0f, 0f, 1f, 10f); // Full release in 480 samples
+        int sample = mixer.addSample(constantSample((short) 1000, RATE));
+        mixer.noteOn(sample, 60, 1f);
+        mixer.noteOn(sample, 64, 1f);
+
+        short[] out = new short[BLOCK];
+        mixer.render(out, 0, BLOCK);
+        mixer.noteOff(60);
+        for (int i = 0; i < 3; i++) {
+            mixer.render(out, 0, BLOCK);
+        }
+        assertEquals(1, mixer.getActiveVoiceCount());
+        assertEquals(800, out[BLOCK - 1], 2); // Remaining voice at master gain 0.8
+    }
+
+    @Test
+    public void noteOff_fadesInsteadOfCutting() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        mixer.setMasterGain(1f);
+        mixer.setEnvelope(0f, 0f, 1f, 10f);
+        mixer.noteOn(mixer.addSample(constantSample((short) 10_000, RATE)), 60, 1f);
+
+        short[] out = new short[BLOCK];
+        mixer.render(out, 0, BLOCK);
+        mixer.noteOff(60);
+        mixer.render(out, 0, BLOCK);
+        for (int i = 1; i < BLOCK; i++) {
+            assertTrue(out[i] <= out[i - 1]);
+        }
+        assertEquals(10_000 * (1 - 96.0 / 480), out[95], 30);
+    }
+
+    @Test
+    public void noteOn_retriggerDampsPreviousVoiceOfSameNote() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        int sample = mixer.addSample(constantSample((short) 1000, RATE));
+        short[] out = new short[BLOCK];
+        mixer.noteOn(sample, 60, 1f);
+        mixer.render(out, 0, BLOCK);
+        mixer.noteOn(sample, 60, 1f);
+        for (int i = 0; i < 10; i++) {
+            mixer.render(out, 0, BLOCK); // 40 ms, past the 30 ms retrigger release
+        }
+        assertEquals(1, mixer.getActiveVoiceCount());
+    }
+
+    @Test
+    public void noteOn_stealsQuietestReleasingVoiceFirst() {
+        PcmMixer mixer = new PcmMixer(3, BLOCK, RATE);
+        mixer.setMasterGain(1f);
+        mixer.setEnvelope(0f, 0f, 1f, 1000f);
+        int quiet = mixer.addSample(constantSample((short) 100, RATE));
+        int held = mixer.addSample(constantSample((short) 1000, RATE));
+        int loud = mixer.addSample(constantSample((short) 10_000, RATE));
+        short[] out = new short[BLOCK];
+
+        mixer.noteOn(held, 60, 1f); // Oldest, still held
+        mixer.render(out, 0, BLOCK);
+        mixer.noteOn(quiet, 62, 1f);
+        mixer.noteOn(quiet, 64, 1f);
+        mixer.render(out, 0, BLOCK);
+        mixer.noteOff(62);
+        mixer.render(out, 0, BLOCK);
+        mixer.noteOff(64);
+        mixer.render(out, 0, BLOCK); // Note 64 has released for less time, so 62 is quieter
+
+        mixer.noteOn(loud, 67, 1f);
+        mixer.render(out, 0, BLOCK);
+        assertEquals(1, mixer.getVoicesStolen());
+        assertEquals(3, mixer.getActiveVoiceCount());
+        // Held voice survives; its 1000 is still part of the mix
+        assertTrue(out[BLOCK - 1] > 10_000 + 1000);
+
+        mixer.noteOff(64);
+        mixer.noteOff(67);
+        mixer.noteOn(loud, 69, 1f); // Everything but note 60 is releasing now
+        mixer.render(out, 0, BLOCK);
+        assertEquals(2, mixer.getVoicesStolen());
+    }
+
+    @Test
+    public void noteOn_stealsOldestVoiceWhenPoolIsFull() {
+        PcmMixer mixer = new PcmMixer(2, BLOCK, RATE);
+        int sample = mixer.addSample(constantSample((short) 100, 48_000));
+        short[] out = new short[BLOCK];
+        for (int i = 0; i < 5; i++) {
+            mixer.noteOn(sample, 1f);
+            mixer.render(out, 0, BLOCK);
+        }
+        assertEquals(2, mixer.getActiveVoiceCount());
+    }
+
+    @Test
+    public void noteOnAt_startsOnTheScheduledFrame() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        mixer.setMasterGain(1f);
+        mixer.setEnvelope(0f, 0f, 1f, 300f);
+        int sample = mixer.addSample(constantSample((short) 1000, RATE));
+        short[] out = new short[BLOCK];
+
+        long blockNanos = BLOCK * 1_000_000_000L / RATE; // 4 ms
+        long t0 = 1_000_000_000L;
+        mixer.render(out, 0, BLOCK, t0);
+
+        // 2.5 blocks after the first one: frame 480, i.e. offset 96 in the third block
+        mixer.noteOnAt(sample, 60, 1f, 1f, t0 + blockNanos * 5 / 2);
+        mixer.render(out, 0, BLOCK, t0 + blockNanos);
+        assertEquals(0, out[BLOCK - 1]);
+        mixer.render(out, 0, BLOCK, t0 + blockNanos * 2);
+        assertEquals(0, out[95]);
+        assertEquals(1000, out[96], 2);
+    }
+
+    @Test
+    public void noteOnAt_scheduledRetriggerKeepsOldVoiceUntilOnset() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        mixer.setMasterGain(1f);
+        mixer.setEnvelope(0f, 0f, 1f, 300f);
+        int sample = mixer.addSample(constantSample((short) 1000, RATE));
+        short[] out = new short[BLOCK];
+
+        long blockNanos = BLOCK * 1_000_000_000L / RATE; // 4 ms
+        long t0 = 1_000_000_000L;
+        mixer.noteOn(sample, 60, 1f);
+        mixer.render(out, 0, BLOCK, t0);
+
+        // Same note queued 50 ms ahead, like the demo lookahead: frame 2400, offset 96 of block 12
+        mixer.noteOnAt(sample, 60, 1f, 1f, t0 + 50_000_000L);
+        for (int block = 1; block < 12; block++) {
+            mixer.render(out, 0, BLOCK, t0 + blockNanos * block);
+            for (int i = 0; i < BLOCK; i++) {
+                assertEquals("block " + block + " frame " + i, 1000, out[i], 2);
+            }
+        }
+        mixer.render(out, 0, BLOCK, t0 + blockNanos * 12);
+        assertEquals(1000, out[95], 2);
+        // New voice at full level plus the old one starting its short release
+        assertEquals(2000, out[96], 10);
+        assertTrue(out[BLOCK - 1] < 2000 && out[BLOCK - 1] > 1000);
+        for (int i = 0; i < 10; i++) {
+            mixer.render(out, 0, BLOCK, t0 + blockNanos * (13 + i)); // Past the 30 ms retrigger release
+        }
+        assertEquals(1000, out[BLOCK - 1], 2);
+        assertEquals(1, mixer.getActiveVoiceCount());
+    }
+
+    @Test
+    public void noteOnAt_pastTimeStartsAtNextBlock() {
+        PcmMixer mixer = new PcmMixer(4, BLOCK, RATE);
+        mixer.setMasterGain(1f);
+        mixer.setEnvelope(0f, 0f, 1f, 300f);
+        int sample = mixer.addSample(constantSample((short) 1000, RATE));
+        short[] out = new short[BLOCK];
+
+        mixer.render(out, 0, BLOCK, 1_000_000_000L);
+        mixer.noteOnAt(sample, 60, 1f, 1f, 0L);
+        mixer.render(out, 0, BLOCK, 1_004_000_000L);
+        assertEquals(1000, out[0], 2);
+    }
+
+    @Test
+    public void noteOn_rejectsUnknownSample() {
+        PcmMixer mixer = new PcmMixer(2, BLOCK, RATE);
+        assertFalse(mixer.noteOn(0, 1f));
+    }
+
+    @Test
+    public void noteOn_fromManyThreadsIsNotLost() throws InterruptedException {
+        PcmMixer mixer = new PcmMixer(64, BLOCK, RATE);
+        int sample = mixer.addSample(constantSample((short) 1, 48_000));
+
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread(() -> {
+                for (int i = 0; i < 8; i++) {
+                    assertTrue(mixer.noteOn(sample, 1f));
+                }
+            });
+            producers[t].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        mixer.render(new short[BLOCK], 0, BLOCK);
+        assertEquals(32, mixer.getActiveVoiceCount());
+    }
+
+    @Test
+    public void render_isAllocationFree() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        org.junit.Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        PcmMixer mixer = new PcmMixer(16, BLOCK, RATE);
+        int sample = mixer.addSample(constantSample((short) 500, 4800));
+        short[] out = new short[BLOCK];
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up so the JIT has compiled the loop before measuring
+        for (int i = 0; i < 10; i++) {
+            renderBlocks(mixer, sample, out, 20_000);
+        }
+
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        long baseline = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        renderBlocks(mixer, sample, out, 20_000);
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - baseline;
+
+        assertEquals("Bytes allocated while rendering", 0, allocated);
+    }
+
+    private static void renderBlocks(PcmMixer mixer, int sample, short[] out, int blocks) {
+        for (int i = 0; i < blocks; i++) {
+            if (i % 8 == 0) {
+                mixer.noteOn(sample, 0.5f);
+            }
+            mixer.render(out, 0, BLOCK);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.dstteam.zhuoctopus.airvirtuoso.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ResamplerTest {
+
+    private static final int RATE = 48_000;
+
+    private static short[] sine(double frequency, int length, double amplitude) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * i / RATE));
+        }
+        return samples;
+    }
+
+    /**
+     * RMS difference against an ideal sine, ignoring the kernel's edge transients.
+     */
+    private static double rmsError(short[] actual, double frequency, double amplitude) {
+        double sum = 0;
+        int count = 0;
+        for (int i = 64; i < actual.length - 64; i++) {
+            double expected = amplitude * Math.sin(2 * Math.PI * frequency * i / RATE);
+            double diff = actual[i] - expected;
+            sum += diff * diff;
+            count++;
+        }
+        return Math.sqrt(sum / count);
+    }
+
+    @Test
+    public void pitchShift_sharpensSineByOneSemitone() {
+        double a4 = 440.0;
+        short[] shifted = Resampler.pitchShift(sine(a4, RATE, 10_000), 1);
+
+        double aSharp4 = a4 * Math.pow(2.0, 1 / 12.0);
+        assertEquals((int) (RATE / Math.pow(2.0, 1 / 12.0)), shifted.length);
+        assertTrue(rmsError(shifted, aSharp4, 10_000) < 10_000 * 0.005);
+    }
+
+    @Test
+    public void pitchShift_flattensSineByOneSemitone() {
+        short[] shifted = Resampler.pitchShift(sine(523.25, RATE, 10_000), -1);
+        assertTrue(rmsError(shifted, 523.25 * Math.pow(2.0, -1 / 12.0), 10_000) < 10_000 * 0.005);
+    }
+
+    @Test
+    public void pitchShift_upSuppressesContentAboveNewNyquist() {
+        // An octave up, 16 kHz would land at 32 kHz and fold back to 16 kHz
+        short[] shifted = Resampler.pitchShift(sine(16_000, RATE, 10_000), 12);
+        double rms = rmsError(shifted, 0, 0);
+        assertTrue("Aliased energy " + rms, rms < 10_000 * 0.01);
+    }
+
+    @Test
+    public void convertRate_keepsPitch() {
+        short[] input = new short[44_100];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (short) Math.round(10_000 * Math.sin(2 * Math.PI * 1000.0 * i / 44_100));
+        }
+        short[] output = Resampler.convertRate(input, 44_100, RATE);
+        assertEquals(RATE, output.length, 1);
+        assertTrue(rmsError(output, 1000.0, 10_000) < 10_000 * 0.005);
+    }
+}
@@ -0,0 +1,89 @@
+package com.dstteam.zhuoctopus.airvirtuoso.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.*;
+
+public class SampleCacheTest {
+
+    private static final int NOTES = 128;
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("samples", ".pcm");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static short[][] samples() {
+        short[][] samples = new short[NOTES][];
+        samples[60] = new short[] { 1, -2, 3, Short.MAX_VALUE, Short.MIN_VALUE };
+        samples[61] = new short[0];
+        samples[72] = new short[1000];
+        for (int i = 0; i < samples[72].length; i++) {
+            samples[72][i] = (short) (i * 7);
+        }
+        return samples;
+    }
+
+    @Test
+    public void load_returnsWrittenSamples() throws IOException {
+        File file = tempFile();
+        short[][] written = samples();
+        new SampleCache(file, 48_000, 42L).write(written);
+
+        ShortBuffer[] loaded = new SampleCache(file, 48_000, 42L).load(NOTES);
+        assertNotNull(loaded);
+        for (int note = 0; note < NOTES; note++) {
+            if (written[note] == null) {
+                assertNull(loaded[note]);
+                continue;
+            }
+            assertEquals(written[note].length, loaded[note].limit());
+            for (int i = 0; i < written[note].length; i++) {
+                assertEquals(written[note][i], loaded[note].get(i));
+            }
+        }
+    }
+
+    @Test
+    public void load_rejectsStaleCache() throws IOException {
+        File file = tempFile();
+        new SampleCache(file, 48_000, 42L).write(samples());
+
+        assertNull(new SampleCache(file, 44_100, 42L).load(NOTES));
+        assertNull(new SampleCache(file, 48_000, 43L).load(NOTES));
+    }
+
+    @Test
+    public void load_rejectsMissingOrTruncatedFile() throws IOException {
+        File file = tempFile();
+        assertTrue(file.delete());
+        assertNull(new SampleCache(file, 48_000, 42L).load(NOTES));
+
+        new SampleCache(file, 48_000, 42L).write(samples());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 2);
+        }
+        assertNull(new SampleCache(file, 48_000, 42L).load(NOTES));
+    }
+
+    @Test
+    public void write_replacesPreviousCache() throws IOException {
+        File file = tempFile();
+        new SampleCache(file, 48_000, 1L).write(samples());
+
+        short[][] updated = new short[NOTES][];
+        updated[64] = new short[] { 5, 6 };
+        new SampleCache(file, 48_000, 2L).write(updated);
+
+        ShortBuffer[] loaded = new SampleCache(file, 48_000, 2L).load(NOTES);
+        assertNotNull(loaded);
+        assertNull(loaded[60]);
+        assertEquals(6, loaded[64].get(1));
+    }
+}
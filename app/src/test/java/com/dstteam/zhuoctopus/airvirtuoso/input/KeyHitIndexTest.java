@@ -0,0 +1,90 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KeyHitIndexTest {
+
+    private static final float WHITE_WIDTH = 20f;
+    private static final float WHITE_HEIGHT = 120f;
+    private static final float BLACK_WIDTH = 12f;
+    private static final float BLACK_HEIGHT = 75f;
+
+    // Full 88-key layout: A0..C8, 52 white keys and 36 black keys
+    private final float[] left = new float[88];
+    private final float[] top = new float[88];
+    private final float[] right = new float[88];
+    private final float[] bottom = new float[88];
+    private final boolean[] black = new boolean[88];
+
+    private void buildPianoLayout() {
+        int white = 0;
+        for (int i = 0; i < 88; i++) {
+            int pitchClass = (i + 9) % 12; // Key 0 is A0
+            boolean isBlack = pitchClass == 1 || pitchClass == 3 || pitchClass == 6 || pitchClass == 8
+                    || pitchClass == 10;
+            black[i] = isBlack;
+            if (isBlack) {
+                float center = white * WHITE_WIDTH; // Straddles the boundary of the previous white key
+                left[i] = center - BLACK_WIDTH / 2;
+                right[i] = center + BLACK_WIDTH / 2;
+                top[i] = 0;
+                bottom[i] = BLACK_HEIGHT;
+            } else {
+                left[i] = white * WHITE_WIDTH;
+                right[i] = left[i] + WHITE_WIDTH;
+                top[i] = 0;
+                bottom[i] = WHITE_HEIGHT;
+                white++;
+            }
+        }
+    }
+
+    // Reference: black keys first, then white keys, each by linear scan
+    private int linearFind(float x, float y) {
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < 88; i++) {
+                if (black[i] == (pass == 0) && x >= left[i] && x < right[i] && y >= top[i] && y < bottom[i]) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void find_matchesLinearScanOn88Keys() {
+        buildPianoLayout();
+        KeyHitIndex index = new KeyHitIndex();
+        index.build(left, top, right, bottom, black, 88);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            float x = random.nextFloat() * (52 * WHITE_WIDTH + 40) - 20;
+            float y = random.nextFloat() * (WHITE_HEIGHT + 40) - 20;
+            assertEquals("x=" + x + " y=" + y, linearFind(x, y), index.find(x, y));
+        }
+    }
+
+    @Test
+    public void find_blackKeyWinsOverWhiteKey() {
+        buildPianoLayout();
+        KeyHitIndex index = new KeyHitIndex();
+        index.build(left, top, right, bottom, black, 88);
+
+        // Boundary between A0 (0) and B0 (2) is covered by A#0 (1) in the upper part
+        assertEquals(1, index.find(WHITE_WIDTH, 10f));
+        // Below the black key the white keys are hit
+        assertEquals(2, index.find(WHITE_WIDTH + 1, 100f));
+        assertEquals(0, index.find(WHITE_WIDTH - 1, 100f));
+    }
+
+    @Test
+    public void find_emptyIndexReturnsNoKey() {
+        KeyHitIndex index = new KeyHitIndex();
+        assertEquals(-1, index.find(10f, 10f));
+    }
+}
@@ -0,0 +1,76 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KeyStateTrackerTest {
+
+    private final List<String> events = new ArrayList<>();
+    private final KeyStateTracker.EdgeListener recorder = new KeyStateTracker.EdgeListener() {
+        @Override
+        public void onNoteOn(int keyIndex) {
+            events.add("on " + keyIndex);
+        }
+
+        @Override
+        public void onNoteOff(int keyIndex) {
+            events.add("off " + keyIndex);
+        }
+    };
+
+    @Test
+    public void strikeHoldRelease_reportsEdgesOnce() {
+        KeyStateTracker tracker = new KeyStateTracker();
+        tracker.resize(88);
+
+        tracker.beginFrame();
+        tracker.trigger(70);
+        tracker.trigger(70); // Second finger on the same key in the same frame
+        tracker.endFrame(recorder);
+        assertTrue(tracker.isPressed(70));
+
+        tracker.beginFrame();
+        tracker.hold(70);
+        tracker.endFrame(recorder);
+
+        tracker.beginFrame();
+        tracker.endFrame(recorder);
+        assertFalse(tracker.isPressed(70));
+
+        assertEquals(List.of("on 70", "off 70"), events);
+    }
+
+    @Test
+    public void releaseAll_releasesEveryHeldKey() {
+        KeyStateTracker tracker = new KeyStateTracker();
+        tracker.resize(88);
+
+        tracker.beginFrame();
+        tracker.trigger(3);
+        tracker.trigger(64);
+        tracker.endFrame(recorder);
+        events.clear();
+
+        tracker.releaseAll(recorder);
+        assertEquals(List.of("off 3", "off 64"), events);
+    }
+
+    @Test
+    public void resize_keepsStateForSameKeyCount() {
+        KeyStateTracker tracker = new KeyStateTracker();
+        assertTrue(tracker.resize(17));
+        tracker.beginFrame();
+        tracker.trigger(5);
+        tracker.endFrame(recorder);
+
+        assertFalse(tracker.resize(17));
+        assertTrue(tracker.isPressed(5));
+
+        tracker.hold(200); // Out of range is ignored
+        assertFalse(tracker.isPressed(200));
+    }
+}
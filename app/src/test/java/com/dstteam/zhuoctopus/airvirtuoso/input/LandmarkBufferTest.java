@@ -0,0 +1,91 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the per-frame smoothing path runs without heap allocation.
+ */
+public class LandmarkBufferTest {
+
+    private static final int FRAMES = 10_000;
+
+    @Test
+    public void smoothing_isAllocationFree() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        org.junit.Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        ViewTransform transform = new ViewTransform();
+        long threadId = Thread.currentThread().getId();
+
+        for (LandmarkFilter.Type type : LandmarkFilter.Type.values()) {
+            LandmarkBuffer buffer = new LandmarkBuffer(type);
+
+            // Warm up so the JIT has compiled the loop before measuring
+            runFrames(buffer, transform, FRAMES);
+
+            // Cost of the measurement itself
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            long baseline = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+            before = threadBean.getThreadAllocatedBytes(threadId);
+            runFrames(buffer, transform, FRAMES);
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - before - baseline;
+
+            assertEquals(type + " bytes allocated over " + FRAMES + " frames", 0, allocated);
+        }
+    }
+
+    @Test
+    public void smoothing_convergesAndClearsMissingHands() {
+        LandmarkBuffer buffer = new LandmarkBuffer(LandmarkFilter.Type.EMA);
+
+        buffer.beginFrame(0);
+        buffer.update(0, 8, 100f, 200f);
+        buffer.endFrame();
+        assertEquals(100f, buffer.getX(0, 8), 0.001f);
+
+        buffer.beginFrame(33);
+        buffer.update(0, 8, 200f, 200f);
+        buffer.endFrame();
+        assertEquals(150f, buffer.getX(0, 8), 0.001f); // alpha 0.5
+
+        // Hand 0 missing in this frame, hand 1 present
+        buffer.beginFrame(66);
+        buffer.update(1, 8, 10f, 10f);
+        buffer.endFrame();
+        assertFalse(buffer.has(0, 8));
+        assertTrue(buffer.has(1, 8));
+    }
+
+    @Test
+    public void transform_matchesCenterCropWithSpread() {
+        ViewTransform transform = new ViewTransform();
+        // 1080x2400 view showing a 540x960 image: scale 2.5, horizontal crop of 135 px each side
+        transform.configure(1080, 2400, 540, 960, 1.1f, 1.0f);
+
+        float expectedX = ((0.25f * 540 * 2.5f - 135f) - 540f) * 1.1f + 540f;
+        assertEquals(expectedX, transform.mapX(0.25f), 0.01f);
+        assertEquals(0.5f * 2400, transform.mapY(0.5f), 0.01f);
+    }
+
+    private static void runFrames(LandmarkBuffer buffer, ViewTransform transform, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            transform.configure(1080, 2400, 540, 960, 1.1f, 1.0f);
+            buffer.beginFrame(frame * 33L);
+            for (int hand = 0; hand < LandmarkBuffer.MAX_HANDS; hand++) {
+                for (int landmark = 0; landmark < LandmarkBuffer.LANDMARKS_PER_HAND; landmark++) {
+                    float xNorm = (landmark + frame % 7) / 30f;
+                    float yNorm = (hand + 1) / 3f;
+                    buffer.update(hand, landmark, transform.mapX(xNorm), transform.mapY(yNorm));
+                }
+            }
+            buffer.endFrame();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays a recorded-style fingertip trace (rest, fast strike, rest) with landmark noise
+ * through each filter and compares lag during the strike with jitter at rest.
+ */
+public class LandmarkFilterReplayTest {
+
+    private static final float FRAME_DT = 1f / 30f;
+    private static final int REST_FRAMES = 60;
+    private static final int STRIKE_FRAMES = 5; // About 170 ms to travel the stroke
+    private static final float STROKE_PX = 250f;
+    private static final float NOISE_STD_PX = 3f;
+
+    private static class Score {
+        float lag; // Mean absolute error while moving, px
+        float jitter; // RMS frame-to-frame movement while resting, px
+    }
+
+    @Test
+    public void adaptiveFilters_lagLessThanEma() {
+        Score ema = replay(LandmarkFilter.Type.EMA);
+        Score oneEuro = replay(LandmarkFilter.Type.ONE_EURO);
+        Score kalman = replay(LandmarkFilter.Type.KALMAN);
+
+        assertTrue("One Euro lag " + oneEuro.lag + " vs EMA " + ema.lag, oneEuro.lag < ema.lag);
+        assertTrue("Kalman lag " + kalman.lag + " vs EMA " + ema.lag, kalman.lag < ema.lag);
+    }
+
+    @Test
+    public void adaptiveFilters_jitterLessThanEma() {
+        Score ema = replay(LandmarkFilter.Type.EMA);
+        Score oneEuro = replay(LandmarkFilter.Type.ONE_EURO);
+        Score kalman = replay(LandmarkFilter.Type.KALMAN);
+
+        assertTrue("One Euro jitter " + oneEuro.jitter + " vs EMA " + ema.jitter, oneEuro.jitter < ema.jitter);
+        assertTrue("Kalman jitter " + kalman.jitter + " vs EMA " + ema.jitter, kalman.jitter < ema.jitter);
+    }
+
+    private static Score replay(LandmarkFilter.Type type) {
+        LandmarkFilter filter = type.create(1);
+        Random random = new Random(42);
+
+        int totalFrames = REST_FRAMES * 2 + STRIKE_FRAMES + REST_FRAMES;
+        float lagSum = 0;
+        int lagSamples = 0;
+        float jitterSum = 0;
+        int jitterSamples = 0;
+        float previous = 0;
+
+        for (int frame = 0; frame < totalFrames; frame++) {
+            float truth = truePosition(frame);
+            float measured = truth + (float) random.nextGaussian() * NOISE_STD_PX;
+            float filtered = filter.filter(0, measured, FRAME_DT);
+
+            boolean moving = frame >= REST_FRAMES && frame < REST_FRAMES + STRIKE_FRAMES + 2;
+            // Skip the first frames of each rest period so settling is not counted as jitter
+            boolean settled = (frame > 10 && frame < REST_FRAMES)
+                    || frame > REST_FRAMES + STRIKE_FRAMES + 20;
+            if (moving) {
+                lagSum += Math.abs(filtered - truth);
+                lagSamples++;
+            } else if (settled) {
+                float step = filtered - previous;
+                jitterSum += step * step;
+                jitterSamples++;
+            }
+            previous = filtered;
+        }
+
+        Score score = new Score();
+        score.lag = lagSum / lagSamples;
+        score.jitter = (float) Math.sqrt(jitterSum / jitterSamples);
+        return score;
+    }
+
+    // Smooth downward stroke between two rest positions
+    private static float truePosition(int frame) {
+        if (frame < REST_FRAMES)
+            return 0;
+        if (frame >= REST_FRAMES + STRIKE_FRAMES)
+            return STROKE_PX;
+        float t = (frame - REST_FRAMES) / (float) STRIKE_FRAMES;
+        return STROKE_PX * (1 - (float) Math.cos(Math.PI * t)) / 2f;
+    }
+}
@@ -0,0 +1,77 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StrikePredictorTest {
+
+    private static final long FRAME_MS = 33;
+    private static final float MIN_STRIKE_SPEED = 1000f; // px/s
+
+    @Test
+    public void steadyStrike_isProjectedAhead() {
+        StrikePredictor predictor = new StrikePredictor(1);
+        // Falling at 2000 px/s (66 px per frame)
+        for (int frame = 0; frame < 4; frame++) {
+            predictor.addSample(0, 100f, frame * 66f, frame * FRAME_MS);
+        }
+
+        assertTrue(predictor.predict(0, 50, MIN_STRIKE_SPEED));
+        assertEquals(100f, predictor.getPredictedX(), 1f);
+        assertEquals(3 * 66f + 2000f * 0.05f, predictor.getPredictedY(), 5f);
+    }
+
+    @Test
+    public void hoveringFinger_isNotProjected() {
+        StrikePredictor predictor = new StrikePredictor(1);
+        Random random = new Random(7);
+        for (int frame = 0; frame < 60; frame++) {
+            predictor.addSample(0, 100f + (float) random.nextGaussian() * 3f,
+                    500f + (float) random.nextGaussian() * 3f, frame * FRAME_MS);
+            assertFalse("Frame " + frame, predictor.predict(0, 50, MIN_STRIKE_SPEED));
+        }
+    }
+
+    @Test
+    public void upwardMotion_isNotProjected() {
+        StrikePredictor predictor = new StrikePredictor(1);
+        for (int frame = 0; frame < 4; frame++) {
+            predictor.addSample(0, 100f, 800f - frame * 66f, frame * FRAME_MS);
+        }
+        assertFalse(predictor.predict(0, 50, MIN_STRIKE_SPEED));
+    }
+
+    @Test
+    public void erraticMotion_failsConfidenceGate() {
+        StrikePredictor predictor = new StrikePredictor(1);
+        // Downward on average but zig-zagging sideways, so one-step predictions miss badly
+        float[] xs = { 100f, 220f, 80f, 240f, 60f, 260f };
+        for (int frame = 0; frame < xs.length; frame++) {
+            predictor.addSample(0, xs[frame], frame * 66f, frame * FRAME_MS);
+        }
+        assertFalse(predictor.predict(0, 50, MIN_STRIKE_SPEED));
+    }
+
+    @Test
+    public void firstThreeSamples_areNotProjected() {
+        StrikePredictor predictor = new StrikePredictor(1);
+        // A tracking glitch right after a reset: fast and downward, but never checked
+        predictor.addSample(0, 100f, 100f, 0);
+        predictor.addSample(0, 100f, 140f, FRAME_MS);
+        predictor.addSample(0, 100f, 260f, 2 * FRAME_MS);
+        assertFalse(predictor.predict(0, 50, MIN_STRIKE_SPEED));
+    }
+
+    @Test
+    public void sampleGap_restartsHistory() {
+        StrikePredictor predictor = new StrikePredictor(1);
+        for (int frame = 0; frame < 3; frame++) {
+            predictor.addSample(0, 100f, frame * 66f, frame * FRAME_MS);
+        }
+        predictor.addSample(0, 100f, 400f, 1000);
+        assertFalse(predictor.predict(0, 50, MIN_STRIKE_SPEED));
+    }
+}
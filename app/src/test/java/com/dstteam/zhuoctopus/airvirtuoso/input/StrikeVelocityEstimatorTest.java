@@ -0,0 +1,79 @@
+package com.dstteam.zhuoctopus.airvirtuoso.input;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StrikeVelocityEstimatorTest {
+
+    private static final long FRAME_MS = 33;
+    private static final float HAND_SCALE = 0.15f;
+
+    /**
+     * Feed a fingertip moving at a constant rate, in hand lengths per second.
+     */
+    private static void feed(StrikeVelocityEstimator estimator, int finger, float downSpeed, float towardSpeed,
+            float handScale, int frames) {
+        for (int i = 0; i < frames; i++) {
+            float t = i * FRAME_MS / 1000f;
+            estimator.addSample(finger, 0.4f + downSpeed * handScale * t, -towardSpeed * handScale * t,
+                    handScale, i * FRAME_MS);
+        }
+    }
+
+    @Test
+    public void getVelocity_defaultsWithoutHistory() {
+        StrikeVelocityEstimator estimator = new StrikeVelocityEstimator(1);
+        assertEquals(StrikeVelocityEstimator.DEFAULT_VELOCITY, estimator.getVelocity(0));
+        estimator.addSample(0, 0.5f, 0f, HAND_SCALE, 0);
+        assertEquals(StrikeVelocityEstimator.DEFAULT_VELOCITY, estimator.getVelocity(0));
+    }
+
+    @Test
+    public void getVelocity_growsWithStrikeSpeed() {
+        StrikeVelocityEstimator estimator = new StrikeVelocityEstimator(3);
+        feed(estimator, 0, 1f, 0f, HAND_SCALE, 4);
+        feed(estimator, 1, 3f, 0f, HAND_SCALE, 4);
+        feed(estimator, 2, 10f, 0f, HAND_SCALE, 4);
+
+        int soft = estimator.getVelocity(0);
+        int medium = estimator.getVelocity(1);
+        int hard = estimator.getVelocity(2);
+        assertTrue(soft < medium);
+        assertTrue(medium < hard);
+        assertEquals(StrikeVelocityEstimator.MAX_VELOCITY, hard);
+        assertEquals(3f, estimator.getStrikeSpeed(1), 0.01f);
+    }
+
+    @Test
+    public void getVelocity_countsMotionTowardsCamera() {
+        StrikeVelocityEstimator estimator = new StrikeVelocityEstimator(2);
+        feed(estimator, 0, 0f, 3f, HAND_SCALE, 4);
+        feed(estimator, 1, 3f, 4f, HAND_SCALE, 4);
+        assertEquals(3f, estimator.getStrikeSpeed(0), 0.01f);
+        assertEquals(5f, estimator.getStrikeSpeed(1), 0.01f);
+    }
+
+    @Test
+    public void getVelocity_ignoresLiftingFinger() {
+        StrikeVelocityEstimator estimator = new StrikeVelocityEstimator(1);
+        feed(estimator, 0, -4f, -4f, HAND_SCALE, 4);
+        assertEquals(StrikeVelocityEstimator.MIN_VELOCITY, estimator.getVelocity(0));
+    }
+
+    @Test
+    public void getVelocity_independentOfDistanceToCamera() {
+        StrikeVelocityEstimator estimator = new StrikeVelocityEstimator(2);
+        feed(estimator, 0, 2f, 1f, 0.1f, 4); // Far hand: small in the image
+        feed(estimator, 1, 2f, 1f, 0.3f, 4); // Near hand
+        assertEquals(estimator.getVelocity(0), estimator.getVelocity(1));
+    }
+
+    @Test
+    public void addSample_restartsAfterTrackingGap() {
+        StrikeVelocityEstimator estimator = new StrikeVelocityEstimator(1);
+        feed(estimator, 0, 10f, 0f, HAND_SCALE, 4);
+        estimator.addSample(0, 0.5f, 0f, HAND_SCALE, 10_000);
+        assertEquals(StrikeVelocityEstimator.DEFAULT_VELOCITY, estimator.getVelocity(0));
+    }
+}
@@ -0,0 +1,120 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DemoSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long LOOKAHEAD_MS = 50;
+
+    /**
+     * Simulated clock whose sleeps overshoot by up to a few ms, like a loaded device.
+     */
+    private static class JitteryClock implements DemoScheduler.Clock {
+        final Random random = new Random(42);
+        long now = 1_000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleepUntil(long deadlineNanos) {
+            now = Math.max(now, deadlineNanos) + (long) (random.nextDouble() * 4 * MS);
+        }
+
+        void work(long maxNanos) {
+            now += (long) (random.nextDouble() * maxNanos);
+        }
+    }
+
+    private static class Recorder implements DemoScheduler.Listener {
+        final List<Long> onsets = new ArrayList<>();
+        final List<Long> callTimes = new ArrayList<>();
+        final JitteryClock clock;
+        boolean finished;
+
+        Recorder(JitteryClock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public void onNoteScheduled(int index, long onsetNanos) {
+            callTimes.add(clock.now);
+            onsets.add(onsetNanos);
+            clock.work(3 * MS); // Listener overhead, e.g. posting to the UI thread
+        }
+
+        @Override
+        public void onFinished() {
+            finished = true;
+        }
+    }
+
+    @Test
+    public void run_onsetsDoNotDriftOverLongSong() throws InterruptedException {
+        // Five minutes of notes with mixed durations
+        int[] durations = new int[500];
+        for (int i = 0; i < durations.length; i++) {
+            durations[i] = i % 3 == 0 ? 750 : 500 + (i % 5) * 25;
+        }
+        JitteryClock clock = new JitteryClock();
+        long start = clock.now;
+        Recorder recorder = new Recorder(clock);
+
+        new DemoScheduler(clock, LOOKAHEAD_MS, durations).run(0, recorder);
+
+        assertTrue(recorder.finished);
+        assertEquals(durations.length, recorder.onsets.size());
+        long idealMs = LOOKAHEAD_MS;
+        for (int i = 0; i < durations.length; i++) {
+            long onset = recorder.onsets.get(i);
+            long ideal = start + idealMs * MS;
+            assertTrue("note " + i + " off by " + (onset - ideal) / 1e6 + " ms", Math.abs(onset - ideal) < MS);
+            // Handed over early enough for the audio layer to start it on time
+            long lead = onset - recorder.callTimes.get(i);
+            assertTrue("note " + i + " lead " + lead / 1e6 + " ms", lead > 0 && lead <= LOOKAHEAD_MS * MS);
+            idealMs += durations[i];
+        }
+        assertTrue(idealMs >= 5 * 60 * 1000);
+    }
+
+    @Test
+    public void setTempo_rescalesRemainingNotes() throws InterruptedException {
+        int[] durations = new int[20];
+        Arrays.fill(durations, 500);
+        JitteryClock clock = new JitteryClock();
+        DemoScheduler scheduler = new DemoScheduler(clock, LOOKAHEAD_MS, durations);
+        Recorder recorder = new Recorder(clock) {
+            @Override
+            public void onNoteScheduled(int index, long onsetNanos) {
+                super.onNoteScheduled(index, onsetNanos);
+                if (index == 9) {
+                    scheduler.setTempo(2.0);
+                }
+            }
+        };
+
+        scheduler.run(0, recorder);
+
+        List<Long> onsets = recorder.onsets;
+        for (int i = 1; i < 10; i++) {
+            assertEquals(500 * MS, onsets.get(i) - onsets.get(i - 1), MS);
+        }
+        // The change applies from the moment note 9 was handed over, inside its lookahead,
+        // so the rest of its span is halved as well
+        long straddle = onsets.get(10) - onsets.get(9);
+        assertTrue(straddle < 250 * MS && straddle > (250 - LOOKAHEAD_MS) * MS);
+        for (int i = 11; i < 20; i++) {
+            assertEquals(250 * MS, onsets.get(i) - onsets.get(i - 1), MS);
+        }
+    }
+}
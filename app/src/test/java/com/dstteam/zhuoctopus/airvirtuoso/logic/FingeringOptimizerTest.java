@@ -0,0 +1,73 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+
+import org.junit.Test;
+
+import static com.dstteam.zhuoctopus.airvirtuoso.model.ScoreFixtures.melody;
+import static org.junit.Assert.*;
+
+public class FingeringOptimizerTest {
+
+    /**
+     * Piano finger numbers (1 = thumb) of the generated fingering.
+     */
+    private static int[] pianoFingers(Score score) {
+        int[] fingers = new int[score.size()];
+        for (int i = 0; i < fingers.length; i++) {
+            fingers[i] = 5 - score.getFinger(i);
+        }
+        return fingers;
+    }
+
+    @Test
+    public void leftHandFivePosition_usesOneFingerPerKey() {
+        Score score = FingeringOptimizer.apply(melody(500, 48, 50, 52, 53, 55, 53, 52, 50, 48));
+
+        assertArrayEquals(new int[] { 5, 4, 3, 2, 1, 2, 3, 4, 5 }, pianoFingers(score));
+    }
+
+    @Test
+    public void scale_passesThumbUnder() {
+        Score score = FingeringOptimizer.apply(melody(500, 60, 62, 64, 65, 67, 69, 71, 72));
+        int[] fingers = pianoFingers(score);
+
+        assertEquals(1, fingers[0]);
+        assertEquals(5, fingers[7]);
+        int thumbs = 0;
+        for (int i = 0; i < fingers.length; i++) {
+            if (fingers[i] == 1) {
+                thumbs++;
+            }
+            if (i > 0) {
+                assertNotEquals("same finger on two keys at " + i, fingers[i - 1], fingers[i]);
+            }
+        }
+        assertEquals(2, thumbs);
+    }
+
+    @Test
+    public void chord_usesDistinctFingersInKeyOrder() {
+        Score score = FingeringOptimizer.apply(new Score.Builder(500)
+                .chord(Score.TICKS_PER_QUARTER, 67, 60, 64)
+                .build());
+        int[] fingers = pianoFingers(score);
+
+        // Listed G, C, E: fingers follow the keys, not the listing order
+        assertTrue(fingers[1] < fingers[2]);
+        assertTrue(fingers[2] < fingers[0]);
+        assertEquals(1, fingers[1]);
+    }
+
+    @Test
+    public void apply_keepsWrittenFingeringAndIsDeterministic() {
+        Score written = new Score.Builder(500).note(60, 480, 4).note(62, 480).build();
+        assertSame(written, FingeringOptimizer.apply(written));
+
+        Score first = FingeringOptimizer.apply(melody(500, 64, 62, 60, 62, 64, 64, 64));
+        Score second = FingeringOptimizer.apply(melody(500, 64, 62, 60, 62, 64, 64, 64));
+        assertNotSame(first, second);
+        assertArrayEquals(pianoFingers(first), pianoFingers(second));
+        assertTrue(first.hasFingering());
+    }
+}
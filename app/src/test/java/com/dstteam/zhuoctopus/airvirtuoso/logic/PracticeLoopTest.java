@@ -0,0 +1,152 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PracticeLoopTest {
+
+    private static final long MS = 1_000_000L;
+
+    private static class FakeClock implements DemoScheduler.Clock {
+        long now = 1_000 * MS;
+
+        @Override
+        public long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public void sleepUntil(long deadlineNanos) {
+            now = Math.max(now, deadlineNanos) + MS;
+        }
+    }
+
+    /**
+     * Records clicks and steps, and stops the loop after a number of steps.
+     */
+    private static class Recorder implements PracticeLoop.Listener {
+        final List<Long> clicks = new ArrayList<>();
+        final List<Long> passStarts = new ArrayList<>();
+        final List<Integer> steps = new ArrayList<>();
+        final List<Long> onsets = new ArrayList<>();
+        final int stopAfter;
+
+        Recorder(int stopAfter) {
+            this.stopAfter = stopAfter;
+        }
+
+        @Override
+        public void onCountIn(int beat, int beats, long onsetNanos) {
+            clicks.add(onsetNanos);
+        }
+
+        @Override
+        public void onPassStarted(int pass, long startNanos) {
+            assertEquals(passStarts.size(), pass);
+            passStarts.add(startNanos);
+        }
+
+        @Override
+        public void onStepScheduled(int step, long onsetNanos) {
+            steps.add(step);
+            onsets.add(onsetNanos);
+            if (steps.size() == stopAfter) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Quarter = 500 ms: C D E(half) F G, with a chord on D.
+     */
+    private static Score score() {
+        int quarter = Score.TICKS_PER_QUARTER;
+        return new Score.Builder(500)
+                .note(60, quarter)
+                .chord(quarter, 50, 62)
+                .note(64, quarter * 2)
+                .note(65, quarter)
+                .note(67, quarter)
+                .build();
+    }
+
+    private static void runUntilStopped(PracticeLoop loop, Recorder recorder) {
+        try {
+            loop.run(recorder);
+            fail("The loop only ends when interrupted");
+        } catch (InterruptedException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void timeline_isComputedOncePerTempo() {
+        PracticeLoop loop = new PracticeLoop(new FakeClock(), 50, score(), 1, 4, 4);
+
+        long[] normal = loop.getTimeline(100);
+        assertArrayEquals(new long[] { 0, 500 * MS, 1500 * MS, 2000 * MS }, normal);
+        assertSame(normal, loop.getTimeline(100));
+        assertArrayEquals(new long[] { 0, 1000 * MS, 3000 * MS, 4000 * MS }, loop.getTimeline(50));
+        assertEquals(1000 * MS, loop.getTimeline(150)[2]);
+    }
+
+    @Test
+    public void run_countsInThenRepeatsSection() {
+        FakeClock clock = new FakeClock();
+        long start = clock.now;
+        PracticeLoop loop = new PracticeLoop(clock, 50, score(), 1, 4, 4);
+        Recorder recorder = new Recorder(7);
+
+        runUntilStopped(loop, recorder);
+
+        // Four clicks a quarter apart, then the section starts on the next beat
+        assertEquals(4, recorder.clicks.size());
+        long first = start + 50 * MS;
+        for (int beat = 0; beat < 4; beat++) {
+            assertEquals(first + beat * 500 * MS, (long) recorder.clicks.get(beat));
+        }
+        long sectionStart = first + 4 * 500 * MS;
+        assertEquals(List.of(1, 2, 3, 1, 2, 3, 1), recorder.steps);
+        long[] expected = { 0, 500, 1500, 2000, 2500, 3500, 4000 };
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(sectionStart + expected[i] * MS, (long) recorder.onsets.get(i));
+        }
+        assertEquals(List.of(sectionStart, sectionStart + 2000 * MS, sectionStart + 4000 * MS), recorder.passStarts);
+    }
+
+    @Test
+    public void setTempoPercent_isClampedAndAppliesToLaterSteps() {
+        FakeClock clock = new FakeClock();
+        PracticeLoop loop = new PracticeLoop(clock, 50, score(), 0, 5, 0);
+        loop.setTempoPercent(10);
+        assertEquals(PracticeLoop.MIN_TEMPO_PERCENT, loop.getTempoPercent());
+        loop.setTempoPercent(100);
+
+        Recorder recorder = new Recorder(6) {
+            @Override
+            public void onStepScheduled(int step, long onsetNanos) {
+                super.onStepScheduled(step, onsetNanos);
+                if (step == 2) {
+                    loop.setTempoPercent(200); // Clamped to 150
+                }
+            }
+        };
+        runUntilStopped(loop, recorder);
+
+        List<Long> onsets = recorder.onsets;
+        assertEquals(500 * MS, onsets.get(1) - onsets.get(0));
+        // Step 3 is two quarters after step 2; the change is applied inside the lookahead
+        long straddle = onsets.get(3) - onsets.get(2);
+        assertTrue(straddle < 1000 * MS && straddle > 600 * MS);
+        assertEquals(333 * MS, onsets.get(4) - onsets.get(3), MS);
+        // Restart after the last step, a quarter later at the new tempo
+        assertEquals(333 * MS, onsets.get(5) - onsets.get(4), MS);
+        assertEquals(0, (int) recorder.steps.get(5));
+    }
+}
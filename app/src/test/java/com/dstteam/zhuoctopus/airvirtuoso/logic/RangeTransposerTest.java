@@ -0,0 +1,74 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+import com.dstteam.zhuoctopus.airvirtuoso.util.Keyboard;
+
+import org.junit.Test;
+
+import static com.dstteam.zhuoctopus.airvirtuoso.model.ScoreFixtures.melody;
+import static org.junit.Assert.*;
+
+public class RangeTransposerTest {
+
+    @Test
+    public void playableScore_isLeftAlone() {
+        Score score = melody(500, 60, 62, 64, 65, 67);
+
+        assertEquals(0, RangeTransposer.bestShift(score));
+        assertSame(score, score.transpose(0));
+    }
+
+    @Test
+    public void highOctave_movesDownByOctaves() {
+        // C major melody read as octave 7
+        Score score = melody(500, 96, 98, 100, 101, 103, 101, 100, 98, 96);
+
+        // C5-G5 fits as well as C4-G4 and is the smaller move
+        assertEquals(-24, RangeTransposer.bestShift(score));
+        Score fitted = score.transpose(-24);
+        assertEquals(72, fitted.getMidi(0));
+        assertEquals(79, fitted.getMidi(4));
+        assertEquals(96, score.getMidi(0));
+    }
+
+    @Test
+    public void blackKeys_pickSemitoneShift() {
+        // G major with F#; only a key change puts every note on a white key
+        Score score = melody(500, 67, 69, 71, 72, 74, 76, 78, 79);
+
+        int shift = RangeTransposer.bestShift(score);
+        assertTrue(shift % 12 != 0);
+        Score fitted = score.transpose(shift);
+        for (int i = 0; i < fitted.size(); i++) {
+            assertTrue("note " + i, Keyboard.isPlayable(fitted.getMidi(i)));
+        }
+    }
+
+    @Test
+    public void transpose_buildsChordMasksOfNewScore() {
+        Score score = new Score.Builder(500)
+                .chord(Score.TICKS_PER_QUARTER, 48, 64)
+                .note(30, Score.TICKS_PER_QUARTER)
+                .build();
+
+        Score transposed = score.transpose(12);
+
+        assertTrue(transposed.stepContains(0, 60));
+        assertTrue(transposed.stepContains(0, 76));
+        assertFalse(transposed.stepContains(0, 64));
+        assertTrue(transposed.stepContains(1, 42));
+        assertEquals(0, transposed.getStepMask(1, 1));
+        // The original keeps its notes and masks
+        assertEquals(48, score.getMidi(0));
+        assertTrue(score.stepContains(0, 64));
+    }
+
+    @Test
+    public void bestShift_keepsNotesInMidiRange() {
+        // Extreme pitches: only shifts within MIDI range are considered
+        Score score = melody(500, 0, 127);
+
+        int shift = RangeTransposer.bestShift(score);
+        assertEquals(0, shift);
+    }
+}
@@ -0,0 +1,106 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+
+import org.junit.Test;
+
+import static com.dstteam.zhuoctopus.airvirtuoso.model.ScoreFixtures.melody;
+import static org.junit.Assert.*;
+
+public class ScoreFollowerTest {
+
+    private static ScoreFollower follow(Score score) {
+        ScoreFollower follower = new ScoreFollower(ScoreFollower.DEFAULT_BAND_WIDTH);
+        follower.reset(score);
+        return follower;
+    }
+
+    @Test
+    public void exactPlaying_advancesOneStepPerNote() {
+        int[] song = { 60, 60, 67, 67, 69, 69, 67 };
+        ScoreFollower follower = follow(melody(500, song));
+
+        assertEquals(-1, follower.getPosition());
+        for (int i = 0; i < song.length; i++) {
+            assertEquals(i, follower.onNote(song[i]));
+        }
+    }
+
+    @Test
+    public void extraWrongNote_doesNotMove() {
+        ScoreFollower follower = follow(melody(500, 60, 62, 64, 65));
+        follower.onNote(60);
+
+        assertEquals(0, follower.onNote(71));
+        assertEquals(0, follower.onNote(70));
+        assertEquals(1, follower.onNote(62));
+        assertEquals(2, follower.onNote(64));
+    }
+
+    @Test
+    public void repeatedNote_staysOnStep() {
+        ScoreFollower follower = follow(melody(500, 60, 62, 64));
+        follower.onNote(60);
+        follower.onNote(62);
+
+        assertEquals(1, follower.onNote(62));
+        assertEquals(1, follower.onNote(62));
+        assertEquals(2, follower.onNote(64));
+    }
+
+    @Test
+    public void skippedNote_isRecovered() {
+        ScoreFollower follower = follow(melody(500, 60, 62, 64, 65, 67, 69, 71));
+        follower.onNote(60);
+
+        // One forgotten note: the next one is recognised at once
+        assertEquals(2, follower.onNote(64));
+        // Two forgotten notes: confirmed by the note after
+        int afterJump = follower.onNote(69);
+        assertTrue(afterJump == 2 || afterJump == 5);
+        assertEquals(6, follower.onNote(71));
+    }
+
+    @Test
+    public void chordMembers_alignToOneStep() {
+        Score score = new Score.Builder(500)
+                .note(60, Score.TICKS_PER_QUARTER)
+                .chord(Score.TICKS_PER_QUARTER, 48, 64, 67)
+                .note(69, Score.TICKS_PER_QUARTER)
+                .build();
+        ScoreFollower follower = follow(score);
+
+        assertEquals(0, follower.onNote(60));
+        assertEquals(1, follower.onNote(67));
+        assertEquals(1, follower.onNote(48));
+        assertEquals(1, follower.onNote(64));
+        assertEquals(2, follower.onNote(69));
+    }
+
+    @Test
+    public void longScore_followsThroughNarrowBand() {
+        int[] song = new int[2000];
+        for (int i = 0; i < song.length; i++) {
+            song[i] = 48 + (i * 7) % 24;
+        }
+        ScoreFollower follower = new ScoreFollower(6);
+        follower.reset(melody(500, song));
+
+        for (int i = 0; i < song.length; i++) {
+            if (i % 100 == 50) {
+                follower.onNote(127); // Stray note now and then
+            }
+            assertEquals(i, follower.onNote(song[i]));
+        }
+    }
+
+    @Test
+    public void seek_restartsFromStep() {
+        ScoreFollower follower = follow(melody(500, 60, 62, 64, 65, 67));
+        follower.seek(3);
+
+        assertEquals(2, follower.getPosition());
+        assertEquals(3, follower.onNote(65));
+        assertEquals(4, follower.onNote(67));
+    }
+}
@@ -0,0 +1,245 @@
+package com.dstteam.zhuoctopus.airvirtuoso.logic;
+
+import com.dstteam.zhuoctopus.airvirtuoso.model.Note;
+import com.dstteam.zhuoctopus.airvirtuoso.model.Score;
+import com.dstteam.zhuoctopus.airvirtuoso.model.Song;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SheetMusicEngineTest {
+
+    private static class RecordingListener implements SheetMusicEngine.SheetMusicListener {
+        final CountDownLatch complete = new CountDownLatch(1);
+        final AtomicReference<String> error = new AtomicReference<>();
+        int lastProgress = 0;
+
+        @Override
+        public void onNoteCorrect(Note note, int progress, int total) {
+        }
+
+        @Override
+        public void onNoteIncorrect(Note expected, int playedMidi) {
+        }
+
+        @Override
+        public void onSongComplete() {
+            complete.countDown();
+        }
+
+        @Override
+        public void onProgressChanged(SheetMusicEngine.Snapshot snapshot) {
+            // Only the engine thread calls this, so progress can only move forward here
+            if (snapshot.getProgress() < lastProgress) {
+                error.set("progress went back from " + lastProgress + " to " + snapshot.getProgress());
+            }
+            lastProgress = snapshot.getProgress();
+        }
+    }
+
+    @Test
+    public void commandsFromSeveralThreads_applyInOrderPerSender() throws Exception {
+        SheetMusicEngine engine = new SheetMusicEngine();
+        RecordingListener listener = new RecordingListener();
+        engine.setListener(listener);
+        List<Note> notes = engine.getSnapshot().getNotes();
+
+        Thread input = new Thread(() -> {
+            for (Note note : notes) {
+                engine.checkNote(note.getFrequency());
+            }
+        });
+        Thread voice = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                engine.setDemoTempo(1.0 + (i % 3) * 0.25);
+            }
+        });
+        AtomicReference<String> readerError = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (listener.complete.getCount() > 0) {
+                SheetMusicEngine.Snapshot snapshot = engine.getSnapshot();
+                int progress = snapshot.getProgress();
+                Note current = snapshot.getCurrentNote();
+                boolean consistent = progress < snapshot.getTotalNotes()
+                        ? current == snapshot.getNotes().get(progress)
+                        : current == null;
+                if (!consistent) {
+                    readerError.set("inconsistent snapshot at " + progress);
+                }
+            }
+        });
+
+        reader.start();
+        input.start();
+        voice.start();
+        assertTrue(listener.complete.await(5, TimeUnit.SECONDS));
+        input.join();
+        voice.join();
+        reader.join();
+        engine.shutdown();
+
+        assertNull(listener.error.get());
+        assertNull(readerError.get());
+        assertEquals(notes.size(), engine.getProgress());
+        assertTrue(engine.isComplete());
+    }
+
+    @Test
+    public void snapshot_isNotChangedByLaterCommands() throws Exception {
+        SheetMusicEngine engine = new SheetMusicEngine();
+        CountDownLatch published = new CountDownLatch(2);
+        engine.setListener(new RecordingListener() {
+            @Override
+            public void onProgressChanged(SheetMusicEngine.Snapshot snapshot) {
+                published.countDown();
+            }
+        });
+        SheetMusicEngine.Snapshot before = engine.getSnapshot();
+        Note first = before.getCurrentNote();
+
+        engine.checkNote(first.getFrequency());
+        engine.loadSong(engine.getSongLibrary().size() - 1);
+        assertTrue(published.await(5, TimeUnit.SECONDS));
+        engine.shutdown();
+
+        assertEquals(0, before.getProgress());
+        assertSame(first, before.getCurrentNote());
+        assertNotSame(before.getSong(), engine.getCurrentSong());
+        assertEquals(0, engine.getProgress());
+    }
+
+    @Test
+    public void setDemoTempo_isVisibleBeforeTheEngineRunsIt() {
+        SheetMusicEngine engine = new SheetMusicEngine();
+
+        // Two quick "slower" commands each step from the value the previous one set
+        engine.setDemoTempo(engine.getDemoTempo() - 0.1);
+        engine.setDemoTempo(engine.getDemoTempo() - 0.1);
+        assertEquals(0.8, engine.getDemoTempo(), 1e-9);
+
+        engine.setDemoTempo(100);
+        assertEquals(DemoScheduler.MAX_TEMPO, engine.getDemoTempo(), 1e-9);
+        engine.shutdown();
+    }
+
+    private static final long MS = 1_000_000L;
+
+    /**
+     * C4, then a C major triad, then A4.
+     */
+    private static Song chordSong() {
+        Score score = new Score.Builder(500)
+                .note(60, Score.TICKS_PER_QUARTER)
+                .chord(Score.TICKS_PER_QUARTER, 48, 64, 67)
+                .note(69, Score.TICKS_PER_QUARTER)
+                .build();
+        return new Song("Chords", score, score);
+    }
+
+    private static final SheetMusicEngine.AutoPlayCallback SILENT = new SheetMusicEngine.AutoPlayCallback() {
+        @Override
+        public void onPlayNote(double frequency, long onsetNanos) {
+        }
+
+        @Override
+        public void onCountIn(int beat, int beats, long onsetNanos) {
+        }
+
+        @Override
+        public void onAutoDemoComplete() {
+        }
+    };
+
+    private static void drain(ScheduledExecutorService executor) throws Exception {
+        executor.submit(() -> { }).get();
+    }
+
+    @Test
+    public void chord_completesWhenAllMembersArriveWithinWindow() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        SheetMusicEngine engine = new SheetMusicEngine(executor);
+        engine.startSong(chordSong());
+        engine.setChordWindowMs(200);
+
+        engine.checkMidi(60, 0);
+        engine.checkMidi(67, 1000 * MS);
+        engine.checkMidi(48, 1050 * MS);
+        drain(executor);
+        assertEquals(1, engine.getProgress());
+        assertEquals(1, engine.getSnapshot().getStep()); // Triad half played
+
+        engine.checkMidi(64, 1150 * MS);
+        drain(executor);
+        assertEquals(4, engine.getProgress());
+        assertEquals(2, engine.getSnapshot().getStep());
+        engine.shutdown();
+    }
+
+    @Test
+    public void chord_membersOutsideWindowStartOver() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        SheetMusicEngine engine = new SheetMusicEngine(executor);
+        engine.startSong(chordSong());
+        engine.setChordWindowMs(200);
+
+        engine.checkMidi(60, 0);
+        engine.checkMidi(48, 1000 * MS);
+        engine.checkMidi(64, 1100 * MS);
+        engine.checkMidi(67, 1300 * MS); // 300 ms after the first member
+        drain(executor);
+        assertEquals(1, engine.getProgress());
+
+        // 67 restarted the chord at 1300 ms
+        engine.checkMidi(48, 1350 * MS);
+        engine.checkMidi(64, 1400 * MS);
+        drain(executor);
+        assertEquals(4, engine.getProgress());
+        engine.shutdown();
+    }
+
+    @Test
+    public void loop_scoresPlayedNotesWithinSection() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        SheetMusicEngine engine = new SheetMusicEngine(executor);
+        RecordingListener listener = new RecordingListener();
+        AtomicReference<Integer> wrong = new AtomicReference<>();
+        engine.setListener(new RecordingListener() {
+            @Override
+            public void onNoteIncorrect(Note expected, int playedMidi) {
+                wrong.set(playedMidi);
+            }
+
+            @Override
+            public void onSongComplete() {
+                listener.onSongComplete();
+            }
+        });
+        engine.startSong(chordSong());
+        engine.playLoop(1, 3, SILENT); // The triad only
+        drain(executor);
+        assertTrue(engine.isDemoPlaying());
+        assertEquals(1, engine.getProgress());
+
+        engine.checkMidi(60, 0); // Before the section
+        drain(executor);
+        assertEquals(Integer.valueOf(60), wrong.get());
+        assertEquals(1, engine.getProgress());
+
+        engine.checkMidi(48, 100 * MS);
+        engine.checkMidi(64, 110 * MS);
+        engine.checkMidi(67, 120 * MS);
+        engine.checkMidi(69, 500 * MS); // After the section: waits for the next pass
+        drain(executor);
+        assertEquals(4, engine.getProgress());
+        assertEquals(1, listener.complete.getCount());
+        engine.shutdown();
+    }
+}
@@ -0,0 +1,21 @@
+package com.dstteam.zhuoctopus.airvirtuoso.model;
+
+/**
+ * Scores shared by the tests.
+ */
+public final class ScoreFixtures {
+
+    private ScoreFixtures() {
+    }
+
+    /**
+     * Score of back-to-back quarter notes.
+     */
+    public static Score melody(int quarterMs, int... midis) {
+        Score.Builder builder = new Score.Builder(quarterMs);
+        for (int midi : midis) {
+            builder.note(midi, Score.TICKS_PER_QUARTER);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,105 @@
+package com.dstteam.zhuoctopus.airvirtuoso.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScoreTest {
+
+    @Test
+    public void builder_packsNotesBackToBack() {
+        int quarter = Score.TICKS_PER_QUARTER;
+        Score score = new Score.Builder(750)
+                .note(60, quarter, 4)
+                .note(62, quarter / 2)
+                .note(64, quarter * 2, 2)
+                .build();
+
+        assertEquals(3, score.size());
+        assertArrayEquals(new int[] { 60, 62, 64 },
+                new int[] { score.getMidi(0), score.getMidi(1), score.getMidi(2) });
+        assertArrayEquals(new int[] { 0, quarter, quarter * 3 / 2 },
+                new int[] { score.getOnsetTicks(0), score.getOnsetTicks(1), score.getOnsetTicks(2) });
+        assertEquals(Score.NO_FINGER, score.getFinger(1));
+        assertEquals(2, score.getFinger(2));
+        assertEquals(375, score.getDurationMs(1));
+        assertEquals(1125, score.getOnsetMs(2));
+        assertEquals(1500, score.getDurationMs(2));
+    }
+
+    @Test
+    public void builder_growsPastInitialCapacity() {
+        Score.Builder builder = new Score.Builder(500);
+        for (int i = 0; i < 1000; i++) {
+            builder.note(48 + i % 24, Score.TICKS_PER_QUARTER);
+        }
+        Score score = builder.build();
+
+        assertEquals(1000, score.size());
+        assertEquals(48 + 999 % 24, score.getMidi(999));
+        assertEquals(999 * Score.TICKS_PER_QUARTER, score.getOnsetTicks(999));
+    }
+
+    @Test
+    public void pitch_isSharedPerMidiNote() {
+        Score score = new Score.Builder(750).note(69, 480).note(69, 480).build();
+
+        assertSame(score.getPitch(0), score.getPitch(1));
+        assertSame(Pitch.of(69), score.getPitch(0));
+        assertEquals("A4", Pitch.of(69).getDisplayName());
+        assertEquals(440.0, Pitch.of(69).getFrequency(), 1e-9);
+        assertEquals("C#4", Pitch.of(61).getDisplayName());
+    }
+
+    @Test
+    public void pitch_parse() {
+        assertEquals(60, Pitch.parse("C", 4));
+        assertEquals(61, Pitch.parse("C#", 4));
+        assertEquals(70, Pitch.parse("Bb", 4));
+        assertEquals(57, Pitch.parse("A", 3));
+        assertEquals(-1, Pitch.parse("H", 4));
+        assertEquals(-1, Pitch.parse("C", 10));
+    }
+
+    @Test
+    public void chord_formsOneStepWithPitchMask() {
+        int quarter = Score.TICKS_PER_QUARTER;
+        Score score = new Score.Builder(600)
+                .note(60, quarter)
+                .chord(quarter * 2, 48, 64, 67, 100)
+                .note(62, quarter)
+                .build();
+
+        assertEquals(6, score.size());
+        assertEquals(3, score.getStepCount());
+        assertEquals(1, score.getStepStart(1));
+        assertEquals(4, score.getStepSize(1));
+        assertEquals(quarter, score.getStepOnsetTicks(1));
+        assertEquals(quarter * 3, score.getStepOnsetTicks(2));
+        assertEquals(quarter * 4, score.getStepOnsetTicks(3));
+        assertEquals(1L << 48, score.getStepMask(1, 0));
+        assertEquals((1L << 0) | (1L << 3) | (1L << 36), score.getStepMask(1, 1));
+        assertTrue(score.stepContains(1, 100));
+        assertFalse(score.stepContains(1, 60));
+        assertEquals(1, score.getStepOfNote(3));
+        assertEquals(2, score.getStepOfNote(5));
+        assertEquals(3, score.getStepOfNote(6));
+    }
+
+    @Test
+    public void derivedScores_doNotChangeEachOther() {
+        Score plain = new Score.Builder(500).note(60, 480).note(64, 480).build();
+        Score fingered = plain.withFingers(new byte[] { 4, 2 });
+
+        Score transposed = fingered.transpose(2);
+        assertEquals(62, transposed.getMidi(0));
+        assertEquals(4, transposed.getFinger(0));
+        assertTrue(transposed.stepContains(1, 66));
+
+        assertEquals(60, fingered.getMidi(0));
+        assertTrue(fingered.stepContains(1, 64));
+        assertFalse(fingered.stepContains(1, 66));
+        assertEquals(60, plain.getMidi(0));
+        assertEquals(Score.NO_FINGER, plain.getFinger(0));
+    }
+}
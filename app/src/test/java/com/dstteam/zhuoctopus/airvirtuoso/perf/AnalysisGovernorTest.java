@@ -0,0 +1,116 @@
+package com.dstteam.zhuoctopus.airvirtuoso.perf;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AnalysisGovernorTest {
+
+    private static final long MS = 1_000_000L;
+    private static final long BUDGET_MS = 40;
+
+    private long now = 10_000 * MS;
+    private final List<String> changes = new ArrayList<>();
+
+    private AnalysisGovernor governor() {
+        AnalysisGovernor governor = new AnalysisGovernor(BUDGET_MS, () -> now);
+        governor.setListener((width, height) -> changes.add(width + "x" + height));
+        return governor;
+    }
+
+    /**
+     * Feed one decision window of results at a latency.
+     */
+    private static void window(AnalysisGovernor governor, long latencyMs) {
+        for (int i = 0; i < AnalysisGovernor.SAMPLES_PER_DECISION; i++) {
+            governor.onInferenceLatency(latencyMs * MS);
+        }
+    }
+
+    @Test
+    public void overBudget_stepsDownResolutionOnly() {
+        AnalysisGovernor governor = governor();
+        assertEquals(960, governor.getTargetWidth());
+
+        window(governor, 60);
+        assertEquals(List.of("640x360"), changes);
+        assertEquals(1, governor.getFrameStride());
+
+        // Already at the cheapest resolution: a slower stride would not help latency
+        now += AnalysisGovernor.RESOLUTION_CHANGE_COOLDOWN_NS;
+        window(governor, 60);
+        assertEquals(2, governor.getResolutionLevel());
+        assertEquals(1, governor.getFrameStride());
+        assertEquals(1, changes.size());
+    }
+
+    @Test
+    public void headroom_stepsUpResolution() {
+        AnalysisGovernor governor = governor();
+
+        window(governor, 30); // Under budget, but not by enough
+        assertTrue(changes.isEmpty());
+        window(governor, 10);
+        assertEquals(List.of("1280x720"), changes);
+        assertEquals(0, governor.getResolutionLevel());
+    }
+
+    @Test
+    public void resolutionChanges_waitForCooldown() {
+        AnalysisGovernor governor = governor();
+        window(governor, 10);
+        assertEquals(0, governor.getResolutionLevel());
+
+        window(governor, 60);
+        assertEquals(0, governor.getResolutionLevel());
+        now += AnalysisGovernor.RESOLUTION_CHANGE_COOLDOWN_NS;
+        window(governor, 60);
+        assertEquals(1, governor.getResolutionLevel());
+        assertEquals(List.of("1280x720", "960x540"), changes);
+    }
+
+    @Test
+    public void thermalState_capsResolutionAndSetsStride() {
+        AnalysisGovernor governor = governor();
+        window(governor, 10);
+        assertEquals(0, governor.getResolutionLevel());
+
+        // Applied at once, even within the cooldown
+        governor.setThermalStatus(AnalysisGovernor.THERMAL_STATUS_MODERATE);
+        assertEquals(2, governor.getResolutionLevel());
+        assertEquals(2, governor.getFrameStride());
+        now += AnalysisGovernor.RESOLUTION_CHANGE_COOLDOWN_NS;
+        window(governor, 10);
+        assertEquals(2, governor.getResolutionLevel());
+
+        governor.setThermalStatus(AnalysisGovernor.THERMAL_STATUS_SEVERE);
+        assertEquals(3, governor.getFrameStride());
+        int processed = 0;
+        for (int i = 0; i < 9; i++) {
+            if (governor.shouldProcessFrame()) {
+                processed++;
+            }
+        }
+        assertEquals(3, processed);
+
+        governor.setThermalStatus(0);
+        assertEquals(1, governor.getFrameStride());
+        window(governor, 10);
+        assertEquals(1, governor.getResolutionLevel());
+        assertEquals(List.of("1280x720", "640x360", "960x540"), changes);
+    }
+
+    @Test
+    public void powerSaveMode_capsAtDefaultResolution() {
+        AnalysisGovernor governor = governor();
+        governor.setPowerSaveMode(true);
+        assertEquals(2, governor.getFrameStride());
+
+        window(governor, 10);
+        assertEquals(1, governor.getResolutionLevel());
+        assertTrue(changes.isEmpty());
+    }
+}
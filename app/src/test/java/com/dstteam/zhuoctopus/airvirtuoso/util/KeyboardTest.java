@@ -0,0 +1,34 @@
+package com.dstteam.zhuoctopus.airvirtuoso.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyboardTest {
+
+    @Test
+    public void keys_areWhiteKeysFromA3ToC6() {
+        assertEquals(17, Keyboard.KEY_COUNT);
+        assertEquals(57, Keyboard.getMidi(0)); // A3
+        assertEquals(84, Keyboard.getMidi(Keyboard.KEY_COUNT - 1)); // C6
+        for (int i = 0; i < Keyboard.KEY_COUNT; i++) {
+            assertFalse(Midi.isBlackKey(Keyboard.getMidi(i)));
+            assertTrue(Keyboard.isPlayable(Keyboard.getMidi(i)));
+        }
+        assertFalse(Keyboard.isPlayable(61));
+        assertFalse(Keyboard.isPlayable(55));
+    }
+
+    @Test
+    public void keyIndex_putsBlackKeysOnTheWhiteKeyBelow() {
+        assertEquals(0, Keyboard.keyIndex(57)); // A3
+        assertEquals(0, Keyboard.keyIndex(58)); // A#3 sits on A3
+        assertEquals(2, Keyboard.keyIndex(60)); // C4
+        assertEquals(2, Keyboard.keyIndex(61)); // C#4 sits on C4
+        assertEquals(9, Keyboard.keyIndex(72)); // C5
+        assertEquals(16, Keyboard.keyIndex(84)); // C6
+        assertEquals(16, Keyboard.keyIndex(85)); // C#6 sits on C6
+        assertEquals(-1, Keyboard.keyIndex(56));
+        assertEquals(-1, Keyboard.keyIndex(86));
+    }
+}
@@ -0,0 +1,40 @@
+package com.dstteam.zhuoctopus.airvirtuoso.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MidiTest {
+
+    @Test
+    public void fromFrequency_roundsToNearestNote() {
+        assertEquals(69, Midi.fromFrequency(440.0));
+        assertEquals(60, Midi.fromFrequency(261.63));
+        assertEquals(61, Midi.fromFrequency(277.18)); // C#4
+        assertEquals(57, Midi.fromFrequency(220.0 * Math.pow(2.0, 0.4 / 12.0))); // 40 cents sharp of A3
+    }
+
+    @Test
+    public void fromFrequency_rejectsOutOfRange() {
+        assertEquals(-1, Midi.fromFrequency(0));
+        assertEquals(-1, Midi.fromFrequency(-440));
+        assertEquals(-1, Midi.fromFrequency(Double.NaN));
+        assertEquals(-1, Midi.fromFrequency(20_000));
+    }
+
+    @Test
+    public void toFrequency_roundTrips() {
+        for (int note = 0; note < Midi.NOTE_COUNT; note++) {
+            assertEquals(note, Midi.fromFrequency(Midi.toFrequency(note)));
+        }
+    }
+
+    @Test
+    public void isBlackKey_matchesKeyboardLayout() {
+        assertFalse(Midi.isBlackKey(60)); // C4
+        assertTrue(Midi.isBlackKey(61)); // C#4
+        assertFalse(Midi.isBlackKey(64)); // E4
+        assertTrue(Midi.isBlackKey(70)); // A#4
+        assertFalse(Midi.isBlackKey(-1));
+    }
+}
@@ -0,0 +1,121 @@
+package com.dstteam.zhuoctopus.airvirtuoso.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class TripleBufferTest {
+
+    private static final int FRAMES = 200_000;
+
+    /**
+     * Every entry holds the frame number, so a half-written frame shows mixed values.
+     */
+    private static final class Frame {
+        final long[] values = new long[64];
+
+        void fill(long frame) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = frame;
+            }
+        }
+    }
+
+    private static TripleBuffer<Frame> buffer() {
+        return new TripleBuffer<>(new Frame(), new Frame(), new Frame());
+    }
+
+    @Test
+    public void consume_returnsNewestValueOnce() {
+        TripleBuffer<Frame> buffer = buffer();
+        assertNull(buffer.consume());
+
+        buffer.getWriteBuffer().fill(1);
+        assertFalse(buffer.publish());
+        buffer.getWriteBuffer().fill(2);
+        assertTrue(buffer.publish()); // Frame 1 was never consumed
+
+        assertTrue(buffer.hasNewValue());
+        Frame read = buffer.consume();
+        assertEquals(2, read.values[0]);
+        assertNull(buffer.consume());
+        assertEquals(1, buffer.getDroppedCount());
+
+        // The consumed slot is not handed back to the producer
+        buffer.getWriteBuffer().fill(3);
+        buffer.publish();
+        assertNotSame(read, buffer.getWriteBuffer());
+        assertEquals(2, read.values[0]);
+    }
+
+    @Test
+    public void anyInterleaving_keepsReaderFrameIntactAndInOrder() {
+        TripleBuffer<Frame> buffer = buffer();
+        Random random = new Random(42);
+        Frame held = null;
+        long heldValue = 0;
+        long next = 1;
+
+        for (int op = 0; op < 10_000; op++) {
+            if (random.nextBoolean()) {
+                Frame write = buffer.getWriteBuffer();
+                assertNotSame("producer writes into the reader's frame", held, write);
+                write.fill(next++);
+                buffer.publish();
+            } else {
+                Frame frame = buffer.consume();
+                if (frame == null)
+                    continue;
+                assertTrue("frame " + frame.values[0] + " after " + heldValue, frame.values[0] > heldValue);
+                held = frame;
+                heldValue = frame.values[0];
+            }
+            if (held != null) {
+                for (long v : held.values) {
+                    assertEquals("reader's frame changed", heldValue, v);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void concurrentHandoff_isNeverTornOrOutOfOrder() throws InterruptedException {
+        TripleBuffer<Frame> buffer = buffer();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread producer = new Thread(() -> {
+            for (long frame = 1; frame <= FRAMES; frame++) {
+                buffer.getWriteBuffer().fill(frame);
+                buffer.publish();
+            }
+        });
+        producer.setUncaughtExceptionHandler((thread, e) -> failure.set(e));
+        producer.start();
+
+        long last = 0;
+        long seen = 0;
+        while (last < FRAMES) {
+            Frame frame = buffer.consume();
+            if (frame == null) {
+                // Once the producer is done, the last frame must still be waiting
+                if (!producer.isAlive() && !buffer.hasNewValue())
+                    fail("last frame lost after " + last);
+                continue;
+            }
+            long value = frame.values[0];
+            for (long v : frame.values) {
+                assertEquals("torn frame", value, v);
+            }
+            assertTrue("frame " + value + " after " + last, value > last);
+            last = value;
+            seen++;
+        }
+        producer.join();
+
+        assertNull(failure.get());
+        assertEquals(FRAMES, seen + buffer.getDroppedCount());
+    }
+}